@@ -1,38 +1,38 @@
 package de.bitocean.crunchts.simple;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
-import java.text.DecimalFormat;
-import java.util.Hashtable;
-import java.util.Iterator;
-import org.apache.crunchts.types.EventTSRecord;
+import java.util.Collections;
 
+import org.apache.crunch.Aggregator;
 import org.apache.crunch.DoFn;
 import org.apache.crunch.Emitter;
+import org.apache.crunch.MapFn;
 import org.apache.crunch.PCollection;
 import org.apache.crunch.PTable;
 import org.apache.crunch.Pair;
 import org.apache.crunch.PipelineResult;
-import org.apache.crunch.fn.Aggregators;
-import org.apache.crunch.io.From;
-import org.apache.crunch.io.avro.AvroFileTarget;
+import org.apache.crunch.io.To;
+import org.apache.crunch.types.PTableType;
 import org.apache.crunch.types.avro.Avros;
 import org.apache.crunch.util.CrunchTool;
-import org.apache.crunchts.pojo.ContEquidistTS;
-import org.apache.crunchts.ptypes.EventTS;
+import org.apache.crunchts.io.TSBReader;
+import org.apache.crunchts.io.TSVectorWritable;
+import org.apache.crunchts.statistics.SeriesProfile;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.ToolRunner;
-import org.apache.mahout.math.VectorWritable;
 
 /**
  * Crunch time series processing pipeline.
  *
- * Step 1: Covert data from SequenceFile representation into Avro records.
+ * Profiles a list of time series buckets in one pipeline: count, sum, mean,
+ * variance, min, max, zero fraction and non-zero length of every series
+ * and of every bucket. The series profiles are merged per bucket in the
+ * combiner, so only one small record per bucket and map task is shuffled.
  *
- * Step 2: Extract event time series from continuous equidistant time series.
+ * The output is one tab separated table, one line per series and one line
+ * per bucket with the label "*":
+ *
+ *   bucket  label  series  count  sum  mean  variance  min  max  zeroFraction  nonZeroLength
  *
  * @author Mirko K'mpf
  *
@@ -41,219 +41,121 @@ public class CalcTSBProfile extends CrunchTool {
 
     private static final long serialVersionUID = 1L;
 
+    public static final String BUCKET_LABEL = "*";
+
     @Override
     public int run(String[] args) throws Exception {
 
-        /**
-         *
-         * 1 CN: 1.0 1 IWL: 19.0 1 A.L: 171.0 1 B.L: 566.0
-         *
-         * 2 CN: 1.0 2 IWL: 91.0 2 A.L: 1128.0 2 B.L: 17293.0
-         *
-         * 3 CN: 1.0 3 IWL: 103.0 3 A.L: 551.0 3 B.L: 7270.0
-         *
-         * 4 CN: 1.0 4 IWL: 107.0 4 A.L: 684.0 4 B.L: 7781.0
-         *
-         *
-         * 
-         * 
-         * 
-         * THIS DATA was loaded via: 
-         * 
-         * project: WikiExplorer
-         * package: wikipedia.corpus.extractor.MetadataInspector
-         * 
-         * 
-         */
-        Hashtable<String, Integer> pages = new Hashtable<String, Integer>();
-
-        pages.put("1.CN", 1);
-        pages.put("1.IWL", 19);
-        pages.put("1.A.L", 171);
-        pages.put("1.B.L", 566);
-
-        pages.put("2.CN", 1);
-        pages.put("2.IWL", 91);
-        pages.put("2.A.L", 1128);
-        pages.put("2.B.L", 17293);
-
-        pages.put("3.CN", 1);
-        pages.put("3.IWL", 103);
-        pages.put("3.A.L", 551);
-        pages.put("3.B.L", 7270);
-
-        pages.put("4.CN", 1);
-        pages.put("4.IWL", 107);
-        pages.put("4.A.L", 684);
-        pages.put("4.B.L", 7781);
-
-        String folder = "/Volumes/MyExternalDrive/SHARE.VM.MAC/DATA/by_CN_AND_Group";
-        String studie = "dissertation_DEMO";
-
-        BufferedWriter wr = new BufferedWriter(new FileWriter(folder + "/profile_2.dat"));
-
-        wr.write("group & nrOfPages & zAccessTS & sum(A) & <a> & zEditTS & sum(E) & <E> & ");
-
-        String[] groups = {"2", "4"};
-
-        for (String g : groups) {
-
-            Profile pro1 = new Profile( pages, studie, g, "CN", folder);
-            Profile pro2 = new Profile( pages, studie, g, "IWL", folder);
-            Profile pro3 = new Profile( pages, studie, g, "A.L", folder);
-            Profile pro4 = new Profile( pages, studie, g, "B.L", folder);
-
-            pro1 = calcProfile(pro1, true);
-            pro2 = calcProfile(pro2, true);
-            pro3 = calcProfile(pro3, true);
-            pro4 = calcProfile(pro4, true);
-
-            wr.write( pro1.line.toString() + "\t");
-            wr.write( pro2.line.toString() + "\t");
-            wr.write( pro3.line.toString() + "\t");
-            wr.write( pro4.line.toString() + "\t");
-
+        if (args.length < 2) {
+            System.out.printf("Usage: CalcTSBProfile <output dir> <tsb> [<tsb> ...]\n");
+            System.exit(-1);
         }
 
-        String[] groups2 = {"1"};
-
-        for (String g : groups2) {
-
-            Profile pro1 = new Profile( pages, studie, g, "CN", folder);
-            Profile pro2 = new Profile( pages, studie, g, "IWL", folder);
-            Profile pro3 = new Profile( pages, studie, g, "A.L", folder);
-            Profile pro4 = new Profile( pages, studie, g, "B.L", folder);
-
-            pro1 = calcProfile(pro1, false);
-            pro2 = calcProfile(pro2, false);
-            pro3 = calcProfile(pro3, false);
-            pro4 = calcProfile(pro4, false);
-
-            wr.write(pro1.line.toString() + "\t");
-            wr.write(pro2.line.toString() + "\t");
-            wr.write(pro3.line.toString() + "\t");
-            wr.write(pro4.line.toString() + "\t");
+        PTableType<String, SeriesProfile> profileType =
+                Avros.tableOf(Avros.strings(), Avros.reflects(SeriesProfile.class));
 
+        // one profile per series of all buckets, the key is "bucket \t label"
+        PTable<String, SeriesProfile> perSeries = null;
+        for (int i = 1; i < args.length; i++) {
+            PTable<Text, TSVectorWritable> tsb = read(TSBReader.source(args[i]));
+            PTable<String, SeriesProfile> profiles = tsb.parallelDo("profile of " + args[i],
+                    new ProfileFn(args[i]), profileType);
+            perSeries = perSeries == null ? profiles : perSeries.union(profiles);
         }
-        wr.flush();
-        wr.close();
-
-        return 0;
-    }
-
-    public Profile calcProfile(Profile pro, boolean full) {
-
-        DecimalFormat df1 = new DecimalFormat("0");
-        DecimalFormat df2 = new DecimalFormat("0.00");
-        DecimalFormat df3 = new DecimalFormat("0");
-        DecimalFormat dfProzent = new DecimalFormat("0 $\\%$");
-
-        String group = pro.group;
 
-        String[] args = pro.args;
+        PTable<String, SeriesProfile> perBucket = perSeries
+                .parallelDo("bucket of series", new BucketFn(), profileType)
+                .groupByKey()
+                .combineValues(new MergeProfiles());
 
-        // load the time series from SequenceFiles
-        PTable<Text, org.apache.mahout.math.VectorWritable> tsbA = read(
-                From.sequenceFile(
-                        args[0], // location in HDFS 
-                        Text.class, // key-type
-                        org.apache.mahout.math.VectorWritable.class));    // value-type
+        PCollection<String> table = perSeries.union(perBucket)
+                .parallelDo("format profile", new FormatFn(), Avros.strings());
 
-        PCollection<Double> countsA = countAllClicks(tsbA);
-        long nrOfSeriesA = tsbA.length().getValue();
+        table.write(To.textFile(args[0]));
 
-        Iterator<Double> itA = ((org.apache.crunch.materialize.MaterializableIterable) countsA.materialize()).iterator();
+        System.out.println("bucket\tlabel\t" + SeriesProfile.header());
 
-        double sumA = 0.0;
-        while (itA.hasNext()) {
-            sumA = sumA + itA.next();
-        }
+        PipelineResult result = done();
 
-        double AactivityPerDayAndPage = sumA / (1.0 * nrOfSeriesA * 365);
-        pro.append("nrOfSeriesA", nrOfSeriesA, df1);
-//        pro.append("sumA", sumA, df1);
-        pro.append("AactivityPerDayAndPage", AactivityPerDayAndPage, df3);
-        pro.append("coverage", 100.0 * (double)nrOfSeriesA / (double)pro.nrPages, df2);
+        return result.succeeded() ? 0 : 1;
+    }
 
-        if (full) {
+    /**
+     * Profiles each series directly on the decoded vector buffer.
+     */
+    public static class ProfileFn extends DoFn<Pair<Text, TSVectorWritable>, Pair<String, SeriesProfile>> {
 
-            // load the time series from SequenceFiles
-            PTable<Text, org.apache.mahout.math.VectorWritable> tsbE = read(
-                    From.sequenceFile(
-                            args[1], // location in HDFS 
-                            Text.class, // key-type
-                            org.apache.mahout.math.VectorWritable.class));    // value-type
+        private static final long serialVersionUID = 1L;
 
-            long nrOfSeriesE = tsbE.length().getValue();
+        final String bucket;
 
-            PCollection<Double> countsE = countAllClicks(tsbE);
+        public ProfileFn(String bucket) {
+            this.bucket = bucket;
+        }
 
-            Iterator<Double> itE = ((org.apache.crunch.materialize.MaterializableIterable) countsE.materialize()).iterator();
+        @Override
+        public void process(Pair<Text, TSVectorWritable> input, Emitter<Pair<String, SeriesProfile>> emitter) {
+            TSVectorWritable v = input.second();
+            SeriesProfile p = SeriesProfile.of(v.getValues(), v.size());
+            emitter.emit(Pair.of(bucket + "\t" + input.first().toString(), p));
+        }
+    }
 
-            double sumE = 0.0;
-            while (itE.hasNext()) {
-                sumE = sumE + itE.next();
-            }
-            double EactivityPerDayAndPage = sumE / (1.0 * nrOfSeriesE);
+    /**
+     * Replaces the label of a series profile by the bucket label.
+     */
+    public static class BucketFn extends MapFn<Pair<String, SeriesProfile>, Pair<String, SeriesProfile>> {
 
-            pro.append("nrOfSeriesE", nrOfSeriesE, df1);
-//            pro.append("sumE", sumE, df1);
-            pro.append("EactivityPerDayAndPage", EactivityPerDayAndPage, df3);
-            pro.append("coverage", 100.0 * (double)nrOfSeriesE / (double)pro.nrPages, df2);
+        private static final long serialVersionUID = 1L;
 
+        @Override
+        public Pair<String, SeriesProfile> map(Pair<String, SeriesProfile> input) {
+            String key = input.first();
+            String bucket = key.substring(0, key.indexOf('\t'));
+            return Pair.of(bucket + "\t" + BUCKET_LABEL, input.second());
         }
-        
-        PipelineResult result = done();
-
-        int i = result.succeeded() ? 0 : 1;
-
-//        pro.line.append(" & status:" + i);
-        return pro;
     }
 
-    private PCollection<EventTSRecord> extractContEquidistTS(
-            PCollection<ContEquidistTS> tsb) {
+    public static class FormatFn extends MapFn<Pair<String, SeriesProfile>, String> {
 
-        return tsb.parallelDo(new DoFn<ContEquidistTS, EventTSRecord>() {
-            @Override
-            public void process(ContEquidistTS ts, Emitter<EventTSRecord> emitter) {
+        private static final long serialVersionUID = 1L;
 
-                VectorWritable v = ts.getData();
-                EventTS out = new EventTS();
-
-                emitter.emit(out.getRecord());
-            }
-        },
-                Avros.records(EventTSRecord.class)
-        );
+        @Override
+        public String map(Pair<String, SeriesProfile> input) {
+            return input.first() + "\t" + input.second().toString();
+        }
     }
 
     /**
-     *
-     * @param tsb
-     * @return
+     * Merges profiles, used as combiner and reducer.
      */
-    private PCollection<ContEquidistTS> covertFromVectorWritables(PTable<Text, VectorWritable> tsb) {
+    public static class MergeProfiles implements Aggregator<SeriesProfile> {
 
-        return tsb.parallelDo(new DoFn<Pair<Text, VectorWritable>, ContEquidistTS>() {
-            @Override
-            public void process(Pair<Text, VectorWritable> ts, Emitter<ContEquidistTS> emitter) {
+        private static final long serialVersionUID = 1L;
 
-                String key = ts.first().toString();
-                VectorWritable v = ts.second();
+        SeriesProfile sum = null;
 
-                ContEquidistTS out = new ContEquidistTS();
-                out.setData(v, key, 0);
+        @Override
+        public void initialize(Configuration conf) {
+        }
 
-                emitter.emit(out);
-            }
-        },
-                Avros.reflects(ContEquidistTS.class));
+        @Override
+        public void reset() {
+            sum = null;
+        }
 
-    }
+        @Override
+        public void update(SeriesProfile value) {
+            if (sum == null) {
+                sum = new SeriesProfile();
+            }
+            sum.merge(value);
+        }
 
-    public PCollection<Double> countAllClicks(PTable<Text, VectorWritable> ts) {
-        return ts.parallelDo("calc total number of clicks", new SimpleClickCountFn(), Avros.doubles());
+        @Override
+        public Iterable<SeriesProfile> results() {
+            return sum == null ? Collections.<SeriesProfile>emptyList() : Collections.singletonList(sum);
+        }
     }
 
     public static void main(String[] args) throws Exception {
@@ -261,30 +163,3 @@ public class CalcTSBProfile extends CrunchTool {
         System.exit(exitCode);
     }
 }
-
-class Profile {
-
-    int nrPages = 0;
-    
-    public Profile(Hashtable<String,Integer> pages, String studie, String g, String label, String path) {
-        group = studie + "_" + g + "_" + label;
-        String g2 = group.replace("_", " ");
-        nrPages = pages.get( g + "." + label );
-        line.append("\\\\\n" + g + " " + label + " & " + nrPages );
-        args[0] = path + "/" + group + ".accessrate.tsb.seq";
-        args[1] = path + "/" + group + ".editrate.tsb.seq";
-    }
-
-    String group = null;
-    StringBuffer line = new StringBuffer();
-
-    String[] args = new String[2];
-
-    long nrOfSeries = 0;
-    long sum = 0;
-
-    public void append(String label, double v, DecimalFormat df) {
-        line.append(" & " + df.format(v));
-    }
-
-}
@@ -1,24 +1,21 @@
 package de.bitocean.crunchts.simple;
 
+import org.apache.crunchts.io.TSBReader;
+import org.apache.crunchts.io.TSVectorWritable;
 import org.apache.crunchts.types.EventTSRecord;
 
-import org.apache.crunch.DoFn;
-import org.apache.crunch.Emitter;
 import org.apache.crunch.PCollection;
 import org.apache.crunch.PTable;
-import org.apache.crunch.Pair;
 import org.apache.crunch.PipelineResult;
-import org.apache.crunch.io.From;
 import org.apache.crunch.io.avro.AvroFileTarget;
 import org.apache.crunch.types.avro.Avros;
 import org.apache.crunch.util.CrunchTool;
 import org.apache.crunchts.pojo.ContEquidistTS;
-import org.apache.crunchts.ptypes.EventTS;
+import org.apache.crunchts.simple.ContEquidistTSToEventsFn;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.ToolRunner;
-import org.apache.mahout.math.VectorWritable;
  
 /**
  * Crunch time series processing pipeline.
@@ -43,13 +40,9 @@ public class ExtractEventTimeSeriesFromTSBucket extends CrunchTool {
 		}
 
 		// load the time series from SequenceFiles
-		PTable<Text,org.apache.mahout.math.VectorWritable> tsb = read( 
-				From.sequenceFile(  
-						args[0],                                            // location in HDFS 
-						Text.class,                                         // key-type
-						org.apache.mahout.math.VectorWritable.class ) );    // value-type
+		PTable<Text,TSVectorWritable> tsb = read( TSBReader.source( args[0] ) );
 		
-		PCollection<ContEquidistTS> converted = covertFromVectorWritables( tsb );
+		PCollection<ContEquidistTS> converted = TSBReader.toContEquidistTS( tsb, Avros.reflects( ContEquidistTS.class ) );
 		
 		PCollection<EventTSRecord> extracted = extractContEquidistTS( converted );
 
@@ -64,48 +57,24 @@ public class ExtractEventTimeSeriesFromTSBucket extends CrunchTool {
 		return result.succeeded() ? 0 : 1;		
 	}
 
+	/**
+	 * Events are the non-zero samples, or the upward crossings of
+	 * crunchts.events.threshold with -Dcrunchts.events.mode=threshold.
+	 */
 	private PCollection<EventTSRecord> extractContEquidistTS(
 			PCollection<ContEquidistTS> tsb) {
 
-		return tsb.parallelDo( new DoFn<ContEquidistTS,EventTSRecord>() {
-			@Override
-		    public void process( ContEquidistTS ts, Emitter<EventTSRecord> emitter) {
-				
-					VectorWritable v = ts.getData();
-					EventTS out = new EventTS();
-					
-					emitter.emit( out.getRecord() );
-				}
-			},		
-			Avros.records(EventTSRecord.class) 
-		);
-	}
+		ContEquidistTSToEventsFn.Mode mode = ContEquidistTSToEventsFn.Mode.valueOf(
+				getConf().get( "crunchts.events.mode", "nonzero" ).toUpperCase() );
+		double threshold = Double.parseDouble( getConf().get( "crunchts.events.threshold", "0.0" ) );
 
-	/**
-	 * 
-	 * @param tsb
-	 * @return
-	 */
-	private PCollection<ContEquidistTS> covertFromVectorWritables(PTable<Text, VectorWritable> tsb) {
-		
-		return tsb.parallelDo( new DoFn<Pair<Text, VectorWritable>, ContEquidistTS>() {
-			@Override
-		    public void process(Pair<Text, VectorWritable> ts, Emitter<ContEquidistTS> emitter) {
-				
-				String key = ts.first().toString();
-				VectorWritable v = ts.second();
-				
-				ContEquidistTS out = new ContEquidistTS();
-				out.setData(v, key, 0);
-				
-				emitter.emit( out );
-			}
-		},
-		Avros.reflects( ContEquidistTS.class ) );	
-		
+		return tsb.parallelDo( "extract events",
+				new ContEquidistTSToEventsFn( mode, threshold ),
+				Avros.records(EventTSRecord.class) 
+		);
 	}
 
-	public PCollection<Double> countAllClicks(PTable<Text,VectorWritable> ts) {
+	public PCollection<Double> countAllClicks(PTable<Text,TSVectorWritable> ts) {
 		return ts.parallelDo("calc total number of clicks", new SimpleClickCountFn(), Avros.doubles() );
 	}
 	
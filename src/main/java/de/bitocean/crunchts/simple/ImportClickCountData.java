@@ -3,7 +3,6 @@ package de.bitocean.crunchts.simple;
 import java.util.HashSet;
 
 import org.apache.crunch.impl.mr.run.*;
-import org.apache.hadoop.mapreduce.*;
 import org.apache.crunch.util.*;
 import org.apache.crunch.*;
 import org.apache.crunch.Pair;
@@ -11,17 +10,18 @@ import org.apache.crunch.PipelineResult;
 import org.apache.crunch.io.From;
 import org.apache.crunch.types.avro.Avros;
 import org.apache.crunch.util.CrunchTool;
+import org.apache.crunchts.io.TSVectorWritable;
 import org.apache.crunchts.types.wikipedia.analysis.ClickCount;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.util.ToolRunner;
-import org.apache.mahout.math.VectorWritable;
-import com.google.common.base.Supplier;
 import org.apache.crunch.io.text.TextFileTarget;
+import org.apache.crunch.TableSource;
 import org.apache.crunch.lib.Shard;
-import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+
+import de.bitocean.util.wikipedia.NeighborhoodFilter;
+import de.bitocean.util.wikipedia.PageCountsInputFormat;
 
 /**
  * This example program imports Wikipedia clickCount data into HDFS.
@@ -49,12 +49,16 @@ public class ImportClickCountData extends CrunchTool {
         System.out.println("in  : " + args[0]);
         System.out.println("out : " + outpath);
 
-        // Data is a gzip compressed textfile ...
-        Source<String> mySource = From.textFile(args[0]);
+        // Data is a gzip compressed textfile, the lines are parsed as Text
+        // without decoding them into Strings. PageCountsInputFormat packs
+        // many hourly files into one split (crunchts.pagecounts.split.maxsize)
+        // and delivers the file name with each line, so Crunch's own combine
+        // mode stays off ...
+        TableSource<Text, Text> mySource = From.formattedFile(args[0], PageCountsInputFormat.class, Text.class, Text.class);
         mySource.inputConf(RuntimeParameters.DISABLE_COMBINE_FILE, "true");
 
-        // load the log lines from TextFiles
-        PCollection<String> raw = read(mySource);
+        // load the (file name, log line) pairs from TextFiles
+        PTable<Text, Text> raw = read(mySource);
         
         // in case we use FileSplit in a map only job it will still 
         // create a lot of small files once the job is done. 
@@ -67,15 +71,21 @@ public class ImportClickCountData extends CrunchTool {
         Shard.shard(raw, PartitionUtils.getRecommendedPartitions(raw));
 
         // What data has to be extracted?
-        // Everything or just the pages listed in this neighborhood definition
-        HashSet<String> neighborhood = new HashSet<String>();
-        neighborhood.add("de_DAX");
-        neighborhood.add("de_Stollberg");
-        neighborhood.add("de_Berlin");
-        neighborhood.add("de_Meiningen");
+        // Everything or just the pages listed in this neighborhood definition,
+        // large neighborhoods are read from -Dcrunchts.neighborhood.file=...
+        NeighborhoodFilter neighborhood = NeighborhoodFilter.fromConf(getConf());
+        if (neighborhood == null) {
+            HashSet<String> pages = new HashSet<String>();
+            pages.add("de_DAX");
+            pages.add("de_Stollberg");
+            pages.add("de_Berlin");
+            pages.add("de_Meiningen");
+            neighborhood = NeighborhoodFilter.of(pages);
+        }
+        System.out.println("filter: " + neighborhood);
 
-        // if neighborhood is not null, all records are processed ...
-        PCollection<ClickCount> converted = covertFromString(raw, neighborhood);
+        // if neighborhood is null, all records are processed ...
+        PCollection<ClickCount> converted = covertFromText(raw, neighborhood);
 
         // Make a key value pair from all records ...
         PTable<String, ClickCount> kv = extractPageNameAsKey(converted);
@@ -93,79 +103,11 @@ public class ImportClickCountData extends CrunchTool {
         return result.succeeded() ? 0 : 1;
     }
 
-    private PCollection<ClickCount> covertFromString(PCollection<String> raw, final HashSet<String> neighborhood) {
-
-        return raw.parallelDo(new DoFn<String, ClickCount>() {
-
-            String fileName = null;
-            long timestamp = 0;
-
-            @Override
-            public void initialize() {
-                super.initialize();
-                try {
-                    final Supplier<InputSplit> inputSplitSupplier = (Supplier<InputSplit>) ((MapContext) getContext()).getInputSplit();
-                    final InputSplit inputSplit = inputSplitSupplier.get();
-
-                    if (inputSplit instanceof FileSplit) {
-                        fileName = ((FileSplit) inputSplit).getPath().getName();
-                    } else if (inputSplit instanceof CombineFileSplit) {
-                        // Add new file resolution logic here.
-                        fileName = ((CombineFileSplit) inputSplit).getPaths()[0].getName();
-                    }
-                   
-                    timestamp = de.bitocean.util.wikipedia.TimeStampTool.getTimeInMillis(fileName);
-                } 
-                catch (ClassCastException e) {
-                    e.printStackTrace();
-                    throw new RuntimeException("Could not get file name from input splits", e);
-                }
-            }
-
-            @Override
-            public void process(String r, Emitter<ClickCount> emitter) {
-
-                String[] c = r.split(" ");
-
-                // only if neighborhood is defined we filter ...
-                if (neighborhood != null) {
-                    // if the projects contains "." it is not a Wikipedia 
-                    // project, so we reject it
-                    if (c[0].contains(".")) {
-                        return;
-                    }
-                    // if the current pagename project pair is not listed
-                    // we do nothing
-                    if (!neighborhood.contains(c[0] + "_" + c[1])) {
-                        return;
-                    }
-                }
-
-                ClickCount out = new ClickCount();
-                // extract the year month and key field
-                String[] d = fileName.split("-");
-
-                out.setYear(Integer.parseInt(d[1].substring(0, 4)));
-                out.setMonth(Integer.parseInt(d[1].substring(4, 6)));
-                out.setDay(Integer.parseInt(d[1].substring(6, 8)));
-                out.setHour(d[2]);
-
-                // timestamp comes from the one input file 
-                out.setTimestamp(timestamp);
-
-                // process the input of the file ...
-                out.setProjectname(c[0]);
-                out.setPagename(c[1]);
-                out.setClicks(Long.parseLong(c[2]));
-                out.setVolume(Long.parseLong(c[3]));
-
-                emitter.emit(out);
-            }
-        },
-        Avros.reflects(ClickCount.class));
+    private PCollection<ClickCount> covertFromText(PTable<Text, Text> raw, NeighborhoodFilter neighborhood) {
+        return raw.parallelDo("parse pagecounts", new PageCountsParserFn(neighborhood), Avros.specifics(ClickCount.class));
     }
 
-    public PCollection<Double> countAllClicks(PTable<Text, VectorWritable> ts) {
+    public PCollection<Double> countAllClicks(PTable<Text, TSVectorWritable> ts) {
         return ts.parallelDo("calc total number of clicks", new SimpleClickCountFn(), Avros.doubles());
     }
 
@@ -179,7 +121,7 @@ public class ImportClickCountData extends CrunchTool {
                         emitter.emit(new Pair(r.projectname + "_" + r.pagename, r));
                     }
                 },
-                Avros.tableOf(Avros.strings(), Avros.reflects(ClickCount.class)));
+                Avros.tableOf(Avros.strings(), Avros.specifics(ClickCount.class)));
     }
     
     public static void main(String[] args) throws Exception {
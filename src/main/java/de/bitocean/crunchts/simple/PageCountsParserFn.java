@@ -0,0 +1,182 @@
+package de.bitocean.crunchts.simple;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.avro.util.Utf8;
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.Pair;
+import org.apache.crunchts.types.wikipedia.analysis.ClickCount;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+
+import de.bitocean.util.wikipedia.NeighborhoodFilter;
+import de.bitocean.util.wikipedia.TimeStampTool;
+
+/**
+ * Parses the lines of a Wikipedia pagecounts file
+ *
+ *   project page clicks volume
+ *
+ * directly on the bytes of the Text, without decoding the line into a
+ * String. The input are (file name, line) pairs of PageCountsInputFormat,
+ * which packs many files into one split. Year, month, day, hour and the UTC
+ * timestamp depend only on the file name (pagecounts-20071210-010000.gz),
+ * they are calculated again only when the file changes.
+ *
+ * If a neighborhood is given, only its pages are emitted: the bytes
+ * "project page" up to the second blank are looked up without a copy (see
+ * NeighborhoodFilter), projects with a "." are no Wikipedia projects and
+ * are always rejected.
+ *
+ * One ClickCount and its Utf8 strings are reused for all records, so the
+ * emitted record is only valid until the next call of process(). This is
+ * fine in a MRPipeline, where each record is serialized when emitted, but
+ * the records must not be kept (e.g. materialized in the MemPipeline).
+ */
+public class PageCountsParserFn extends DoFn<Pair<Text, Text>, ClickCount> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final NeighborhoodFilter neighborhood;
+
+    private transient ClickCount out;
+    private transient Utf8 project;
+    private transient Utf8 page;
+    private transient Text file;
+
+    /**
+     * @param neighborhood - the pages to emit, null for all pages
+     */
+    public PageCountsParserFn(NeighborhoodFilter neighborhood) {
+        this.neighborhood = neighborhood;
+    }
+
+    /**
+     * Client side: ships the neighborhood file with the job.
+     */
+    @Override
+    public void configure(Configuration conf) {
+        if (neighborhood != null) {
+            neighborhood.configure(conf);
+        }
+    }
+
+    @Override
+    public void initialize() {
+        super.initialize();
+        if (neighborhood != null) {
+            try {
+                // no task context in the MemPipeline
+                URI[] cached = getContext() == null ? null : getContext().getCacheFiles();
+                neighborhood.open(getConfiguration(), cached);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not load the " + neighborhood, e);
+            }
+        }
+
+        out = new ClickCount();
+        project = new Utf8();
+        page = new Utf8();
+        out.setProjectname(project);
+        out.setPagename(page);
+        file = new Text();
+    }
+
+    /**
+     * Sets all fields which depend on the file, e.g. pagecounts-20071210-010000.gz
+     */
+    private void setFile(Text name) {
+        String fileName = name.toString();
+        // checks the layout of the name
+        out.setTimestamp(TimeStampTool.getUTCTimeInMillis(fileName));
+        int p = fileName.indexOf('-');
+        int day = Integer.parseInt(fileName.substring(p + 1, p + 9));
+        out.setYear(day / 10000);
+        out.setMonth(day / 100 % 100);
+        out.setDay(day % 100);
+        out.setHour(new Utf8(fileName.substring(p + 10)));
+        file.set(name);
+    }
+
+    @Override
+    public void process(Pair<Text, Text> record, Emitter<ClickCount> emitter) {
+        if (!file.equals(record.first())) {
+            setFile(record.first());
+        }
+        Text line = record.second();
+        byte[] b = line.getBytes();
+        int end = line.getLength();
+        if (end > 0 && b[end - 1] == '\r') {
+            end--;
+        }
+
+        int sp1 = indexOf(b, 0, end, (byte) ' ');
+        int sp2 = sp1 < 0 ? -1 : indexOf(b, sp1 + 1, end, (byte) ' ');
+        int sp3 = sp2 < 0 ? -1 : indexOf(b, sp2 + 1, end, (byte) ' ');
+        if (sp3 < 0) {
+            increment("crunchts.pagecounts", "malformed lines");
+            return;
+        }
+
+        // only if neighborhood is defined we filter ...
+        if (neighborhood != null) {
+            // if the project contains "." it is not a Wikipedia project
+            if (indexOf(b, 0, sp1, (byte) '.') >= 0) {
+                return;
+            }
+            if (!neighborhood.contains(b, 0, sp2)) {
+                return;
+            }
+        }
+
+        long clicks = parseLong(b, sp2 + 1, sp3);
+        long volume = parseLong(b, sp3 + 1, end);
+        if (clicks < 0 || volume < 0) {
+            increment("crunchts.pagecounts", "malformed lines");
+            return;
+        }
+
+        set(project, b, 0, sp1);
+        set(page, b, sp1 + 1, sp2 - sp1 - 1);
+        out.setClicks(clicks);
+        out.setVolume(volume);
+
+        emitter.emit(out);
+    }
+
+    private static void set(Utf8 u, byte[] b, int off, int len) {
+        u.setByteLength(len);
+        System.arraycopy(b, off, u.getBytes(), 0, len);
+    }
+
+    static int indexOf(byte[] b, int from, int to, byte c) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a non-negative decimal number.
+     *
+     * @return the number, -1 if the field is empty, too long or not a number
+     */
+    static long parseLong(byte[] b, int from, int to) {
+        if (from >= to || to - from > 18) {
+            return -1;
+        }
+        long v = 0;
+        for (int i = from; i < to; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            v = v * 10 + digit;
+        }
+        return v;
+    }
+}
@@ -0,0 +1,204 @@
+package de.bitocean.crunchts.simple;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.PipelineResult;
+import org.apache.crunch.TableSource;
+import org.apache.crunch.impl.mr.run.RuntimeParameters;
+import org.apache.crunch.io.From;
+import org.apache.crunch.io.To;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.crunch.util.CrunchTool;
+import org.apache.crunchts.types.wikipedia.analysis.ClickCount;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.VectorWritable;
+
+import de.bitocean.util.wikipedia.NeighborhoodFilter;
+import de.bitocean.util.wikipedia.PageCountsInputFormat;
+import de.bitocean.util.wikipedia.TimeStampTool;
+
+/**
+ * Builds a time series bucket (TSB) directly from raw Wikipedia pagecounts
+ * files (pagecounts-yyyyMMdd-HHmmss.gz): one dense hourly series per
+ * project_page for the days crunchts.pagecounts.from .. crunchts.pagecounts.to.
+ *
+ * The lines are parsed with PageCountsParserFn, the hour slot of a record is
+ * derived from the UTC timestamp of its file (TimeStampTool). Only (page, slot,
+ * clicks) is shuffled, the reducer fills one array per page while it
+ * iterates the values of the page, so no reducer holds more than one series.
+ * A page occurs once per hourly file, so there is nothing to combine on the
+ * map side; duplicates of a page in one file are added up.
+ *
+ * The result is a SequenceFile of Text / VectorWritable like all other
+ * TSBs, records outside of the date range are counted and dropped.
+ *
+ * Parameters:
+ *
+ *   -Dcrunchts.pagecounts.from=20071210   first day (yyyyMMdd)
+ *   -Dcrunchts.pagecounts.to=20071216     last day, inclusive
+ *   -Dcrunchts.neighborhood.file=...      only the pages in this file
+ *                                         (see NeighborhoodFilter), default all
+ *   -Dcrunchts.pagecounts.split.maxsize=1073741824
+ *                                         input bytes per mapper, many hourly
+ *                                         files are packed into one split
+ *
+ * @author kamir
+ */
+public class PageCountsToTSB extends CrunchTool {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String FROM = "crunchts.pagecounts.from";
+    public static final String TO = "crunchts.pagecounts.to";
+
+    static final long HOUR = 3600L * 1000L;
+
+    @Override
+    public int run(String[] args) throws Exception {
+
+        if (args.length != 2) {
+            System.out.printf("Usage: PageCountsToTSB <pagecounts dir> <output tsb>\n");
+            System.exit(-1);
+        }
+
+        String from = getConf().get(FROM);
+        String to = getConf().get(TO);
+        if (from == null || to == null) {
+            System.out.println("> Set the date range with -D" + FROM + "=yyyyMMdd -D" + TO + "=yyyyMMdd");
+            return -1;
+        }
+
+        long firstHour = TimeStampTool.epochHour("pagecounts-" + from + "-000000");
+        int hours = (int) (TimeStampTool.epochHour("pagecounts-" + to + "-230000") + 1 - firstHour);
+        if (hours <= 0) {
+            System.out.println("> Empty date range: " + from + " .. " + to);
+            return -1;
+        }
+
+        System.out.println("in    : " + args[0]);
+        System.out.println("out   : " + args[1]);
+        System.out.println("range : " + from + " .. " + to + " (" + hours + " hours)");
+        System.out.println("files : " + coveredHours(args[0], firstHour, hours) + " of " + hours + " hours found");
+
+        // many hourly files per split, each line with the name of its file
+        TableSource<Text, Text> mySource = From.formattedFile(args[0], PageCountsInputFormat.class, Text.class, Text.class);
+        mySource.inputConf(RuntimeParameters.DISABLE_COMBINE_FILE, "true");
+
+        PTable<Text, Text> raw = read(mySource);
+
+        PCollection<ClickCount> converted = raw.parallelDo("parse pagecounts",
+                new PageCountsParserFn(NeighborhoodFilter.fromConf(getConf())), Avros.specifics(ClickCount.class));
+
+        PTable<String, Pair<Integer, Long>> slots = converted.parallelDo("hour slots",
+                new SlotFn(firstHour, hours),
+                Avros.tableOf(Avros.strings(), Avros.pairs(Avros.ints(), Avros.longs())));
+
+        PTable<Text, VectorWritable> tsb = slots.groupByKey().parallelDo("hourly series",
+                new SeriesFn(hours),
+                Writables.tableOf(Writables.writables(Text.class), Writables.writables(VectorWritable.class)));
+
+        write(tsb, To.sequenceFile(args[1]));
+
+        PipelineResult result = done();
+
+        return result.succeeded() ? 0 : 1;
+    }
+
+    /**
+     * @return number of hours of the range for which an input file exists
+     */
+    private int coveredHours(String input, long firstHour, int hours) throws IOException {
+        Path in = new Path(input);
+        FileSystem fs = in.getFileSystem(getConf());
+        FileStatus[] found = fs.globStatus(in);
+        List<String> names = new ArrayList<String>();
+        if (found != null) {
+            for (FileStatus s : found) {
+                if (s.isDirectory()) {
+                    for (FileStatus f : fs.listStatus(s.getPath())) {
+                        names.add(f.getPath().getName());
+                    }
+                } else {
+                    names.add(s.getPath().getName());
+                }
+            }
+        }
+        boolean[] covered = new boolean[hours];
+        int z = 0;
+        for (int slot : TimeStampTool.slots(names, firstHour)) {
+            if (slot >= 0 && slot < hours && !covered[slot]) {
+                covered[slot] = true;
+                z++;
+            }
+        }
+        return z;
+    }
+
+    /**
+     * (project_page, (hour slot, clicks)) for the records in the range.
+     */
+    static class SlotFn extends DoFn<ClickCount, Pair<String, Pair<Integer, Long>>> {
+
+        private static final long serialVersionUID = 1L;
+
+        final long firstHour;
+        final int hours;
+
+        SlotFn(long firstHour, int hours) {
+            this.firstHour = firstHour;
+            this.hours = hours;
+        }
+
+        @Override
+        public void process(ClickCount c, Emitter<Pair<String, Pair<Integer, Long>>> emitter) {
+            long slot = c.getTimestamp() / HOUR - firstHour;
+            if (slot < 0 || slot >= hours) {
+                increment("crunchts.pagecounts", "records out of range");
+                return;
+            }
+            emitter.emit(Pair.of(c.getProjectname() + "_" + c.getPagename(), Pair.of((int) slot, c.getClicks())));
+        }
+    }
+
+    /**
+     * Fills the dense series of one page.
+     */
+    static class SeriesFn extends DoFn<Pair<String, Iterable<Pair<Integer, Long>>>, Pair<Text, VectorWritable>> {
+
+        private static final long serialVersionUID = 1L;
+
+        final int hours;
+
+        SeriesFn(int hours) {
+            this.hours = hours;
+        }
+
+        @Override
+        public void process(Pair<String, Iterable<Pair<Integer, Long>>> page, Emitter<Pair<Text, VectorWritable>> emitter) {
+            double[] series = new double[hours];
+            for (Pair<Integer, Long> v : page.second()) {
+                series[v.first()] += v.second();
+            }
+            emitter.emit(Pair.of(new Text(page.first()), new VectorWritable(new DenseVector(series, true))));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int exitCode = ToolRunner.run(new Configuration(), new PageCountsToTSB(), args);
+        System.exit(exitCode);
+    }
+}
@@ -1,10 +1,8 @@
 package de.bitocean.relevance;
 
 import de.bitocean.crunchts.simple.*;
-import java.util.HashSet;
 
 import org.apache.crunch.impl.mr.run.*;
-import org.apache.hadoop.mapreduce.*;
 import org.apache.crunch.util.*;
 import org.apache.crunch.*;
 import org.apache.crunch.Pair;
@@ -16,15 +14,12 @@ import org.apache.crunchts.types.wikipedia.analysis.ClickCount;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.util.ToolRunner;
-import org.apache.mahout.math.VectorWritable;
-import com.google.common.base.Supplier;
+import org.apache.crunchts.io.TSVectorWritable;
 import de.bitocean.data.WebResource;
 import org.apache.avro.generic.GenericData;
 import org.apache.crunch.io.text.TextFileTarget;
 import org.apache.crunch.lib.Shard;
-import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
 
 /**
  * This example program imports Wikipedia clickCount data into HDFS.
@@ -59,9 +54,9 @@ public class WebResourceBucketNodeDegree extends CrunchTool {
         System.out.println("out : " + outpath);
 
         // Data is in a AVRO file ...
+        // no field depends on the input file, so the small files are
+        // combined into larger splits (Crunch's combine mode)
         Source<WebResource> mySource = From.avroFile( args[0], Avros.specifics(WebResource.class));
-        
-        mySource.inputConf(RuntimeParameters.DISABLE_COMBINE_FILE, "true");
 
         // load the log lines from TextFiles
         PCollection<WebResource> raw = read(mySource);
@@ -92,79 +87,7 @@ public class WebResourceBucketNodeDegree extends CrunchTool {
         return result.succeeded() ? 0 : 1;
     }
 
-    private PCollection<ClickCount> covertFromString(PCollection<String> raw, final HashSet<String> neighborhood) {
-
-        return raw.parallelDo(new DoFn<String, ClickCount>() {
-
-            String fileName = null;
-            long timestamp = 0;
-
-            @Override
-            public void initialize() {
-                super.initialize();
-                try {
-                    final Supplier<InputSplit> inputSplitSupplier = (Supplier<InputSplit>) ((MapContext) getContext()).getInputSplit();
-                    final InputSplit inputSplit = inputSplitSupplier.get();
-
-                    if (inputSplit instanceof FileSplit) {
-                        fileName = ((FileSplit) inputSplit).getPath().getName();
-                    } else if (inputSplit instanceof CombineFileSplit) {
-                        // Add new file resolution logic here.
-                        fileName = ((CombineFileSplit) inputSplit).getPaths()[0].getName();
-                    }
-                   
-                    timestamp = de.bitocean.util.wikipedia.TimeStampTool.getTimeInMillis(fileName);
-                } 
-                catch (ClassCastException e) {
-                    e.printStackTrace();
-                    throw new RuntimeException("Could not get file name from input splits", e);
-                }
-            }
-
-            @Override
-            public void process(String r, Emitter<ClickCount> emitter) {
-
-                String[] c = r.split(" ");
-
-                // only if neighborhood is defined we filter ...
-                if (neighborhood != null) {
-                    // if the projects contains "." it is not a Wikipedia 
-                    // project, so we reject it
-                    if (c[0].contains(".")) {
-                        return;
-                    }
-                    // if the current pagename project pair is not listed
-                    // we do nothing
-                    if (!neighborhood.contains(c[0] + "_" + c[1])) {
-                        return;
-                    }
-                }
-
-                ClickCount out = new ClickCount();
-                // extract the year month and key field
-                String[] d = fileName.split("-");
-
-                out.setYear(Integer.parseInt(d[1].substring(0, 4)));
-                out.setMonth(Integer.parseInt(d[1].substring(4, 6)));
-                out.setDay(Integer.parseInt(d[1].substring(6, 8)));
-                out.setHour(d[2]);
-
-                // timestamp comes from the one input file 
-                out.setTimestamp(timestamp);
-
-                // process the input of the file ...
-                out.setProjectname(c[0]);
-                out.setPagename(c[1]);
-                out.setClicks(Long.parseLong(c[2]));
-                out.setVolume(Long.parseLong(c[3]));
-
-                emitter.emit(out);
-            }
-        },
-        Avros.reflects(ClickCount.class));
-    }
-
-    public PCollection<Double> countAllClicks(PTable<Text, VectorWritable> ts) {
+    public PCollection<Double> countAllClicks(PTable<Text, TSVectorWritable> ts) {
         return ts.parallelDo("calc total number of clicks", new SimpleClickCountFn(), Avros.doubles());
     }
 
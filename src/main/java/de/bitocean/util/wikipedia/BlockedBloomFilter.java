@@ -0,0 +1,88 @@
+package de.bitocean.util.wikipedia;
+
+/**
+ * Bloom filter with all k bits of a key in one block of 512 bits (one
+ * cache line), so a lookup costs one cache miss, independent of the number
+ * of keys. The blocking raises the false positive rate a little, the
+ * filter is made 20% larger than a standard one to compensate.
+ *
+ * Keys are given as 64 bit hashes (see hash()).
+ */
+public class BlockedBloomFilter {
+
+    static final int BLOCK_BITS = 512;
+    static final int BLOCK_LONGS = BLOCK_BITS / 64;
+
+    private final long[] bits;
+    private final int blocks;
+    private final int k;
+
+    /**
+     * @param n - expected number of keys
+     * @param fpp - false positive probability, e.g. 0.01
+     */
+    public BlockedBloomFilter(long n, double fpp) {
+        n = Math.max(1, n);
+        double ln2 = Math.log(2);
+        double m = 1.2 * -n * Math.log(fpp) / (ln2 * ln2);
+        long b = Math.max(1L, (long) Math.ceil(m / BLOCK_BITS));
+        if (b * BLOCK_LONGS > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too many keys for one filter: " + n);
+        }
+        blocks = (int) b;
+        bits = new long[blocks * BLOCK_LONGS];
+        k = (int) Math.max(1, Math.min(16, Math.round(m / n * ln2)));
+    }
+
+    public void add(long h) {
+        int base = block(h) * BLOCK_LONGS;
+        int h2 = (int) h;
+        int h3 = (int) mix(h) | 1;
+        for (int i = 0; i < k; i++) {
+            int bit = (h2 + i * h3) >>> 23;
+            bits[base + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(long h) {
+        int base = block(h) * BLOCK_LONGS;
+        int h2 = (int) h;
+        int h3 = (int) mix(h) | 1;
+        for (int i = 0; i < k; i++) {
+            int bit = (h2 + i * h3) >>> 23;
+            if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int block(long h) {
+        return (int) (((h >>> 32) * blocks) >>> 32);
+    }
+
+    /**
+     * @return bytes of the bit array
+     */
+    public long memory() {
+        return 8L * bits.length;
+    }
+
+    /**
+     * FNV-1a (64 bit) with a final mix.
+     */
+    public static long hash(byte[] b, int off, int len) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = off; i < off + len; i++) {
+            h ^= b[i] & 0xFF;
+            h *= 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
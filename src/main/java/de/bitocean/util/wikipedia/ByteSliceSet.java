@@ -0,0 +1,135 @@
+package de.bitocean.util.wikipedia;
+
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Set of byte strings which is queried with a slice of a larger array, e.g.
+ * with the first two fields of a line in the buffer of a Text, so no String
+ * or byte[] is created per lookup.
+ *
+ * Open addressing with linear probing, all keys are stored one after the
+ * other in one byte[], the table holds offset and length per slot. The set
+ * is filled once and then only queried (not thread safe while adding).
+ */
+public class ByteSliceSet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private byte[] data = new byte[256];
+    private int used = 0;
+
+    /** offset of the key + 1, 0 marks a free slot */
+    private int[] offsets = new int[16];
+    private int[] lengths = new int[16];
+    private int[] hashes = new int[16];
+    private int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean add(String key) {
+        byte[] b = key.getBytes(UTF8);
+        return add(b, 0, b.length);
+    }
+
+    public boolean add(byte[] b, int off, int len) {
+        int h = hash(b, off, len);
+        if (find(b, off, len, h) >= 0) {
+            return false;
+        }
+        if (2 * (size + 1) > offsets.length) {
+            rehash(2 * offsets.length);
+        }
+        if (used + len > data.length) {
+            data = Arrays.copyOf(data, Math.max(2 * data.length, used + len));
+        }
+        System.arraycopy(b, off, data, used, len);
+        insert(used, len, h);
+        used += len;
+        size++;
+        return true;
+    }
+
+    public boolean contains(String key) {
+        byte[] b = key.getBytes(UTF8);
+        return contains(b, 0, b.length);
+    }
+
+    /**
+     * @return true if the bytes b[off] .. b[off+len-1] are in the set
+     */
+    public boolean contains(byte[] b, int off, int len) {
+        return size > 0 && find(b, off, len, hash(b, off, len)) >= 0;
+    }
+
+    private int find(byte[] b, int off, int len, int h) {
+        int mask = offsets.length - 1;
+        for (int slot = h & mask; ; slot = (slot + 1) & mask) {
+            int o = offsets[slot];
+            if (o == 0) {
+                return -1;
+            }
+            if (hashes[slot] == h && lengths[slot] == len && equal(data, o - 1, b, off, len)) {
+                return slot;
+            }
+        }
+    }
+
+    private void insert(int offset, int len, int h) {
+        int mask = offsets.length - 1;
+        int slot = h & mask;
+        while (offsets[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        offsets[slot] = offset + 1;
+        lengths[slot] = len;
+        hashes[slot] = h;
+    }
+
+    private void rehash(int capacity) {
+        int[] o = offsets;
+        int[] l = lengths;
+        int[] h = hashes;
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+        hashes = new int[capacity];
+        for (int i = 0; i < o.length; i++) {
+            if (o[i] != 0) {
+                insert(o[i] - 1, l[i], h[i]);
+            }
+        }
+    }
+
+    private static boolean equal(byte[] a, int aOff, byte[] b, int bOff, int len) {
+        for (int i = 0; i < len; i++) {
+            if (a[aOff + i] != b[bOff + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a with a final mix, the low bits select the slot.
+     */
+    static int hash(byte[] b, int off, int len) {
+        int h = 0x811C9DC5;
+        for (int i = off; i < off + len; i++) {
+            h ^= b[i] & 0xFF;
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+}
@@ -0,0 +1,214 @@
+package de.bitocean.util.wikipedia;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.net.URI;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.util.LineReader;
+
+/**
+ * The pages of a neighborhood (e.g. the CN, IWL, A.L or B.L link group of a
+ * page), queried with the raw bytes "project page" of a pagecounts line.
+ *
+ * Small neighborhoods are given as keys (of()) and shipped with the DoFn.
+ * Large ones are read from a file with one page per line, as
+ * "project page", "project<TAB>page" or "project_page" (fromFile()). Only
+ * the path is serialized: configure() puts the file into the distributed
+ * cache, open() loads it once per task into
+ *
+ *   - a BlockedBloomFilter on the heap (about 12 bits per page), which
+ *     rejects most lines of a pagecounts file with one cache miss, and
+ *   - an OffHeapByteSliceSet with all pages, which confirms the lines that
+ *     pass the filter.
+ *
+ * So the heap of a task and the cost of a lookup stay flat when the
+ * neighborhood grows to millions of pages.
+ *
+ * Parameters:
+ *
+ *   -Dcrunchts.neighborhood.file=...    file with the pages of the neighborhood
+ *   -Dcrunchts.neighborhood.fpp=0.01    false positive rate of the Bloom filter
+ */
+public class NeighborhoodFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String FILE = "crunchts.neighborhood.file";
+    public static final String FPP = "crunchts.neighborhood.fpp";
+
+    private final ByteSliceSet inline;
+    private final String path;
+    private final double fpp;
+
+    private transient BlockedBloomFilter bloom;
+    private transient OffHeapByteSliceSet exact;
+
+    private NeighborhoodFilter(ByteSliceSet inline, String path, double fpp) {
+        this.inline = inline;
+        this.path = path;
+        this.fpp = fpp;
+    }
+
+    /**
+     * @param keys - pages as "project_page" or "project page"
+     */
+    public static NeighborhoodFilter of(Iterable<String> keys) {
+        ByteSliceSet set = new ByteSliceSet();
+        for (String key : keys) {
+            byte[] b = key.getBytes(ByteSliceSet.UTF8);
+            set.add(b, 0, normalize(b, b.length));
+        }
+        return new NeighborhoodFilter(set, null, 0.0);
+    }
+
+    public static NeighborhoodFilter fromFile(String path, double fpp) {
+        return new NeighborhoodFilter(null, path, fpp);
+    }
+
+    /**
+     * @return the filter for crunchts.neighborhood.file, null if not set
+     */
+    public static NeighborhoodFilter fromConf(Configuration conf) {
+        String file = conf.get(FILE);
+        if (file == null) {
+            return null;
+        }
+        return fromFile(file, Double.parseDouble(conf.get(FPP, "0.01")));
+    }
+
+    /**
+     * Client side: adds the file to the distributed cache of the job.
+     */
+    public void configure(Configuration conf) {
+        if (path != null) {
+            try {
+                Job job = Job.getInstance(conf);
+                job.addCacheFile(new Path(path).toUri());
+                // the job works on a copy of the configuration
+                conf.set(MRJobConfig.CACHE_FILES, job.getConfiguration().get(MRJobConfig.CACHE_FILES));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("can not add " + path + " to the distributed cache", e);
+            }
+        }
+    }
+
+    /**
+     * Task side: loads the file, from the local copy of the distributed
+     * cache if there is one, otherwise from its filesystem.
+     *
+     * @param cacheFiles - getContext().getCacheFiles() of the DoFn, null if
+     *                     there is no task context
+     */
+    public void open(Configuration conf, URI[] cacheFiles) throws IOException {
+        if (path == null || exact != null) {
+            return;
+        }
+        Path p = new Path(path);
+        FileSystem fs = p.getFileSystem(conf);
+        if (cacheFiles != null) {
+            FileSystem local = FileSystem.getLocal(conf);
+            for (URI uri : cacheFiles) {
+                // the link in the working directory has the name of the file
+                Path link = new Path(new Path(uri.getPath()).getName());
+                if (link.getName().equals(p.getName()) && local.exists(link)) {
+                    p = link;
+                    fs = local;
+                    break;
+                }
+            }
+        }
+
+        long bytes = fs.getFileStatus(p).getLen();
+        OffHeapByteSliceSet set = new OffHeapByteSliceSet((int) Math.min(1 << 24, bytes / 24 + 1));
+        InputStream in = fs.open(p);
+        try {
+            LineReader reader = new LineReader(in, conf);
+            Text line = new Text();
+            while (reader.readLine(line) > 0) {
+                byte[] b = line.getBytes();
+                int len = line.getLength();
+                if (len > 0 && b[len - 1] == '\r') {
+                    len--;
+                }
+                if (len > 0) {
+                    set.add(b, 0, normalize(b, len));
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        final BlockedBloomFilter filter = new BlockedBloomFilter(set.size(), fpp);
+        set.forEach(new OffHeapByteSliceSet.KeyVisitor() {
+            @Override
+            public void visit(byte[] b, int off, int len) {
+                filter.add(BlockedBloomFilter.hash(b, off, len));
+            }
+        });
+        bloom = filter;
+        exact = set;
+    }
+
+    /**
+     * @return true if "project page" in b[off] .. b[off+len-1] is a page of
+     *         the neighborhood
+     */
+    public boolean contains(byte[] b, int off, int len) {
+        if (inline != null) {
+            return inline.contains(b, off, len);
+        }
+        if (exact == null) {
+            throw new IllegalStateException("neighborhood " + path + " is not loaded, call open() first");
+        }
+        return bloom.mightContain(BlockedBloomFilter.hash(b, off, len)) && exact.contains(b, off, len);
+    }
+
+    public int size() {
+        return inline != null ? inline.size() : exact == null ? -1 : exact.size();
+    }
+
+    /**
+     * @return a description with size and memory, for the logs
+     */
+    @Override
+    public String toString() {
+        if (inline != null) {
+            return "neighborhood of " + inline.size() + " pages";
+        }
+        if (exact == null) {
+            return "neighborhood " + path;
+        }
+        return "neighborhood " + path + ": " + exact.size() + " pages, Bloom filter " + bloom.memory()
+                + " bytes, off-heap set " + exact.memory() + " bytes";
+    }
+
+    /**
+     * Rewrites a key in place into the form "project page" of the lines:
+     * the first blank or tab separates project and page, if there is none
+     * the first "_" (project codes contain no "_").
+     *
+     * @return the length of the key
+     */
+    static int normalize(byte[] b, int len) {
+        for (int i = 0; i < len; i++) {
+            if (b[i] == ' ' || b[i] == '\t') {
+                b[i] = ' ';
+                return len;
+            }
+        }
+        for (int i = 0; i < len; i++) {
+            if (b[i] == '_') {
+                b[i] = ' ';
+                return len;
+            }
+        }
+        return len;
+    }
+}
@@ -0,0 +1,172 @@
+package de.bitocean.util.wikipedia;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Set of byte strings like ByteSliceSet, but keys and table are stored in
+ * direct buffers outside of the Java heap, so a set with tens of millions
+ * of keys neither needs a large heap nor adds to the GC work of a task.
+ *
+ *   data  : the keys one after the other, each as [length (2 bytes)][bytes]
+ *   table : 8 bytes per slot, offset of the key + 1 (0 = free) and its hash
+ *
+ * Both buffers grow by copying, the data is limited to 2 GB and a key to
+ * 65535 bytes. Not thread safe while adding.
+ */
+public class OffHeapByteSliceSet {
+
+    static final int MAX_KEY = 0xFFFF;
+
+    private ByteBuffer data;
+    private int used = 0;
+
+    private ByteBuffer table;
+    private int slots;
+    private int size = 0;
+
+    public OffHeapByteSliceSet() {
+        this(1024);
+    }
+
+    /**
+     * @param expected - number of keys which fit without a rehash
+     */
+    public OffHeapByteSliceSet(int expected) {
+        slots = 16;
+        while (slots < 2 * expected) {
+            slots <<= 1;
+        }
+        table = ByteBuffer.allocateDirect(8 * slots);
+        data = ByteBuffer.allocateDirect(Math.max(1024, 16 * expected));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return bytes of the off-heap buffers
+     */
+    public long memory() {
+        return (long) data.capacity() + table.capacity();
+    }
+
+    public boolean add(byte[] b, int off, int len) {
+        if (len > MAX_KEY) {
+            throw new IllegalArgumentException("key of " + len + " bytes is too long");
+        }
+        int h = ByteSliceSet.hash(b, off, len);
+        if (find(b, off, len, h) >= 0) {
+            return false;
+        }
+        if (2 * (size + 1) > slots) {
+            rehash(2 * slots);
+        }
+        ensureData(len + 2);
+        data.put(used, (byte) (len >>> 8));
+        data.put(used + 1, (byte) len);
+        for (int i = 0; i < len; i++) {
+            data.put(used + 2 + i, b[off + i]);
+        }
+        insert(used, h);
+        used += len + 2;
+        size++;
+        return true;
+    }
+
+    public boolean contains(byte[] b, int off, int len) {
+        return size > 0 && find(b, off, len, ByteSliceSet.hash(b, off, len)) >= 0;
+    }
+
+    private int find(byte[] b, int off, int len, int h) {
+        int mask = slots - 1;
+        for (int slot = h & mask; ; slot = (slot + 1) & mask) {
+            int o = table.getInt(8 * slot);
+            if (o == 0) {
+                return -1;
+            }
+            if (table.getInt(8 * slot + 4) == h && equal(o - 1, b, off, len)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean equal(int offset, byte[] b, int off, int len) {
+        if (keyLength(offset) != len) {
+            return false;
+        }
+        int p = offset + 2;
+        for (int i = 0; i < len; i++) {
+            if (data.get(p + i) != b[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int keyLength(int offset) {
+        return ((data.get(offset) & 0xFF) << 8) | (data.get(offset + 1) & 0xFF);
+    }
+
+    private void insert(int offset, int h) {
+        int mask = slots - 1;
+        int slot = h & mask;
+        while (table.getInt(8 * slot) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table.putInt(8 * slot, offset + 1);
+        table.putInt(8 * slot + 4, h);
+    }
+
+    private void rehash(int capacity) {
+        ByteBuffer old = table;
+        int oldSlots = slots;
+        table = ByteBuffer.allocateDirect(8 * capacity);
+        slots = capacity;
+        for (int s = 0; s < oldSlots; s++) {
+            int o = old.getInt(8 * s);
+            if (o != 0) {
+                insert(o - 1, old.getInt(8 * s + 4));
+            }
+        }
+    }
+
+    private void ensureData(int extra) {
+        long need = (long) used + extra;
+        if (need <= data.capacity()) {
+            return;
+        }
+        if (need > Integer.MAX_VALUE) {
+            throw new IllegalStateException("more than 2 GB of keys");
+        }
+        ByteBuffer d = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, Math.max(need, 2L * data.capacity())));
+        ByteBuffer src = data.duplicate();
+        src.position(0);
+        src.limit(used);
+        d.put(src);
+        data = d;
+    }
+
+    /**
+     * Calls the visitor for each key, the array is reused.
+     */
+    public void forEach(KeyVisitor visitor) {
+        byte[] buf = new byte[256];
+        int p = 0;
+        while (p < used) {
+            int len = keyLength(p);
+            if (buf.length < len) {
+                buf = new byte[len];
+            }
+            for (int i = 0; i < len; i++) {
+                buf[i] = data.get(p + 2 + i);
+            }
+            visitor.visit(buf, 0, len);
+            p += len + 2;
+        }
+    }
+
+    public interface KeyVisitor {
+        void visit(byte[] b, int off, int len);
+    }
+}
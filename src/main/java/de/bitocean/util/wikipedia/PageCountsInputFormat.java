@@ -0,0 +1,113 @@
+package de.bitocean.util.wikipedia;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+
+/**
+ * Packs many hourly pagecounts files into one split and keeps the identity
+ * of the file for each record: the key is the name of the file the line
+ * comes from (e.g. pagecounts-20071210-010000.gz), the value is the line.
+ *
+ * The timestamp of a record can so be derived from its key, also inside a
+ * CombineFileSplit with many files (a DoFn which looks at the input split
+ * only sees the split, not the file of the current record). Each file of
+ * a split is read with its own LineRecordReader, the key object changes
+ * only when the next file is opened.
+ *
+ * The format combines the files itself, so Crunch's own combine mode must
+ * stay off:
+ *
+ *   TableSource<Text, Text> source = From.formattedFile( path, PageCountsInputFormat.class, Text.class, Text.class );
+ *   source.inputConf( RuntimeParameters.DISABLE_COMBINE_FILE, "true" );
+ *
+ * Parameters:
+ *
+ *   -Dcrunchts.pagecounts.split.maxsize=1073741824   bytes per split
+ */
+public class PageCountsInputFormat extends CombineFileInputFormat<Text, Text> {
+
+    public static final String MAX_SPLIT_SIZE = "crunchts.pagecounts.split.maxsize";
+    public static final long DEFAULT_MAX_SPLIT_SIZE = 1024L * 1024L * 1024L;
+
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+        setMaxSplitSize(job.getConfiguration().getLong(MAX_SPLIT_SIZE, DEFAULT_MAX_SPLIT_SIZE));
+        return super.getSplits(job);
+    }
+
+    /**
+     * Same as TextInputFormat: gzip files are read as a whole.
+     */
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        CompressionCodec codec = new CompressionCodecFactory(context.getConfiguration()).getCodec(file);
+        return codec == null || codec instanceof SplittableCompressionCodec;
+    }
+
+    @Override
+    public RecordReader<Text, Text> createRecordReader(InputSplit split, TaskAttemptContext context) throws IOException {
+        return new CombineFileRecordReader<Text, Text>((CombineFileSplit) split, context, FileLineRecordReader.class);
+    }
+
+    /**
+     * Reads the lines of file idx of a CombineFileSplit, the key is the
+     * name of the file. The constructor is called by CombineFileRecordReader.
+     */
+    public static class FileLineRecordReader extends RecordReader<Text, Text> {
+
+        private final FileSplit fileSplit;
+        private final LineRecordReader lines = new LineRecordReader();
+        private final Text key;
+
+        public FileLineRecordReader(CombineFileSplit split, TaskAttemptContext context, Integer idx) {
+            Path path = split.getPath(idx);
+            this.fileSplit = new FileSplit(path, split.getOffset(idx), split.getLength(idx), new String[0]);
+            this.key = new Text(path.getName());
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+            lines.initialize(fileSplit, context);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            return lines.nextKeyValue();
+        }
+
+        @Override
+        public Text getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public Text getCurrentValue() {
+            return lines.getCurrentValue();
+        }
+
+        @Override
+        public float getProgress() throws IOException {
+            return lines.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            lines.close();
+        }
+    }
+}
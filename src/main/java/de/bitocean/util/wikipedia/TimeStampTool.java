@@ -3,6 +3,7 @@ package de.bitocean.util.wikipedia;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 
 /**
  * Wikipedia Click-Count data is public available.
@@ -16,20 +17,36 @@ import java.util.GregorianCalendar;
  * The timestamp represents the beginning of the hour for which data 
  * is provided. Due to inqaccuracy one can not relay on all digits.
  * 
- * This implementation does not do any kind of correction.
- * More advanced testing is required for future releases. 
+ * The file names are in UTC. epochHour() and getUTCTimeInMillis() parse
+ * the fixed-width layout arithmetically (no Calendar, no allocation), the
+ * minutes and seconds are ignored, so the inaccurate digits do not matter.
+ * The day of the last call is cached, consecutive files of one day only
+ * parse the hour. slots() maps the input files of a TSB to hour slots.
  *
- * @author Mirko Kämpf
+ * getTimeInMillis() is the old implementation, it uses the default time
+ * zone of the JVM and gives wrong hours across DST changes.
  * 
+ * @author Mirko Kämpf
+ *
  */
 public class TimeStampTool {
 
+    static final long HOUR = 3600L * 1000L;
+
+    /**
+     * Last day: yyyymmdd in the upper, days since 1970-01-01 in the lower
+     * 32 bits, one volatile long, so the cache is consistent between threads.
+     */
+    private static volatile long lastDay = -1L;
+
     /**
      * Extract time stamp from click-count file name.
      * 
      * @param filename
-     * @return timestamp in ms
+     * @return timestamp in ms, in the default time zone
+     * @deprecated depends on the default time zone, use getUTCTimeInMillis()
      */
+    @Deprecated
     static public long getTimeInMillis(String filename) {
         // System.out.println( filename );
         String[] s = filename.split("-");
@@ -40,6 +57,111 @@ public class TimeStampTool {
         Calendar cal = new GregorianCalendar(j, m-1, d, h,0);
         return cal.getTimeInMillis();
     }
+
+    /**
+     * @param filename - "pagecounts-YYYYMMDD-HHMMSS...", with or without a
+     *                   directory
+     * @return the beginning of the hour in ms since 1970-01-01 UTC
+     */
+    static public long getUTCTimeInMillis(String filename) {
+        return epochHour(filename) * HOUR;
+    }
+
+    /**
+     * @param filename - "pagecounts-YYYYMMDD-HHMMSS...", with or without a
+     *                   directory
+     * @return hours since 1970-01-01 00:00 UTC
+     * @throws IllegalArgumentException if the name has not this layout
+     */
+    static public long epochHour(String filename) {
+        int p = filename.indexOf('-', filename.lastIndexOf('/') + 1) + 1;
+        if (p == 0 || filename.length() < p + 11 || filename.charAt(p + 8) != '-') {
+            throw new IllegalArgumentException("not a pagecounts file name: " + filename);
+        }
+        int day = digits(filename, p, 8);
+        int hour = digits(filename, p + 9, 2);
+        if (hour > 23) {
+            throw new IllegalArgumentException("not a pagecounts file name: " + filename);
+        }
+        return 24L * epochDay(day) + hour;
+    }
+
+    /**
+     * @param yyyymmdd - e.g. 20071210
+     * @return days since 1970-01-01
+     * @throws IllegalArgumentException for impossible dates like 20070231
+     */
+    static public long epochDay(int yyyymmdd) {
+        long cached = lastDay;
+        if ((int) (cached >>> 32) == yyyymmdd) {
+            return (int) cached;
+        }
+        int y = yyyymmdd / 10000;
+        int m = yyyymmdd / 100 % 100;
+        int d = yyyymmdd % 100;
+        if (m < 1 || m > 12 || d < 1 || d > daysOfMonth(y, m)) {
+            throw new IllegalArgumentException("not a date: " + yyyymmdd);
+        }
+        long days = daysFromCivil(y, m, d);
+        lastDay = ((long) yyyymmdd << 32) | (days & 0xFFFFFFFFL);
+        return days;
+    }
+
+    static int daysOfMonth(int y, int m) {
+        if (m == 2) {
+            return (y % 4 == 0 && y % 100 != 0) || y % 400 == 0 ? 29 : 28;
+        }
+        return m == 4 || m == 6 || m == 9 || m == 11 ? 30 : 31;
+    }
+
+    /**
+     * Days since 1970-01-01 of a date in the proleptic Gregorian calendar
+     * (H. Hinnant, chrono-compatible low-level date algorithms).
+     */
+    static long daysFromCivil(int y, int m, int d) {
+        y -= m <= 2 ? 1 : 0;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = (int) (y - era * 400);
+        int doy = (153 * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * Hour slots of the input files of a TSB.
+     *
+     * @param paths - file names or paths of pagecounts files
+     * @param firstHour - epoch hour of slot 0
+     * @return the slot of each file, -1 for names which are no pagecounts files
+     */
+    static public int[] slots(List<String> paths, long firstHour) {
+        int[] slots = new int[paths.size()];
+        int i = 0;
+        for (String path : paths) {
+            int slot;
+            try {
+                long h = epochHour(path) - firstHour;
+                slot = h < 0 || h > Integer.MAX_VALUE ? -1 : (int) h;
+            } catch (IllegalArgumentException e) {
+                slot = -1;
+            }
+            slots[i++] = slot;
+        }
+        return slots;
+    }
+
+    private static int digits(String s, int from, int n) {
+        int v = 0;
+        for (int i = from; i < from + n; i++) {
+            int c = s.charAt(i) - '0';
+            if (c < 0 || c > 9) {
+                throw new IllegalArgumentException("not a pagecounts file name: " + s);
+            }
+            v = v * 10 + c;
+        }
+        return v;
+    }
+
     
     public static void main( String[] args ) { 
         String fn = "pagecounts-20071210-010000.gz";
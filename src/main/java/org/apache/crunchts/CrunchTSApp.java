@@ -29,10 +29,25 @@ import java.util.List;
 
 import javax.security.auth.login.LoginException;
 
+import de.bitocean.crunchts.simple.CalcTSBProfile;
+import de.bitocean.crunchts.simple.PageCountsToTSB;
+
+import org.apache.crunchts.io.TSBConverter;
+import org.apache.crunchts.io.TSBReport;
+import org.apache.crunchts.simple.ApproximateCorrelationNetworkFromTSBucket;
+import org.apache.crunchts.simple.BinEventTimeSeries;
+import org.apache.crunchts.simple.CombineTimeSeriesIndexTriplesFromTSBucket;
 import org.apache.crunchts.simple.CombineTimeSeriesPairsAndTriplesFromTSBucket;
 import org.apache.crunchts.simple.CombineTimeSeriesPairsFromTSBucket;
 import org.apache.crunchts.simple.CombineTimeSeriesTriplesFromTSBucket;
 import org.apache.crunchts.simple.ConvertTSBucket;
+import org.apache.crunchts.simple.CrossCorrelationNetworkFromTSBucket;
+import org.apache.crunchts.simple.DFAFromTSBucket;
+import org.apache.crunchts.simple.GrangerNetworkFromTSBucket;
+import org.apache.crunchts.simple.MutualInformationNetworkFromTSBucket;
+import org.apache.crunchts.simple.ReturnIntervalStatisticsFromTSBucket;
+import org.apache.crunchts.simple.RollingCorrelationNetworkFromTSBucket;
+import org.apache.crunchts.simple.TransferEntropyNetworkFromTSBucket;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
@@ -48,6 +63,7 @@ import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 
 /**
@@ -90,15 +106,28 @@ public class CrunchTSApp extends FsShell {
     }
 
     /**
-     * Gives a report for a time series bucket.
+     * Gives a report for a time series bucket, estimated from the file
+     * metadata and samples or exact with a parallel scan. Without a bucket
+     * the file system status is shown.
      *
      * @exception IOException if the tsbucket does not exist.
      */
-    public void report(String tsbFilePath) throws IOException {
-        
-        System.out.println("Time-Series-Bucket report (TSBr) is comming soon ...");
-
-        System.out.println("> path: " + tsbFilePath);
+    public void report(String tsbFilePath, boolean exact) throws IOException {
+
+        if (tsbFilePath != null) {
+            Path path = new Path(tsbFilePath);
+            long t0 = System.currentTimeMillis();
+            TSBReport r;
+            if (exact) {
+                int threads = getConf().getInt(TSBReport.THREADS, Runtime.getRuntime().availableProcessors());
+                r = TSBReport.exact(getConf(), path, threads);
+            } else {
+                r = TSBReport.estimate(getConf(), path, getConf().getInt(TSBReport.SAMPLES, 64));
+            }
+            r.print(System.out);
+            System.out.println("> time        : " + (System.currentTimeMillis() - t0) + " ms");
+            return;
+        }
 
         if (fs instanceof DistributedFileSystem) {
 
@@ -130,17 +159,85 @@ public class CrunchTSApp extends FsShell {
 
         String summary = "hadoop tsb is the command to execute TSB administrative commands.\n"
                 + "The full syntax is: \n\n"
-                + "hadoop tsb [-report] "
+                + "hadoop tsb [-report [<tsb> [--exact]]]\n"
                 + "\t[-explode [pairs|triples] ]\n"
-                + "\t[-cc]\n"
+                + "\t[-explode indextriples <tsb> <output>]\n"
+                + "\t[-cc <tsb> <output>]\n"
+                + "\t[-lsh <tsb> <output> [--inmemory]]\n"
+                + "\t[-rolling <tsb> <output>]\n"
+                + "\t[-granger <tsb> <output>]\n"
+                + "\t[-mi <tsb> <output>]\n"
+                + "\t[-te <tsb> <output>]\n"
+                + "\t[-dfa <tsb> <output>]\n"
+                + "\t[-ris <tsb> <output>]\n"
+                + "\t[-convert [avro|columnar|seqfile] <input> <output>]\n"
+                + "\t[-bin <events> <output>]\n"
+                + "\t[-pagecounts <pagecounts> <output>]\n"
+                + "\t[-profile <output> <tsb> [<tsb> ...]]\n"
                 + "\t[-es]\n"
                 + "\t[-gc]\n" + "\t[-help [cmd]]\n";
 
-        String report = "-report: \tReports basic filesystem information and statistics.\n";
+        String report = "-report [<tsb> [--exact]]: \tReports the number of series, the length distribution,\n"
+                + "\t\tvalue range and bytes per series of a bucket, estimated from the\n"
+                + "\t\tSequenceFile headers and samples at sync points or from the index of\n"
+                + "\t\ta columnar TSB. --exact reads all series with a thread pool\n"
+                + "\t\t(crunchts.report.threads). Without a bucket the filesystem status is shown.\n";
+
+        String explode = "-explode :  Explode the time series bucket into a TS-Pair-Bucket.\n"
+                + "\t\tindextriples <tsb> <output> writes the triples i < j < k as int tuples,\n"
+                + "\t\tthe series are stored once in a columnar TSB next to them.\n"
+                + "\t\t-Dcrunchts.validate=true drops inconsistent series first (<output>_rejects).\n";
+
+        String cc = "-cc <tsb> <output>: \tCreates a correlation network from the time series bucket.\n"
+                + "\t\tLinks with |rho| >= crunchts.cc.threshold within the lag window\n"
+                + "\t\tcrunchts.cc.maxlag are written as Avro records.\n"
+                + "\t\t-Dcrunchts.validate=true drops inconsistent series first (<output>_rejects).\n";
+
+        String lsh = "-lsh <tsb> <output> [--inmemory]: \tCreates a correlation network from LSH candidates.\n"
+                + "\t\tSimHash signatures (crunchts.lsh.bits, crunchts.lsh.band) select the candidate\n"
+                + "\t\tpairs, only these are verified like in -cc. The recall is printed.\n";
+
+        String rolling = "-rolling <tsb> <output>: \tCreates one correlation network per window step.\n"
+                + "\t\tWindows of crunchts.rolling.window values move by crunchts.rolling.step values,\n"
+                + "\t\tlinks with |rho| >= crunchts.rolling.threshold are written with their window index.\n";
+
+        String granger = "-granger <tsb> <output>: \tCreates a directed Granger-causality network.\n"
+                + "\t\tEach pair is tested in both directions for the lags 1..crunchts.granger.maxlag,\n"
+                + "\t\tlinks with p <= crunchts.granger.alpha are written as Avro records.\n";
+
+        String mi = "-mi <tsb> <output>: \tCreates a mutual-information network from the time series bucket.\n"
+                + "\t\tThe series are discretized with crunchts.mi.method and crunchts.mi.bins,\n"
+                + "\t\tlinks with MI >= crunchts.mi.threshold (bits) are written as Avro records.\n";
+
+        String te = "-te <tsb> <output>: \tCreates a directed transfer-entropy network from the time series bucket.\n"
+                + "\t\tHistory crunchts.te.history and lag crunchts.te.lag, each direction is tested\n"
+                + "\t\twith crunchts.te.surrogates shuffled surrogates, links with p <= crunchts.te.alpha\n"
+                + "\t\tare written as Avro records.\n";
+
+        String dfa = "-dfa <tsb> <output>: \tDetrended Fluctuation Analysis of each time series.\n"
+                + "\t\tWrites F(s) and the exponent alpha as Avro records.\n";
+
+        String ris = "-ris <tsb> <output>: \tReturn-Interval-Statistics for the quantiles crunchts.ris.quantiles.\n"
+                + "\t\tWrites histograms per series and merged for the bucket.\n";
+
+        String convert = "-convert [avro|columnar|seqfile] <input> <output>: \tConverts a time series bucket.\n"
+                + "\t\tavro     : SequenceFile TSB to Avro records of ContEquidistTS.\n"
+                + "\t\tcolumnar : SequenceFile TSB to one columnar file with an index,\n"
+                + "\t\t           single series can be read without a scan.\n"
+                + "\t\tseqfile  : columnar file back to a SequenceFile TSB.\n";
 
-        String explode = "-explode :  Explode the time series bucket into a TS-Pair-Bucket.\n";
+        String bin = "-bin <events> <output>: \tConverts event time series (Avro) into equidistant series.\n"
+                + "\t\tBins of crunchts.bin.resolution ms, aggregated with\n"
+                + "\t\tcrunchts.bin.aggregation (SUM, COUNT or MEAN).\n";
 
-        String cc = "-cc:\t";
+        String pagecounts = "-pagecounts <pagecounts> <output>: \tBuilds a TSB from raw Wikipedia pagecounts files.\n"
+                + "\t\tOne hourly series per project_page for the days crunchts.pagecounts.from\n"
+                + "\t\tto crunchts.pagecounts.to (yyyyMMdd), only the pages listed in\n"
+                + "\t\tcrunchts.neighborhood.file if it is set.\n";
+
+        String profile = "-profile <output> <tsb> [<tsb> ...]: \tProfiles all series of the buckets in one job.\n"
+                + "\t\tWrites count, sum, mean, variance, min, max, zero fraction and non-zero\n"
+                + "\t\tlength per series and per bucket (label *) as one table.\n";
 
         String es = "-es:\t";
 
@@ -155,6 +252,28 @@ public class CrunchTSApp extends FsShell {
             System.out.println(explode);
         } else if ("cc".equals(cmd)) {
             System.out.println(cc);
+        } else if ("lsh".equals(cmd)) {
+            System.out.println(lsh);
+        } else if ("rolling".equals(cmd)) {
+            System.out.println(rolling);
+        } else if ("granger".equals(cmd)) {
+            System.out.println(granger);
+        } else if ("mi".equals(cmd)) {
+            System.out.println(mi);
+        } else if ("te".equals(cmd)) {
+            System.out.println(te);
+        } else if ("dfa".equals(cmd)) {
+            System.out.println(dfa);
+        } else if ("ris".equals(cmd)) {
+            System.out.println(ris);
+        } else if ("convert".equals(cmd)) {
+            System.out.println(convert);
+        } else if ("bin".equals(cmd)) {
+            System.out.println(bin);
+        } else if ("pagecounts".equals(cmd)) {
+            System.out.println(pagecounts);
+        } else if ("profile".equals(cmd)) {
+            System.out.println(profile);
         } else if ("es".equals(cmd)) {
             System.out.println(es);
         } else if ("help".equals(cmd)) {
@@ -166,6 +285,17 @@ public class CrunchTSApp extends FsShell {
             System.out.println(report);
             System.out.println(explode);
             System.out.println(cc);
+            System.out.println(lsh);
+            System.out.println(rolling);
+            System.out.println(granger);
+            System.out.println(mi);
+            System.out.println(te);
+            System.out.println(dfa);
+            System.out.println(ris);
+            System.out.println(convert);
+            System.out.println(bin);
+            System.out.println(pagecounts);
+            System.out.println(profile);
             System.out.println(es);
             System.out.println(gc);
             System.out.println(help);
@@ -195,13 +325,39 @@ public class CrunchTSApp extends FsShell {
         //
         // verify that we have enough command line parameters
         //
-        if ("-explode".equals(cmd)) {
-            if (argv.length != 3) {
+        if ("-report".equals(cmd)) {
+            if (argv.length > 3 || (argv.length == 3 && !"--exact".equals(argv[2]))) {
+                printHelp(cmd);
+                return exitCode;
+            }
+        } else if ("-explode".equals(cmd)) {
+            if (argv.length != 3 && !(argv.length == 4 && "indextriples".equals(argv[1]))) {
                 printHelp(cmd);
                 return exitCode;
             }
         } else if ("-cc".equals(cmd)) {
-            if (argv.length != 2) {
+            if (argv.length != 3) {
+                printHelp(cmd);
+                return exitCode;
+            }
+        } else if ("-lsh".equals(cmd)) {
+            if (argv.length != 3 && !(argv.length == 4 && "--inmemory".equals(argv[3]))) {
+                printHelp(cmd);
+                return exitCode;
+            }
+        } else if ("-rolling".equals(cmd) || "-granger".equals(cmd) || "-mi".equals(cmd) || "-te".equals(cmd)
+                || "-dfa".equals(cmd) || "-ris".equals(cmd) || "-bin".equals(cmd) || "-pagecounts".equals(cmd)) {
+            if (argv.length != 3) {
+                printHelp(cmd);
+                return exitCode;
+            }
+        } else if ("-profile".equals(cmd)) {
+            if (argv.length < 3) {
+                printHelp(cmd);
+                return exitCode;
+            }
+        } else if ("-convert".equals(cmd)) {
+            if (argv.length != 4) {
                 printHelp(cmd);
                 return exitCode;
             }
@@ -227,9 +383,33 @@ public class CrunchTSApp extends FsShell {
         exitCode = 0;
         try {
             if ("-report".equals(cmd)) {
-                report(null);
+                report(argv.length > 1 ? argv[1] : null, argv.length == 3);
             } else if ("-explode".equals(cmd)) {
-                explode(argv);
+                exitCode = explode(argv);
+            } else if ("-cc".equals(cmd)) {
+                exitCode = runJob("CROSS-CORRELATION NETWORK", new CrossCorrelationNetworkFromTSBucket(), argv);
+            } else if ("-lsh".equals(cmd)) {
+                exitCode = runJob("APPROXIMATE CORRELATION NETWORK", new ApproximateCorrelationNetworkFromTSBucket(argv.length == 4), argv);
+            } else if ("-rolling".equals(cmd)) {
+                exitCode = runJob("ROLLING CORRELATION NETWORKS", new RollingCorrelationNetworkFromTSBucket(), argv);
+            } else if ("-granger".equals(cmd)) {
+                exitCode = runJob("GRANGER NETWORK", new GrangerNetworkFromTSBucket(), argv);
+            } else if ("-mi".equals(cmd)) {
+                exitCode = runJob("MUTUAL INFORMATION NETWORK", new MutualInformationNetworkFromTSBucket(), argv);
+            } else if ("-te".equals(cmd)) {
+                exitCode = runJob("TRANSFER ENTROPY NETWORK", new TransferEntropyNetworkFromTSBucket(), argv);
+            } else if ("-dfa".equals(cmd)) {
+                exitCode = runJob("DFA", new DFAFromTSBucket(), argv);
+            } else if ("-ris".equals(cmd)) {
+                exitCode = runJob("RIS", new ReturnIntervalStatisticsFromTSBucket(), argv);
+            } else if ("-convert".equals(cmd)) {
+                exitCode = convert(argv);
+            } else if ("-bin".equals(cmd)) {
+                exitCode = runJob("BIN EVENTS", new BinEventTimeSeries(), argv);
+            } else if ("-pagecounts".equals(cmd)) {
+                exitCode = runJob("PAGECOUNTS TO TSB", new PageCountsToTSB(), argv);
+            } else if ("-profile".equals(cmd)) {
+                exitCode = profile(argv);
             } else if ("-help".equals(cmd)) {
                 if (i < argv.length) {
                     printHelp(argv[i]);
@@ -267,72 +447,68 @@ public class CrunchTSApp extends FsShell {
         return exitCode;
     }
 
-    private void explode(String[] argv) {
+    private int explode(String[] argv) throws Exception {
         if (argv[1].equals("pairs")) {
-            pairs(argv);
+            return runJob("PAIRS", new CombineTimeSeriesPairsFromTSBucket(), argv);
         } else if (argv[1].equals("triples")) {
-            triples(argv);
+            return runJob("TRIPLES", new CombineTimeSeriesTriplesFromTSBucket(), argv);
         } else if (argv[1].equals("pairsandtriples")) {
-            pairsAndTriples(argv);
-        }
-    }
-
-    private void pairsAndTriples(String[] argv) {
-        System.out.println("Create TS PAIRS and TRIPLES");
-        try {
-            String[] arguments = new String[2];
-            arguments[0] = argv[1];
-            arguments[1] = argv[2];
-            int exitCode = ToolRunner.run(new Configuration(), new CombineTimeSeriesPairsAndTriplesFromTSBucket(), arguments);
-        } catch (Exception e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            return runJob("Create TS PAIRS and TRIPLES", new CombineTimeSeriesPairsAndTriplesFromTSBucket(), argv);
+        } else if (argv[1].equals("indextriples")) {
+            return runJob("INDEX TRIPLES", new CombineTimeSeriesIndexTriplesFromTSBucket(),
+                    new String[] { argv[1], argv[2], argv[3] });
         }
-
+        return 0;
     }
 
-    private void triples(String[] argv) {
-        System.out.println("TRIPLES");
-        try {
-            String[] arguments = new String[2];
-            arguments[0] = argv[1];
-            arguments[1] = argv[2];
-            int exitCode = ToolRunner.run(new Configuration(), new CombineTimeSeriesTriplesFromTSBucket(), arguments);
-        } catch (Exception e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
+    /**
+     * Runs one of the analysis jobs with the arguments <input> <output>.
+     *
+     * @return the exit code of the tool
+     */
+    private int runJob(String title, Tool tool, String[] argv) throws Exception {
+        System.out.println(title);
+        String[] arguments = new String[2];
+        arguments[0] = argv[1];
+        arguments[1] = argv[2];
+        return ToolRunner.run(getConf(), tool, arguments);
     }
 
-    private void pairs(String[] argv) {
-        System.out.println("PAIRS");
-        try {
-            String[] arguments = new String[2];
-            arguments[0] = argv[1];
-            arguments[1] = argv[2];
-            int exitCode = ToolRunner.run(new Configuration(), new CombineTimeSeriesPairsFromTSBucket(), arguments);
-        } catch (Exception e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
+    /**
+     * Profiles the buckets with the arguments <output> <tsb> [<tsb> ...].
+     *
+     * @return the exit code of the tool
+     */
+    private int profile(String[] argv) throws Exception {
+        System.out.println("PROFILE");
+        String[] arguments = new String[argv.length - 1];
+        System.arraycopy(argv, 1, arguments, 0, arguments.length);
+        return ToolRunner.run(getConf(), new CalcTSBProfile(), arguments);
     }
 
     /**
      * Converts TS bucket into new representation.
      *
-     * @param argv
+     * @param argv -convert [avro|columnar|seqfile] <input> <output>
+     * @return the exit code of the conversion
      */
-    private void convert(String[] argv) {
-        System.out.println("TRANSFORM");
-        try {
-            String[] arguments = new String[2];
-            arguments[0] = argv[1];
-            arguments[1] = argv[2];
-            int exitCode = ToolRunner.run(new Configuration(), new ConvertTSBucket(), arguments);
-        } catch (Exception e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+    private int convert(String[] argv) throws Exception {
+        String format = argv[1];
+        Path input = new Path(argv[2]);
+        Path output = new Path(argv[3]);
+
+        if ("avro".equals(format)) {
+            return runJob("TRANSFORM", new ConvertTSBucket(), new String[] { argv[1], argv[2], argv[3] });
+        } else if ("columnar".equals(format)) {
+            int n = TSBConverter.toColumnar(getConf(), input, output);
+            System.out.println("> " + n + " series written to " + output);
+        } else if ("seqfile".equals(format)) {
+            int n = TSBConverter.toSequenceFile(getConf(), input, output);
+            System.out.println("> " + n + " series written to " + output);
+        } else {
+            throw new IllegalArgumentException("unknown format: " + format);
         }
+        return 0;
     }
 
     protected FileSystem fs;
@@ -0,0 +1,272 @@
+package org.apache.crunchts;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.FilterFn;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.Pair;
+import org.apache.crunch.fn.Aggregators;
+import org.apache.crunch.io.To;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Consistency check of a time series bucket before the expensive pair and
+ * triple computations. A series is rejected if
+ *
+ *   short     : it has less than minLength values
+ *   length    : its length differs from the reference length
+ *   start     : its t0 differs from the reference t0
+ *   rate      : its sampling rate differs from the reference rate
+ *   nonfinite : it contains NaN or infinite values
+ *   constant  : all values are equal (no defined correlation)
+ *
+ * The reference length, t0 and rate are configured or, if not, taken from
+ * the most frequent combination in the bucket.
+ *
+ * In a pipeline the validator is the first stage:
+ *
+ *   PCollection<ContEquidistTS> clean = TSBValidator.gate( getConf(), converted, args[1] );
+ *
+ * The stage is off by default and gate() returns the series unchanged.
+ * With -Dcrunchts.validate=true the rejected series are written as
+ * "label \t reason" to <output>_rejects.
+ *
+ * The series of gate() and TSBConverter come from SequenceFile TSBs, which
+ * have no t0 and sampling rate (t0 = 0, rate = 1.0). There the keys
+ * crunchts.validate.start and crunchts.validate.rate are ignored and only
+ * the length is compared with the reference.
+ *
+ * Parameters:
+ *
+ *   -Dcrunchts.validate=false          off by default, =true enables the stage
+ *   -Dcrunchts.validate.minlength=2    minimal length of a series
+ *   -Dcrunchts.validate.length=...     reference length
+ *   -Dcrunchts.validate.start=...      reference t0
+ *   -Dcrunchts.validate.rate=...       reference sampling rate
+ *   -Dcrunchts.validate.constant=false accept constant series
+ */
+public class TSBValidator implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String ENABLED = "crunchts.validate";
+    public static final String MIN_LENGTH = "crunchts.validate.minlength";
+    public static final String LENGTH = "crunchts.validate.length";
+    public static final String START = "crunchts.validate.start";
+    public static final String RATE = "crunchts.validate.rate";
+    public static final String ALLOW_CONSTANT = "crunchts.validate.constant";
+
+    public static final String SHORT = "short";
+    public static final String WRONG_LENGTH = "length";
+    public static final String WRONG_START = "start";
+    public static final String WRONG_RATE = "rate";
+    public static final String NON_FINITE = "nonfinite";
+    public static final String CONSTANT = "constant";
+
+    private final int minLength;
+    private final boolean allowConstant;
+
+    private int length = -1;
+    private boolean hasStart = false;
+    private long start = 0;
+    private double rate = Double.NaN;
+
+    public TSBValidator(int minLength, boolean allowConstant) {
+        this.minLength = minLength;
+        this.allowConstant = allowConstant;
+    }
+
+    public static TSBValidator fromConf(Configuration conf) {
+        TSBValidator v = new TSBValidator(conf.getInt(MIN_LENGTH, 2), conf.getBoolean(ALLOW_CONSTANT, false));
+        v.length = conf.getInt(LENGTH, -1);
+        if (conf.get(START) != null) {
+            v.hasStart = true;
+            v.start = conf.getLong(START, 0);
+        }
+        if (conf.get(RATE) != null) {
+            v.rate = Double.parseDouble(conf.get(RATE));
+        }
+        return v;
+    }
+
+    /**
+     * @return a copy which compares the series with the given reference
+     */
+    public TSBValidator withReference(int length, long start, double rate) {
+        TSBValidator v = new TSBValidator(minLength, allowConstant);
+        v.length = length;
+        v.hasStart = true;
+        v.start = start;
+        v.rate = rate;
+        return v;
+    }
+
+    /**
+     * @return a copy which only compares the length with the reference, for
+     *         sources without t0 and sampling rate (SequenceFile TSBs)
+     */
+    public TSBValidator withLength(int length) {
+        TSBValidator v = new TSBValidator(minLength, allowConstant);
+        v.length = length;
+        return v;
+    }
+
+    /**
+     * @return true if length, t0 and sampling rate are all configured
+     */
+    public boolean hasReference() {
+        return length >= 0 && hasStart && !Double.isNaN(rate);
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return null for a valid series, otherwise the reason of the reject
+     */
+    public String check(double[] v, int n, long t0, double sr) {
+        if (n < minLength) {
+            return SHORT;
+        }
+        if (length >= 0 && n != length) {
+            return WRONG_LENGTH;
+        }
+        if (hasStart && t0 != start) {
+            return WRONG_START;
+        }
+        if (!Double.isNaN(rate) && sr != rate) {
+            return WRONG_RATE;
+        }
+        boolean varies = false;
+        double first = n > 0 ? v[0] : 0.0;
+        for (int i = 0; i < n; i++) {
+            double x = v[i];
+            if (Double.isNaN(x) || Double.isInfinite(x)) {
+                return NON_FINITE;
+            }
+            if (x != first) {
+                varies = true;
+            }
+        }
+        if (!varies && !allowConstant) {
+            return CONSTANT;
+        }
+        return null;
+    }
+
+    public String check(ContEquidistTS ts) {
+        double[] p = ts.getPoints();
+        return check(p, p.length, ts.getStart(), ts.getSamplingRate());
+    }
+
+    /**
+     * The validation stage: the valid series and the rejects as
+     * "label \t reason". If the reference is not complete, the most frequent
+     * combination of length, t0 and rate is determined first (one small job,
+     * only the combinations are shuffled).
+     */
+    public Pair<PCollection<ContEquidistTS>, PCollection<String>> validate(PCollection<ContEquidistTS> series) {
+        TSBValidator v = this;
+        if (!hasReference()) {
+            v = withMostFrequentReference(series);
+        }
+        PCollection<ContEquidistTS> clean = series.filter("valid series", new ValidFn(v));
+        PCollection<String> rejects = series.parallelDo("rejected series", new RejectFn(v), Avros.strings());
+        return Pair.of(clean, rejects);
+    }
+
+    /**
+     * Runs validate() if crunchts.validate is true and writes the rejects
+     * to <output>_rejects. The series come from a SequenceFile TSB (t0 = 0,
+     * rate = 1.0), so a configured reference t0 or rate is not checked.
+     *
+     * @return the valid series, or all series if the validation is off
+     */
+    public static PCollection<ContEquidistTS> gate(Configuration conf, PCollection<ContEquidistTS> series, String output) {
+        if (!conf.getBoolean(ENABLED, false)) {
+            return series;
+        }
+        TSBValidator v = fromConf(conf);
+        Pair<PCollection<ContEquidistTS>, PCollection<String>> checked = v.withLength(v.getLength()).validate(series);
+        checked.second().write(To.textFile(output + "_rejects"));
+        return checked.first();
+    }
+
+    private TSBValidator withMostFrequentReference(PCollection<ContEquidistTS> series) {
+        Map<String, Long> counts = series
+                .parallelDo("reference of series", new SignatureFn(), Avros.tableOf(Avros.strings(), Avros.longs()))
+                .groupByKey()
+                .combineValues(Aggregators.SUM_LONGS())
+                .materializeToMap();
+
+        String best = null;
+        long max = -1;
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            if (e.getValue() > max) {
+                max = e.getValue();
+                best = e.getKey();
+            }
+        }
+        if (best == null) {
+            return this;
+        }
+        String[] f = best.split(",");
+        return withReference(
+                length >= 0 ? length : Integer.parseInt(f[0]),
+                hasStart ? start : Long.parseLong(f[1]),
+                !Double.isNaN(rate) ? rate : Double.parseDouble(f[2]));
+    }
+
+    static class SignatureFn extends MapFn<ContEquidistTS, Pair<String, Long>> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Pair<String, Long> map(ContEquidistTS ts) {
+            return Pair.of(ts.getPoints().length + "," + ts.getStart() + "," + ts.getSamplingRate(), 1L);
+        }
+    }
+
+    static class ValidFn extends FilterFn<ContEquidistTS> {
+
+        private static final long serialVersionUID = 1L;
+
+        final TSBValidator validator;
+
+        ValidFn(TSBValidator validator) {
+            this.validator = validator;
+        }
+
+        @Override
+        public boolean accept(ContEquidistTS ts) {
+            return validator.check(ts) == null;
+        }
+    }
+
+    static class RejectFn extends DoFn<ContEquidistTS, String> {
+
+        private static final long serialVersionUID = 1L;
+
+        final TSBValidator validator;
+
+        RejectFn(TSBValidator validator) {
+            this.validator = validator;
+        }
+
+        @Override
+        public void process(ContEquidistTS ts, Emitter<String> emitter) {
+            String reason = validator.check(ts);
+            if (reason != null) {
+                increment("crunchts.validate", reason);
+                emitter.emit(ts.getLabel() + "\t" + reason);
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package org.apache.crunchts.io;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+
+/**
+ * Random access to a columnar time series bucket (see ColumnarTSBWriter).
+ *
+ * Only the index is read on open. For a file on the local file system the
+ * data segment is memory mapped and get(i) returns a DoubleBuffer view on
+ * the mapped bytes, nothing is copied. The mapping is split into chunks of
+ * at most MAX_CHUNK bytes, the chunks end at series boundaries so a series
+ * is always inside one chunk.
+ *
+ * For other file systems (HDFS) the values of one series are fetched with a
+ * positional read, so a single series or a small neighborhood can be taken
+ * out of a large bucket without scanning it.
+ *
+ *   ColumnarTSBReader r = new ColumnarTSBReader( fs, path );
+ *   DoubleBuffer v = r.get( r.indexOf( "Berlin" ) );
+ */
+public class ColumnarTSBReader implements Closeable {
+
+	static final long MAX_CHUNK = 1L << 30;
+
+	private final FSDataInputStream in;
+	private final RandomAccessFile file;
+
+	private final String[] labels;
+	private final long[] starts;
+	private final double[] rates;
+	private final int[] lengths;
+	private final long[] offsets;
+
+	private Map<String, Integer> byLabel = null;
+
+	private final List<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+	private final long[] chunkStart;
+	private final int[] chunkOf;
+
+	public ColumnarTSBReader(FileSystem fs, Path path) throws IOException {
+		long fileLength = fs.getFileStatus( path ).getLen();
+		if ( fileLength < ColumnarTSBWriter.HEADER_SIZE + ColumnarTSBWriter.TRAILER_SIZE ) {
+			throw new IOException( path + " is not a columnar TSB, only " + fileLength + " bytes" );
+		}
+		in = fs.open( path );
+
+		byte[] magic = new byte[4];
+		in.readFully( 0, magic );
+		if ( !Arrays.equals( magic, ColumnarTSBWriter.MAGIC ) ) {
+			throw invalid( path, "is not a columnar TSB" );
+		}
+		in.seek( magic.length );
+		int version = in.readInt();
+		if ( version != ColumnarTSBWriter.VERSION ) {
+			throw invalid( path, "has version " + version + ", expected " + ColumnarTSBWriter.VERSION );
+		}
+
+		// a file which was not closed by the writer has no trailer
+		in.seek( fileLength - ColumnarTSBWriter.TRAILER_SIZE );
+		long indexOffset = in.readLong();
+		int n = in.readInt();
+		in.readFully( magic );
+		if ( !Arrays.equals( magic, ColumnarTSBWriter.MAGIC ) ) {
+			throw invalid( path, "is truncated or incomplete, the trailer is missing" );
+		}
+		long indexEnd = fileLength - ColumnarTSBWriter.TRAILER_SIZE;
+		if ( n < 0 || indexOffset < ColumnarTSBWriter.HEADER_SIZE || indexOffset > indexEnd ) {
+			throw invalid( path, "has a corrupt trailer: " + n + " series, index at " + indexOffset );
+		}
+
+		labels = new String[n];
+		starts = new long[n];
+		rates = new double[n];
+		lengths = new int[n];
+		offsets = new long[n];
+
+		in.seek( indexOffset );
+		DataInputStream index = new DataInputStream( new BufferedInputStream( in, 1 << 16 ) );
+		for( int i = 0; i < n; i++ ) {
+			labels[i] = index.readUTF();
+			starts[i] = index.readLong();
+			rates[i] = index.readDouble();
+			lengths[i] = index.readInt();
+			offsets[i] = index.readLong();
+			if ( lengths[i] < 0 || offsets[i] < ColumnarTSBWriter.HEADER_SIZE
+					|| offsets[i] + 8L * lengths[i] > indexOffset ) {
+				throw invalid( path, "has a corrupt index entry for series " + labels[i] );
+			}
+		}
+
+		File local = localFile( fs, path );
+		if ( local != null ) {
+			file = new RandomAccessFile( local, "r" );
+			chunkOf = new int[n];
+			chunkStart = mapChunks( file.getChannel(), indexOffset );
+		}
+		else {
+			file = null;
+			chunkOf = null;
+			chunkStart = null;
+		}
+	}
+
+	/**
+	 * Closes the file and returns the exception for a file which can not
+	 * be read.
+	 */
+	private IOException invalid(Path path, String reason) {
+		try {
+			in.close();
+		}
+		catch (IOException e) {
+			// the file is reported as invalid anyway
+		}
+		return new IOException( path + " " + reason );
+	}
+
+	private static File localFile(FileSystem fs, Path path) {
+		if ( fs instanceof LocalFileSystem ) {
+			return ((LocalFileSystem) fs).pathToFile( path );
+		}
+		if ( fs instanceof RawLocalFileSystem ) {
+			return ((RawLocalFileSystem) fs).pathToFile( path );
+		}
+		return null;
+	}
+
+	/**
+	 * Maps the data segment in chunks which end at series boundaries.
+	 */
+	private long[] mapChunks(FileChannel channel, long dataEnd) throws IOException {
+		List<Long> bounds = new ArrayList<Long>();
+		long begin = ColumnarTSBWriter.HEADER_SIZE;
+		for( int i = 0; i < labels.length; i++ ) {
+			long end = offsets[i] + 8L * lengths[i];
+			if ( end - begin > MAX_CHUNK && offsets[i] > begin ) {
+				map( channel, begin, offsets[i], bounds );
+				begin = offsets[i];
+			}
+			if ( end - begin > Integer.MAX_VALUE ) {
+				throw new IOException( "series " + labels[i] + " is too long to be mapped" );
+			}
+			chunkOf[i] = bounds.size();
+		}
+		map( channel, begin, dataEnd, bounds );
+
+		long[] s = new long[bounds.size()];
+		for( int k = 0; k < s.length; k++ ) {
+			s[k] = bounds.get( k );
+		}
+		return s;
+	}
+
+	private void map(FileChannel channel, long begin, long end, List<Long> bounds) throws IOException {
+		chunks.add( channel.map( FileChannel.MapMode.READ_ONLY, begin, end - begin ) );
+		bounds.add( begin );
+	}
+
+	/**
+	 * @return number of series in the bucket
+	 */
+	public int size() {
+		return labels.length;
+	}
+
+	/**
+	 * @return position of the series with the given label or -1
+	 */
+	public int indexOf(String label) {
+		if ( byLabel == null ) {
+			byLabel = new HashMap<String, Integer>( 2 * labels.length );
+			for( int i = 0; i < labels.length; i++ ) {
+				byLabel.put( labels[i], i );
+			}
+		}
+		Integer i = byLabel.get( label );
+		return i == null ? -1 : i;
+	}
+
+	public String getLabel(int i) {
+		return labels[i];
+	}
+
+	public long getStart(int i) {
+		return starts[i];
+	}
+
+	public double getSamplingRate(int i) {
+		return rates[i];
+	}
+
+	public int getLength(int i) {
+		return lengths[i];
+	}
+
+	/**
+	 * @return true if get() returns views on a memory mapped file
+	 */
+	public boolean isMapped() {
+		return file != null;
+	}
+
+	/**
+	 * The values of series i. For a mapped file the buffer is a view on the
+	 * mapping and is valid until close(), otherwise the values are read from
+	 * the file into a new buffer.
+	 */
+	public DoubleBuffer get(int i) throws IOException {
+		int bytes = 8 * lengths[i];
+		if ( file != null ) {
+			ByteBuffer chunk = chunks.get( chunkOf[i] ).duplicate();
+			int pos = (int) (offsets[i] - chunkStart[chunkOf[i]]);
+			chunk.position( pos );
+			chunk.limit( pos + bytes );
+			return chunk.slice().order( ByteOrder.LITTLE_ENDIAN ).asDoubleBuffer();
+		}
+		byte[] raw = new byte[bytes];
+		in.readFully( offsets[i], raw );
+		return ByteBuffer.wrap( raw ).order( ByteOrder.LITTLE_ENDIAN ).asDoubleBuffer();
+	}
+
+	/**
+	 * Copies the values of series i into buffer, which must be large enough.
+	 *
+	 * @return number of values
+	 */
+	public int get(int i, double[] buffer) throws IOException {
+		get( i ).get( buffer, 0, lengths[i] );
+		return lengths[i];
+	}
+
+	/**
+	 * @return a copy of series i
+	 */
+	public ContEquidistTS getSeries(int i) throws IOException {
+		double[] values = new double[lengths[i]];
+		get( i, values );
+		ContEquidistTS ts = new ContEquidistTS();
+		ts.setData( values, values.length, labels[i], starts[i], rates[i] );
+		return ts;
+	}
+
+	@Override
+	public void close() throws IOException {
+		chunks.clear();
+		if ( file != null ) {
+			file.close();
+		}
+		in.close();
+	}
+}
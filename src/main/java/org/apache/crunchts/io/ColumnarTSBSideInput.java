@@ -0,0 +1,73 @@
+package org.apache.crunchts.io;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URI;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+
+/**
+ * A columnar TSB which is shipped to all tasks with the distributed cache.
+ *
+ * DoFns keep an instance as a field, call configure() from their own
+ * configure(Configuration) and open() with the cache files of their task
+ * context in initialize(). The task opens the local copy, which is linked
+ * into its working directory, so the series are memory mapped and
+ * resolved lazily by their index. If the file is not in the cache (local
+ * or in-memory pipelines) it is opened from its original location.
+ */
+public class ColumnarTSBSideInput implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String path;
+
+	public ColumnarTSBSideInput(Path path) {
+		this.path = path.toString();
+	}
+
+	public Path getPath() {
+		return new Path( path );
+	}
+
+	/**
+	 * Adds the file to the distributed cache of the job.
+	 */
+	public void configure(Configuration conf) {
+		try {
+			Path p = getPath();
+			URI uri = p.getFileSystem( conf ).makeQualified( p ).toUri();
+			Job job = Job.getInstance( conf );
+			job.addCacheFile( uri );
+			// the job works on a copy of the configuration
+			conf.set( MRJobConfig.CACHE_FILES, job.getConfiguration().get( MRJobConfig.CACHE_FILES ) );
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException( "can not add " + path + " to the distributed cache", e );
+		}
+	}
+
+	/**
+	 * @param cacheFiles - getContext().getCacheFiles() of the DoFn, null if
+	 *                     there is no task context
+	 */
+	public ColumnarTSBReader open(Configuration conf, URI[] cacheFiles) throws IOException {
+		String name = getPath().getName();
+		if ( cacheFiles != null ) {
+			FileSystem local = FileSystem.getLocal( conf );
+			for( URI uri : cacheFiles ) {
+				// the link in the working directory has the name of the file
+				Path link = new Path( new Path( uri.getPath() ).getName() );
+				if ( link.getName().equals( name ) && local.exists( link ) ) {
+					return new ColumnarTSBReader( local, link );
+				}
+			}
+		}
+		Path p = getPath();
+		return new ColumnarTSBReader( p.getFileSystem( conf ), p );
+	}
+}
@@ -0,0 +1,128 @@
+package org.apache.crunchts.io;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Writes a columnar time series bucket.
+ *
+ * Layout of the file:
+ *
+ *   header  : magic "CTSB" (4 bytes), version (int)
+ *   data    : the values of all series, little endian doubles, one
+ *             contiguous block per series in the order of append()
+ *   index   : per series label (UTF), t0 (long), sampling rate (double),
+ *             length (int) and the file offset of the first value (long)
+ *   trailer : offset of the index (long), number of series (int), magic
+ *
+ * Header, index and trailer are written with DataOutput (big endian). The
+ * data segment starts at byte 8, so all values are 8 byte aligned and can
+ * be used in place from a memory mapped file (see ColumnarTSBReader).
+ */
+public class ColumnarTSBWriter implements Closeable {
+
+	static final byte[] MAGIC = { 'C', 'T', 'S', 'B' };
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 8;
+	static final int TRAILER_SIZE = 16;
+
+	private final FSDataOutputStream out;
+
+	private final List<String> labels = new ArrayList<String>();
+	private long[] starts = new long[1024];
+	private double[] rates = new double[1024];
+	private int[] lengths = new int[1024];
+	private long[] offsets = new long[1024];
+
+	private byte[] raw = new byte[0];
+	private boolean closed = false;
+
+	public ColumnarTSBWriter(FileSystem fs, Path path) throws IOException {
+		out = fs.create( path, true );
+		out.write( MAGIC );
+		out.writeInt( VERSION );
+	}
+
+	public void append(ContEquidistTS ts) throws IOException {
+		double[] p = ts.getPoints();
+		append( ts.getLabel(), ts.getStart(), ts.getSamplingRate(), p, p.length );
+	}
+
+	/**
+	 * Appends the first n values of a series.
+	 *
+	 * @param label - key of the series
+	 * @param t0 - time of the first value in ms
+	 * @param sr - sampling rate in Hz
+	 */
+	public void append(String label, long t0, double sr, double[] values, int n) throws IOException {
+		int i = labels.size();
+		if ( i == starts.length ) {
+			grow( 2 * i );
+		}
+		labels.add( label );
+		starts[i] = t0;
+		rates[i] = sr;
+		lengths[i] = n;
+		offsets[i] = out.getPos();
+
+		int bytes = 8 * n;
+		if ( raw.length < bytes ) {
+			raw = new byte[bytes];
+		}
+		ByteBuffer.wrap( raw, 0, bytes ).order( ByteOrder.LITTLE_ENDIAN ).asDoubleBuffer().put( values, 0, n );
+		out.write( raw, 0, bytes );
+	}
+
+	/**
+	 * @return number of series written so far
+	 */
+	public int size() {
+		return labels.size();
+	}
+
+	private void grow(int n) {
+		starts = Arrays.copyOf( starts, n );
+		rates = Arrays.copyOf( rates, n );
+		lengths = Arrays.copyOf( lengths, n );
+		offsets = Arrays.copyOf( offsets, n );
+	}
+
+	/**
+	 * Writes index and trailer, the file is not readable before.
+	 */
+	@Override
+	public void close() throws IOException {
+		if ( closed ) {
+			return;
+		}
+		closed = true;
+
+		long indexOffset = out.getPos();
+		DataOutputStream index = new DataOutputStream( out );
+		for( int i = 0; i < labels.size(); i++ ) {
+			index.writeUTF( labels.get( i ) );
+			index.writeLong( starts[i] );
+			index.writeDouble( rates[i] );
+			index.writeInt( lengths[i] );
+			index.writeLong( offsets[i] );
+		}
+		index.writeLong( indexOffset );
+		index.writeInt( labels.size() );
+		index.write( MAGIC );
+		index.flush();
+		out.close();
+	}
+}
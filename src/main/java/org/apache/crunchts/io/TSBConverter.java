@@ -0,0 +1,160 @@
+package org.apache.crunchts.io;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.crunchts.TSBValidator;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.VectorWritable;
+
+/**
+ * Converts time series buckets between the SequenceFile format (Text /
+ * VectorWritable) and the columnar format (ColumnarTSBWriter).
+ *
+ * The columnar file is one file, so the conversion runs on the client and
+ * streams the series one by one, only the index is kept in memory.
+ */
+public class TSBConverter {
+
+	/**
+	 * Skips _SUCCESS, _logs and hidden files of job output folders.
+	 */
+	static final PathFilter VISIBLE = new PathFilter() {
+		@Override
+		public boolean accept(Path p) {
+			String name = p.getName();
+			return !name.startsWith( "_" ) && !name.startsWith( "." );
+		}
+	};
+
+	/**
+	 * @param input - a SequenceFile or a folder of part files
+	 * @param output - the columnar file
+	 * @return number of series
+	 */
+	public static int toColumnar(Configuration conf, Path input, Path output) throws IOException {
+		return toColumnar( conf, input, output, null, null );
+	}
+
+	/**
+	 * Same as toColumnar(), only the series accepted by the validator are
+	 * written, the others go to the text file rejects as "label \t reason".
+	 * Without a configured length the most frequent length of a TSBReport
+	 * estimate is used. SequenceFiles have no t0 and sampling rate, so a
+	 * configured reference t0 or rate is not checked.
+	 *
+	 * @param validator - null to write all series
+	 */
+	public static int toColumnar(Configuration conf, Path input, Path output, TSBValidator validator, Path rejects) throws IOException {
+		FileSystem inFs = input.getFileSystem( conf );
+		FileSystem outFs = output.getFileSystem( conf );
+
+		if ( validator != null ) {
+			validator = validator.withLength( mostFrequentLength( conf, input, validator ) );
+		}
+
+		ColumnarTSBWriter writer = new ColumnarTSBWriter( outFs, output );
+		Writer rejected = null;
+		if ( validator != null ) {
+			rejected = new OutputStreamWriter( rejects.getFileSystem( conf ).create( rejects, true ), "UTF-8" );
+		}
+		try {
+			for( Path part : parts( inFs, input ) ) {
+				TSBReader reader = new TSBReader( inFs, part, conf );
+				try {
+					while( reader.next() ) {
+						TSVectorWritable v = reader.getValue();
+						String reason = validator == null ? null : validator.check( v.getValues(), v.size(), 0, 1.0 );
+						if ( reason == null ) {
+							writer.append( reader.getKey().toString(), 0, 1.0, v.getValues(), v.size() );
+						}
+						else {
+							rejected.write( reader.getKey().toString() + "\t" + reason + "\n" );
+						}
+					}
+				}
+				finally {
+					reader.close();
+				}
+			}
+		}
+		finally {
+			writer.close();
+			if ( rejected != null ) {
+				rejected.close();
+			}
+		}
+		return writer.size();
+	}
+
+	private static int mostFrequentLength(Configuration conf, Path input, TSBValidator validator) throws IOException {
+		if ( validator.getLength() >= 0 ) {
+			return validator.getLength();
+		}
+		TSBReport report = TSBReport.estimate( conf, input, conf.getInt( TSBReport.SAMPLES, 64 ) );
+		int length = -1;
+		long max = 0;
+		for( Map.Entry<Integer, Long> e : report.lengths.entrySet() ) {
+			if ( e.getValue() > max ) {
+				max = e.getValue();
+				length = e.getKey();
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Writes a SequenceFile of Text / VectorWritable, readable by all TSB
+	 * tools. t0 and the sampling rate are not part of that format.
+	 *
+	 * @return number of series
+	 */
+	public static int toSequenceFile(Configuration conf, Path input, Path output) throws IOException {
+		FileSystem inFs = input.getFileSystem( conf );
+		FileSystem outFs = output.getFileSystem( conf );
+
+		ColumnarTSBReader reader = new ColumnarTSBReader( inFs, input );
+		SequenceFile.Writer writer = SequenceFile.createWriter( outFs, conf, output, Text.class, VectorWritable.class );
+		try {
+			Text key = new Text();
+			VectorWritable value = new VectorWritable();
+			for( int i = 0; i < reader.size(); i++ ) {
+				DoubleBuffer b = reader.get( i );
+				double[] values = new double[reader.getLength( i )];
+				b.get( values );
+				key.set( reader.getLabel( i ) );
+				value.set( new DenseVector( values, true ) );
+				writer.append( key, value );
+			}
+		}
+		finally {
+			writer.close();
+			reader.close();
+		}
+		return reader.size();
+	}
+
+	static Path[] parts(FileSystem fs, Path input) throws IOException {
+		if ( !fs.getFileStatus( input ).isDirectory() ) {
+			return new Path[] { input };
+		}
+		FileStatus[] files = fs.listStatus( input, VISIBLE );
+		Path[] p = new Path[files.length];
+		for( int i = 0; i < files.length; i++ ) {
+			p[i] = files[i].getPath();
+		}
+		Arrays.sort( p );
+		return p;
+	}
+}
@@ -0,0 +1,102 @@
+package org.apache.crunchts.io;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+
+/**
+ * Reads a time series bucket (SequenceFile of Text / VectorWritable) with
+ * TSVectorWritable values, so no Mahout Vector is created per record.
+ *
+ * The header of the file still names VectorWritable as value class, so the
+ * record reader does not use the deserializer of the SequenceFile.Reader,
+ * it hands the raw value bytes to one reused TSVectorWritable.
+ */
+public class TSBInputFormat extends SequenceFileInputFormat<Text, TSVectorWritable> {
+
+	@Override
+	public RecordReader<Text, TSVectorWritable> createRecordReader(InputSplit split, TaskAttemptContext context) {
+		return new TSBRecordReader();
+	}
+
+	/**
+	 * Same split handling as SequenceFileRecordReader.
+	 */
+	public static class TSBRecordReader extends RecordReader<Text, TSVectorWritable> {
+
+		private SequenceFile.Reader in;
+		private long start;
+		private long end;
+		private boolean more = true;
+
+		private final Text key = new Text();
+		private final TSVectorWritable value = new TSVectorWritable();
+
+		@Override
+		public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+			FileSplit fileSplit = (FileSplit) split;
+			Configuration conf = context.getConfiguration();
+			Path path = fileSplit.getPath();
+			FileSystem fs = path.getFileSystem( conf );
+
+			in = new SequenceFile.Reader( fs, path, conf );
+			end = fileSplit.getStart() + fileSplit.getLength();
+
+			if ( fileSplit.getStart() > in.getPosition() ) {
+				in.sync( fileSplit.getStart() );
+			}
+			start = in.getPosition();
+			more = start < end;
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException {
+			if ( !more ) {
+				return false;
+			}
+			long pos = in.getPosition();
+			boolean hasKey = in.next( key );
+			if ( !hasKey || (pos >= end && in.syncSeen()) ) {
+				more = false;
+			}
+			else {
+				in.getCurrentValue( value );
+			}
+			return more;
+		}
+
+		@Override
+		public Text getCurrentKey() {
+			return key;
+		}
+
+		@Override
+		public TSVectorWritable getCurrentValue() {
+			return value;
+		}
+
+		@Override
+		public float getProgress() throws IOException {
+			if ( end == start ) {
+				return 0.0f;
+			}
+			return Math.min( 1.0f, (in.getPosition() - start) / (float) (end - start) );
+		}
+
+		@Override
+		public void close() throws IOException {
+			if ( in != null ) {
+				in.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package org.apache.crunchts.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.TableSource;
+import org.apache.crunch.io.From;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Reader for time series buckets (TSB), SequenceFiles of Text keys and
+ * VectorWritable values.
+ *
+ * In a Crunch pipeline:
+ *
+ *   PTable<Text, TSVectorWritable> tsb = read( TSBReader.source( path ) );
+ *   PCollection<ContEquidistTS> ts = TSBReader.toContEquidistTS( tsb );
+ *
+ * On the client the series can be iterated with next(), the values are
+ * decoded into one reused buffer.
+ */
+public class TSBReader implements Closeable {
+
+	private final SequenceFile.Reader in;
+	private final Text key = new Text();
+	private final TSVectorWritable value = new TSVectorWritable();
+
+	public TSBReader(FileSystem fs, Path path, Configuration conf) throws IOException {
+		in = new SequenceFile.Reader( fs, path, conf );
+	}
+
+	/**
+	 * @return false at the end of the file
+	 */
+	public boolean next() throws IOException {
+		if ( !in.next( key ) ) {
+			return false;
+		}
+		in.getCurrentValue( value );
+		return true;
+	}
+
+	public Text getKey() {
+		return key;
+	}
+
+	public TSVectorWritable getValue() {
+		return value;
+	}
+
+	public SequenceFile.Reader getReader() {
+		return in;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Source for a TSB with TSVectorWritable values.
+	 */
+	public static TableSource<Text, TSVectorWritable> source(String path) {
+		return From.formattedFile( path, TSBInputFormat.class, Text.class, TSVectorWritable.class );
+	}
+
+	/**
+	 * Converts the records of a TSB into ContEquidistTS (t0 = 0, 1 Hz), as
+	 * Avro reflect records, so collections derived from it (e.g. pairs) can
+	 * be written to readable Avro targets. Jobs which only shuffle the
+	 * series pass ContEquidistTSPTypes.avros(), the compact binary encoding.
+	 */
+	public static PCollection<ContEquidistTS> toContEquidistTS(PTable<Text, TSVectorWritable> tsb) {
+		return toContEquidistTS( tsb, Avros.reflects( ContEquidistTS.class ) );
+	}
+
+	public static PCollection<ContEquidistTS> toContEquidistTS(PTable<Text, TSVectorWritable> tsb, PType<ContEquidistTS> type) {
+		return tsb.parallelDo( "convert TSB records", new ToContEquidistTSFn(), type );
+	}
+
+	/**
+	 * Copies the decoded values into a new array of exact length, this is
+	 * the only allocation per series.
+	 */
+	public static class ToContEquidistTSFn extends DoFn<Pair<Text, TSVectorWritable>, ContEquidistTS> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void process(Pair<Text, TSVectorWritable> ts, Emitter<ContEquidistTS> emitter) {
+			TSVectorWritable v = ts.second();
+
+			ContEquidistTS out = new ContEquidistTS();
+			out.setData( v.getValues(), v.size(), ts.first().toString(), 0 );
+
+			emitter.emit( out );
+		}
+	}
+}
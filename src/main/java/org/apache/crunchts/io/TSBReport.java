@@ -0,0 +1,505 @@
+package org.apache.crunchts.io;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Statistics of a time series bucket for a consistency check before the
+ * expensive jobs: number of series, length distribution, value range,
+ * non-finite values, constant series and bytes per series.
+ *
+ * estimate() only reads metadata and samples. For a columnar TSB the index
+ * gives the exact number of series and all lengths, the values are taken
+ * from a few series. For SequenceFiles the records behind some sync points
+ * of each file are read and the number of series is extrapolated from the
+ * bytes per record, files below SCAN_BELOW bytes are read completely.
+ *
+ * exact() reads all series with a thread pool, a SequenceFile is split at
+ * sync points like a MapReduce input split.
+ *
+ *   TSBReport r = TSBReport.estimate( conf, path, 64 );
+ *   r.print( System.out );
+ */
+public class TSBReport {
+
+	public static final String SAMPLES = "crunchts.report.samples";
+	public static final String THREADS = "crunchts.report.threads";
+	public static final String SPLIT_SIZE = "crunchts.report.split.size";
+
+	/**
+	 * SequenceFiles smaller than this are read completely by estimate().
+	 */
+	static final long SCAN_BELOW = 4L << 20;
+
+	/**
+	 * Records read behind each sync point of a record compressed file.
+	 */
+	static final int RECORDS_PER_SAMPLE = 4;
+
+	static final int MAX_SAMPLING_RATES = 16;
+
+	final String path;
+
+	String format = "";
+	String keyClass = "";
+	String valueClass = "";
+	String compression = "none";
+	int files = 0;
+	long bytes = 0;
+
+	boolean exact = true;
+
+	/** series read and the bytes they use in the file */
+	long inspected = 0;
+	long inspectedBytes = 0;
+	/** number of series, exact or extrapolated */
+	double series = 0;
+
+	final TreeMap<Integer, Long> lengths = new TreeMap<Integer, Long>();
+	long values = 0;
+	double min = Double.POSITIVE_INFINITY;
+	double max = Double.NEGATIVE_INFINITY;
+	long nonFinite = 0;
+	long constant = 0;
+
+	/** columnar TSB only */
+	long minStart = Long.MAX_VALUE;
+	long maxStart = Long.MIN_VALUE;
+	final TreeMap<Double, Long> samplingRates = new TreeMap<Double, Long>();
+
+	TSBReport(String path) {
+		this.path = path;
+	}
+
+	/**
+	 * Reads the metadata of the bucket and a sample of the series.
+	 *
+	 * @param samples - sync points per SequenceFile or series of a columnar TSB
+	 */
+	public static TSBReport estimate(Configuration conf, Path path, int samples) throws IOException {
+		FileSystem fs = path.getFileSystem( conf );
+		if ( isColumnar( fs, path ) ) {
+			return estimateColumnar( fs, path, samples );
+		}
+
+		TSBReport report = new TSBReport( path.toString() );
+		report.format = "SequenceFile";
+		double series = 0;
+		for( Path part : TSBConverter.parts( fs, path ) ) {
+			long length = fs.getFileStatus( part ).getLen();
+			TSBReport file = new TSBReport( part.toString() );
+			if ( length <= SCAN_BELOW ) {
+				file.scan( fs, part, conf, 0, length );
+				file.series = file.inspected;
+			}
+			else {
+				file.sample( fs, part, conf, length, samples );
+			}
+			series += file.series;
+			report.merge( file );
+			report.bytes += length;
+			report.files++;
+		}
+		report.series = series;
+		return report;
+	}
+
+	/**
+	 * Reads all series, the files or splits are read in parallel.
+	 *
+	 * @param threads - size of the thread pool
+	 */
+	public static TSBReport exact(final Configuration conf, Path path, int threads) throws IOException {
+		final FileSystem fs = path.getFileSystem( conf );
+		List<Callable<TSBReport>> tasks = new ArrayList<Callable<TSBReport>>();
+
+		final TSBReport report = new TSBReport( path.toString() );
+		if ( isColumnar( fs, path ) ) {
+			final ColumnarTSBReader reader = new ColumnarTSBReader( fs, path );
+			report.format = "columnar";
+			report.files = 1;
+			report.bytes = fs.getFileStatus( path ).getLen();
+			int n = reader.size();
+			int chunk = Math.max( 1, (n + threads - 1) / threads );
+			for( int begin = 0; begin < n; begin += chunk ) {
+				final int from = begin;
+				final int to = Math.min( n, begin + chunk );
+				tasks.add( new Callable<TSBReport>() {
+					@Override
+					public TSBReport call() throws IOException {
+						TSBReport part = new TSBReport( "" );
+						part.readColumnar( reader, from, to );
+						return part;
+					}
+				} );
+			}
+			try {
+				report.mergeAll( tasks, threads );
+			}
+			finally {
+				reader.close();
+			}
+			report.series = report.inspected;
+			return report;
+		}
+
+		report.format = "SequenceFile";
+		long splitSize = conf.getLong( SPLIT_SIZE, 128L << 20 );
+		for( Path part : TSBConverter.parts( fs, path ) ) {
+			FileStatus status = fs.getFileStatus( part );
+			report.files++;
+			report.bytes += status.getLen();
+			final Path p = part;
+			for( long begin = 0; begin < status.getLen(); begin += splitSize ) {
+				final long from = begin;
+				final long to = Math.min( status.getLen(), begin + splitSize );
+				tasks.add( new Callable<TSBReport>() {
+					@Override
+					public TSBReport call() throws IOException {
+						TSBReport split = new TSBReport( "" );
+						split.scan( fs, p, conf, from, to );
+						return split;
+					}
+				} );
+			}
+		}
+		report.mergeAll( tasks, threads );
+		report.series = report.inspected;
+		return report;
+	}
+
+	private void mergeAll(List<Callable<TSBReport>> tasks, int threads) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool( Math.max( 1, threads ) );
+		try {
+			for( Future<TSBReport> f : pool.invokeAll( tasks ) ) {
+				merge( f.get() );
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException( e );
+		}
+		catch (ExecutionException e) {
+			if ( e.getCause() instanceof IOException ) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException( e.getCause() );
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	static boolean isColumnar(FileSystem fs, Path path) throws IOException {
+		FileStatus status = fs.getFileStatus( path );
+		if ( status.isDirectory() || status.getLen() < ColumnarTSBWriter.HEADER_SIZE + ColumnarTSBWriter.TRAILER_SIZE ) {
+			return false;
+		}
+		FSDataInputStream in = fs.open( path );
+		try {
+			byte[] magic = new byte[4];
+			in.readFully( 0, magic );
+			return Arrays.equals( magic, ColumnarTSBWriter.MAGIC );
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static TSBReport estimateColumnar(FileSystem fs, Path path, int samples) throws IOException {
+		TSBReport report = new TSBReport( path.toString() );
+		report.format = "columnar";
+		report.files = 1;
+		report.bytes = fs.getFileStatus( path ).getLen();
+
+		ColumnarTSBReader reader = new ColumnarTSBReader( fs, path );
+		try {
+			int n = reader.size();
+			// the index is complete, only the values are sampled
+			for( int i = 0; i < n; i++ ) {
+				report.addLength( reader.getLength( i ) );
+				report.addIndex( reader.getStart( i ), reader.getSamplingRate( i ) );
+			}
+			double[] buffer = new double[0];
+			int step = Math.max( 1, n / Math.max( 1, samples ) );
+			for( int i = 0; i < n; i += step ) {
+				int length = reader.getLength( i );
+				if ( buffer.length < length ) {
+					buffer = new double[length];
+				}
+				reader.get( i, buffer );
+				report.addValues( buffer, length );
+				report.inspected++;
+				report.inspectedBytes += 8L * length;
+			}
+			report.series = n;
+			report.exact = step == 1;
+		}
+		finally {
+			reader.close();
+		}
+		return report;
+	}
+
+	private void readColumnar(ColumnarTSBReader reader, int from, int to) throws IOException {
+		double[] buffer = new double[0];
+		for( int i = from; i < to; i++ ) {
+			int length = reader.getLength( i );
+			if ( buffer.length < length ) {
+				buffer = new double[length];
+			}
+			reader.get( i, buffer );
+			addLength( length );
+			addValues( buffer, length );
+			addIndex( reader.getStart( i ), reader.getSamplingRate( i ) );
+			inspected++;
+			inspectedBytes += 8L * length;
+		}
+	}
+
+	/**
+	 * Reads the records of one split, the split starts behind the first
+	 * sync point after begin and ends with the first record which starts
+	 * behind a sync point at or after end (as SequenceFileRecordReader).
+	 */
+	private void scan(FileSystem fs, Path part, Configuration conf, long begin, long end) throws IOException {
+		TSBReader reader = new TSBReader( fs, part, conf );
+		try {
+			SequenceFile.Reader in = reader.getReader();
+			header( in );
+			if ( begin > in.getPosition() ) {
+				in.sync( begin );
+			}
+			boolean more = in.getPosition() < end;
+			while( more ) {
+				long pos = in.getPosition();
+				more = reader.next() && !(pos >= end && in.syncSeen());
+				if ( more ) {
+					add( reader.getKey(), reader.getValue(), in.getPosition() - pos );
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads a few records behind evenly spaced sync points and extrapolates
+	 * the number of series from the bytes per record.
+	 */
+	private void sample(FileSystem fs, Path part, Configuration conf, long length, int samples) throws IOException {
+		TSBReader reader = new TSBReader( fs, part, conf );
+		try {
+			SequenceFile.Reader in = reader.getReader();
+			header( in );
+			long headerEnd = in.getPosition();
+			long records = 0;
+			long recordBytes = 0;
+			long last = -1;
+			for( int s = 0; s < samples; s++ ) {
+				long target = headerEnd + (length - headerEnd) / samples * s;
+				if ( s > 0 && target > in.getPosition() ) {
+					in.sync( target );
+				}
+				long start = in.getPosition();
+				if ( start <= last ) {
+					// this part of the file was read by the last sample
+					continue;
+				}
+				if ( !reader.next() ) {
+					break;
+				}
+				long end = in.getPosition();
+				int n = 1;
+				add( reader.getKey(), reader.getValue(), 0 );
+				if ( in.isBlockCompressed() ) {
+					// the first next() reads the whole block, count its records
+					while( reader.next() && in.getPosition() == end ) {
+						add( reader.getKey(), reader.getValue(), 0 );
+						n++;
+					}
+				}
+				else {
+					while( n < RECORDS_PER_SAMPLE && reader.next() ) {
+						add( reader.getKey(), reader.getValue(), 0 );
+						end = in.getPosition();
+						n++;
+					}
+				}
+				records += n;
+				recordBytes += end - start;
+				last = in.getPosition();
+			}
+			inspectedBytes = recordBytes;
+			series = recordBytes > 0 ? (double) (length - headerEnd) * records / recordBytes : 0;
+			exact = false;
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	private void header(SequenceFile.Reader in) {
+		keyClass = in.getKeyClassName();
+		valueClass = in.getValueClassName();
+		if ( in.isBlockCompressed() ) {
+			compression = "block " + in.getCompressionCodec().getClass().getSimpleName();
+		}
+		else if ( in.isCompressed() ) {
+			compression = "record " + in.getCompressionCodec().getClass().getSimpleName();
+		}
+	}
+
+	void add(Text key, TSVectorWritable value, long recordBytes) {
+		addLength( value.size() );
+		addValues( value.getValues(), value.size() );
+		inspected++;
+		inspectedBytes += recordBytes;
+	}
+
+	private void addLength(int length) {
+		Long c = lengths.get( length );
+		lengths.put( length, c == null ? 1L : c + 1 );
+	}
+
+	private void addIndex(long start, double rate) {
+		minStart = Math.min( minStart, start );
+		maxStart = Math.max( maxStart, start );
+		Long c = samplingRates.get( rate );
+		if ( c != null || samplingRates.size() < MAX_SAMPLING_RATES ) {
+			samplingRates.put( rate, c == null ? 1L : c + 1 );
+		}
+	}
+
+	private void addValues(double[] v, int n) {
+		double lo = Double.POSITIVE_INFINITY;
+		double hi = Double.NEGATIVE_INFINITY;
+		for( int i = 0; i < n; i++ ) {
+			double x = v[i];
+			if ( Double.isNaN( x ) || Double.isInfinite( x ) ) {
+				nonFinite++;
+				continue;
+			}
+			if ( x < lo ) {
+				lo = x;
+			}
+			if ( x > hi ) {
+				hi = x;
+			}
+		}
+		if ( n > 0 && !(hi > lo) ) {
+			constant++;
+		}
+		min = Math.min( min, lo );
+		max = Math.max( max, hi );
+		values += n;
+	}
+
+	void merge(TSBReport other) {
+		if ( other.format.length() > 0 ) {
+			format = other.format;
+		}
+		if ( other.keyClass.length() > 0 ) {
+			keyClass = other.keyClass;
+			valueClass = other.valueClass;
+			compression = other.compression;
+		}
+		exact &= other.exact;
+		inspected += other.inspected;
+		inspectedBytes += other.inspectedBytes;
+		for( Map.Entry<Integer, Long> e : other.lengths.entrySet() ) {
+			Long c = lengths.get( e.getKey() );
+			lengths.put( e.getKey(), c == null ? e.getValue() : c + e.getValue() );
+		}
+		values += other.values;
+		min = Math.min( min, other.min );
+		max = Math.max( max, other.max );
+		nonFinite += other.nonFinite;
+		constant += other.constant;
+		minStart = Math.min( minStart, other.minStart );
+		maxStart = Math.max( maxStart, other.maxStart );
+		for( Map.Entry<Double, Long> e : other.samplingRates.entrySet() ) {
+			Long c = samplingRates.get( e.getKey() );
+			if ( c != null || samplingRates.size() < MAX_SAMPLING_RATES ) {
+				samplingRates.put( e.getKey(), c == null ? e.getValue() : c + e.getValue() );
+			}
+		}
+	}
+
+	/**
+	 * @return number of series, extrapolated if the report is not exact
+	 */
+	public long getSeries() {
+		return Math.round( series );
+	}
+
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * @return true if all inspected series have the same length, the same
+	 *         sampling rate and only finite values
+	 */
+	public boolean isConsistent() {
+		return lengths.size() <= 1 && samplingRates.size() <= 1 && nonFinite == 0;
+	}
+
+	public void print(PrintStream out) {
+		out.println( "> path        : " + path );
+		out.println( "> format      : " + format + " (" + files + " files, " + bytes + " bytes)" );
+		if ( keyClass.length() > 0 ) {
+			out.println( "> records     : " + keyClass + " / " + valueClass + ", compression " + compression );
+		}
+		out.println( "> series      : " + getSeries() + (exact ? "" : " (estimated from " + inspected + " series)") );
+		if ( inspected > 0 && inspectedBytes > 0 ) {
+			out.println( "> bytes/series: " + inspectedBytes / Math.max( 1, inspected ) );
+		}
+		if ( !lengths.isEmpty() ) {
+			long total = 0;
+			long sum = 0;
+			for( Map.Entry<Integer, Long> e : lengths.entrySet() ) {
+				total += e.getValue();
+				sum += (long) e.getKey() * e.getValue();
+			}
+			out.println( "> length      : min " + lengths.firstKey() + ", max " + lengths.lastKey()
+					+ ", mean " + sum / total + ", " + lengths.size() + " distinct" );
+			int shown = 0;
+			for( Map.Entry<Integer, Long> e : lengths.entrySet() ) {
+				if ( shown++ == 10 ) {
+					out.println( ">               ..." );
+					break;
+				}
+				out.println( ">               " + e.getKey() + " : " + e.getValue() + " series" );
+			}
+		}
+		if ( values > 0 ) {
+			out.println( "> values      : min " + min + ", max " + max + ", " + nonFinite + " NaN/Inf of " + values );
+			out.println( "> constant    : " + constant + " series" );
+		}
+		if ( !samplingRates.isEmpty() ) {
+			out.println( "> t0          : " + minStart + " .. " + maxStart );
+			out.println( "> rates       : " + samplingRates.keySet() );
+		}
+		out.println( "> consistent  : " + isConsistent() );
+	}
+}
@@ -0,0 +1,187 @@
+package org.apache.crunchts.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Reads the wire format of Mahout's VectorWritable directly into a reusable
+ * double[] buffer.
+ *
+ * VectorWritable.readFields() creates a new Vector per record and the values
+ * can only be copied out through Vector.iterator(), which creates an Element
+ * per value. This class decodes the bytes instead:
+ *
+ *   flags (byte) : DENSE=1, SEQUENTIAL=2, NAMED=4, LAX_PRECISION=8
+ *   size (varint)
+ *   dense  : size values (double, or float with LAX_PRECISION)
+ *   sparse : number of non-zeros (varint), then (index, value) pairs, the
+ *            indexes of sequential vectors are delta encoded
+ *   named  : name (UTF)
+ *
+ * Dense vectors are read as one block of bytes, sparse and named vectors
+ * are supported as well. The buffer is only valid until the next call of
+ * readFields(), use getValues() / size() to access it.
+ */
+public class TSVectorWritable implements Writable {
+
+	static final int FLAG_DENSE = 0x01;
+	static final int FLAG_SEQUENTIAL = 0x02;
+	static final int FLAG_NAMED = 0x04;
+	static final int FLAG_LAX_PRECISION = 0x08;
+
+	private double[] values = new double[0];
+	private byte[] raw = new byte[0];
+	private int size = 0;
+	private String name = null;
+	private boolean dense = true;
+
+	public TSVectorWritable() { }
+
+	/**
+	 * Wraps the given values, used for writing.
+	 */
+	public TSVectorWritable(double[] values, int size, String name) {
+		set( values, size, name );
+	}
+
+	public void set(double[] values, int size, String name) {
+		this.values = values;
+		this.size = size;
+		this.name = name;
+		this.dense = true;
+	}
+
+	/**
+	 * @return the buffer, only the first size() values are valid
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return name of a NamedVector or null
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return false if the record was written from a sparse vector
+	 */
+	public boolean isDense() {
+		return dense;
+	}
+
+	/**
+	 * @return a copy of the values with exact length
+	 */
+	public double[] copyValues() {
+		return Arrays.copyOf( values, size );
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int flags = in.readByte();
+		dense = (flags & FLAG_DENSE) != 0;
+		boolean sequential = (flags & FLAG_SEQUENTIAL) != 0;
+		boolean named = (flags & FLAG_NAMED) != 0;
+		boolean lax = (flags & FLAG_LAX_PRECISION) != 0;
+
+		size = readUnsignedVarInt( in );
+		if ( values.length < size ) {
+			values = new double[size];
+		}
+
+		if ( dense ) {
+			if ( lax ) {
+				for ( int i = 0; i < size; i++ ) {
+					values[i] = in.readFloat();
+				}
+			}
+			else {
+				readDoubles( in, size );
+			}
+		}
+		else {
+			Arrays.fill( values, 0, size, 0.0 );
+			int nonZero = readUnsignedVarInt( in );
+			int index = 0;
+			for ( int k = 0; k < nonZero; k++ ) {
+				int i = readUnsignedVarInt( in );
+				index = sequential ? index + i : i;
+				values[index] = lax ? in.readFloat() : in.readDouble();
+			}
+		}
+
+		name = named ? in.readUTF() : null;
+	}
+
+	/**
+	 * Dense block: one readFully() and a bulk conversion of the big endian
+	 * bytes instead of one readDouble() call per value.
+	 */
+	private void readDoubles(DataInput in, int n) throws IOException {
+		int bytes = 8 * n;
+		if ( raw.length < bytes ) {
+			raw = new byte[bytes];
+		}
+		in.readFully( raw, 0, bytes );
+		ByteBuffer.wrap( raw, 0, bytes ).asDoubleBuffer().get( values, 0, n );
+	}
+
+	/**
+	 * Writes a dense vector in the VectorWritable format, so the result can
+	 * be read with VectorWritable as well.
+	 */
+	@Override
+	public void write(DataOutput out) throws IOException {
+		boolean named = name != null;
+		out.writeByte( FLAG_DENSE | FLAG_SEQUENTIAL | (named ? FLAG_NAMED : 0) );
+		writeUnsignedVarInt( size, out );
+
+		int bytes = 8 * size;
+		if ( raw.length < bytes ) {
+			raw = new byte[bytes];
+		}
+		ByteBuffer.wrap( raw, 0, bytes ).asDoubleBuffer().put( values, 0, size );
+		out.write( raw, 0, bytes );
+
+		if ( named ) {
+			out.writeUTF( name );
+		}
+	}
+
+	/**
+	 * Same encoding as org.apache.mahout.math.Varint.
+	 */
+	static int readUnsignedVarInt(DataInput in) throws IOException {
+		int value = 0;
+		int i = 0;
+		int b;
+		while ( ((b = in.readByte()) & 0x80) != 0 ) {
+			value |= (b & 0x7F) << i;
+			i += 7;
+			if ( i > 35 ) {
+				throw new IOException( "Variable length quantity is too long" );
+			}
+		}
+		return value | (b << i);
+	}
+
+	static void writeUnsignedVarInt(int value, DataOutput out) throws IOException {
+		while ( (value & 0xFFFFFF80) != 0 ) {
+			out.writeByte( (value & 0x7F) | 0x80 );
+			value >>>= 7;
+		}
+		out.writeByte( value & 0x7F );
+	}
+}
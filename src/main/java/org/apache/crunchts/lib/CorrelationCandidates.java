@@ -0,0 +1,329 @@
+package org.apache.crunchts.lib;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.fn.Aggregators;
+import org.apache.crunch.lib.Distinct;
+import org.apache.crunch.lib.Join;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.crunchts.statistics.SimHash;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Candidate pairs for correlation networks with locality sensitive hashing,
+ * instead of all N(N-1)/2 pairs of SymmetricPairs.
+ *
+ * Step 1 (map)    : each series is sketched with SimHash, the signature is
+ *                   cut into bands of r bits, the series is emitted once per
+ *                   band with the key (band index, bits of the band). For
+ *                   anti-correlations the complement of the signature is
+ *                   emitted as well.
+ * Step 2 (reduce) : series in one bucket are compared by the Hamming distance
+ *                   of their full signatures, pairs with an estimated |rho|
+ *                   of at least threshold - margin are candidates
+ * Step 3          : duplicates are removed and the series are joined to the
+ *                   candidates, the pairs go to the exact calculation
+ *
+ * Only labels and signatures are shuffled in step 2. The estimate is the
+ * correlation at lag 0, pairs which are only correlated at a larger lag
+ * are found if the series are smooth compared to the lag.
+ *
+ * The recall for a correlation rho is 1 - (1 - p(rho)^r)^bands (see
+ * SimHash), report() prints it for the configured parameters. Buckets with
+ * more than maxbucket members are skipped, collisions() counts the pairs
+ * of all buckets and of the skipped ones (only the band keys are shuffled,
+ * with a combiner), report() then prints the recall with the fraction of
+ * collisions which were lost. All steps are plain Crunch operations, so
+ * they run in a MRPipeline and in the MemPipeline.
+ *
+ * Parameters:
+ *
+ *   -Dcrunchts.lsh.bits=320       signature length, multiple of 64
+ *   -Dcrunchts.lsh.band=10        bits per band, more bits = fewer candidates
+ *   -Dcrunchts.lsh.margin=0.2     pre-filter |rho| >= threshold - margin
+ *   -Dcrunchts.lsh.negative=true  also find anti-correlated pairs
+ *   -Dcrunchts.lsh.maxbucket=2000 larger buckets are skipped (e.g. flat series)
+ *   -Dcrunchts.lsh.seed=1         seed of the projections
+ */
+public class CorrelationCandidates {
+
+	public static final String BITS = "crunchts.lsh.bits";
+	public static final String BAND = "crunchts.lsh.band";
+	public static final String MARGIN = "crunchts.lsh.margin";
+	public static final String NEGATIVE = "crunchts.lsh.negative";
+	public static final String MAX_BUCKET = "crunchts.lsh.maxbucket";
+	public static final String SEED = "crunchts.lsh.seed";
+
+	public static final String ALL_COLLISIONS = "all";
+	public static final String SKIPPED_COLLISIONS = "skipped";
+
+	final int bits;
+	final int band;
+	final double minEstimate;
+	final boolean negative;
+	final int maxBucket;
+	final long seed;
+
+	/**
+	 * @param threshold - minimal |rho| of the links which are verified later
+	 */
+	public CorrelationCandidates(Configuration conf, double threshold) {
+		this.bits = conf.getInt( BITS, 320 );
+		this.band = conf.getInt( BAND, 10 );
+		this.minEstimate = threshold - Double.parseDouble( conf.get( MARGIN, "0.2" ) );
+		this.negative = conf.getBoolean( NEGATIVE, true );
+		this.maxBucket = conf.getInt( MAX_BUCKET, 2000 );
+		this.seed = conf.getLong( SEED, 1 );
+		if ( band < 1 || band > 64 ) {
+			throw new IllegalArgumentException( "band should be between 1 and 64 bits: " + band );
+		}
+	}
+
+	public int bands() {
+		return bits / band;
+	}
+
+	/**
+	 * @return (band key, (label, signature)) of all series, the input of
+	 *         candidates() and collisions()
+	 */
+	public PTable<Pair<Integer, Long>, Pair<String, Collection<Long>>> bands(PCollection<ContEquidistTS> series) {
+		PType<Pair<String, Collection<Long>>> member = Avros.pairs( Avros.strings(), Avros.collections( Avros.longs() ) );
+
+		return series.parallelDo( "simhash bands", new BandFn( bits, band, negative, seed ),
+				Avros.tableOf( Avros.pairs( Avros.ints(), Avros.longs() ), member ) );
+	}
+
+	/**
+	 * @return the labels of the candidate pairs, each pair once
+	 */
+	public PCollection<Pair<String, String>> candidates(PTable<Pair<Integer, Long>, Pair<String, Collection<Long>>> bands) {
+		PCollection<Pair<String, String>> pairs = bands
+				.groupByKey()
+				.parallelDo( "lsh candidates", new BucketFn( minEstimate, maxBucket ), Avros.pairs( Avros.strings(), Avros.strings() ) );
+
+		return Distinct.distinct( pairs );
+	}
+
+	/**
+	 * Pairs which share a bucket: ALL_COLLISIONS in all buckets,
+	 * SKIPPED_COLLISIONS in the buckets with more than maxbucket members,
+	 * which are never compared.
+	 */
+	public PTable<String, Long> collisions(PTable<Pair<Integer, Long>, Pair<String, Collection<Long>>> bands) {
+		return bands.keys()
+				.count()
+				.parallelDo( "lsh collisions", new CollisionsFn( maxBucket ), Avros.tableOf( Avros.strings(), Avros.longs() ) )
+				.groupByKey()
+				.combineValues( Aggregators.SUM_LONGS() );
+	}
+
+	/**
+	 * Joins the series to the candidate pairs.
+	 */
+	public static PCollection<Pair<ContEquidistTS, ContEquidistTS>> resolve(PCollection<Pair<String, String>> candidates,
+			PCollection<ContEquidistTS> series) {
+
+		PType<ContEquidistTS> type = series.getPType();
+		PTable<String, ContEquidistTS> byLabel = series.by( new LabelFn(), Avros.strings() );
+
+		PTable<String, String> byFirst = candidates.parallelDo( new MapFn<Pair<String, String>, Pair<String, String>>() {
+			@Override
+			public Pair<String, String> map(Pair<String, String> p) {
+				return p;
+			}
+		}, Avros.tableOf( Avros.strings(), Avros.strings() ) );
+
+		// (a, b) + series a -> (b, series a) + series b
+		PTable<String, ContEquidistTS> bySecond = Join.join( byFirst, byLabel )
+				.parallelDo( new MapFn<Pair<String, Pair<String, ContEquidistTS>>, Pair<String, ContEquidistTS>>() {
+					@Override
+					public Pair<String, ContEquidistTS> map(Pair<String, Pair<String, ContEquidistTS>> p) {
+						return Pair.of( p.second().first(), p.second().second() );
+					}
+				}, Avros.tableOf( Avros.strings(), type ) );
+
+		return Join.join( bySecond, byLabel ).values();
+	}
+
+	/**
+	 * Prints the parameters and the recall for some correlations.
+	 */
+	public void report(double threshold) {
+		report( threshold, 0.0 );
+	}
+
+	/**
+	 * Same as report(threshold), the recall is reduced by the fraction of
+	 * the bucket collisions which were lost in skipped buckets.
+	 *
+	 * @param lost - SKIPPED_COLLISIONS / ALL_COLLISIONS of collisions()
+	 */
+	public void report(double threshold, double lost) {
+		int bands = bands();
+		System.out.println("# LSH        : " + bits + " bits, " + bands + " bands of " + band + " bits, pre-filter |rho| >= " + minEstimate );
+		if ( lost > 0.0 ) {
+			System.out.printf("# skipped    : %.6f of the bucket collisions (buckets > %d members)\n", lost, maxBucket );
+		}
+		for( double rho = Math.max( 0.0, threshold - 0.2 ); rho < 1.0; rho += 0.1 ) {
+			System.out.printf("# recall     : rho=%.2f %.4f\n", rho, SimHash.recall( rho, band, bands, lost ) );
+		}
+		System.out.printf("# candidates : %.6f of the uncorrelated pairs (rho=0)\n", SimHash.recall( 0.0, band, bands, lost ) );
+	}
+
+	static class LabelFn extends MapFn<ContEquidistTS, String> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public String map(ContEquidistTS ts) {
+			return ts.getLabel();
+		}
+	}
+
+	/**
+	 * Emits (band key, (label, signature)) for each band.
+	 */
+	static class BandFn extends DoFn<ContEquidistTS, Pair<Pair<Integer, Long>, Pair<String, Collection<Long>>>> {
+
+		private static final long serialVersionUID = 1L;
+
+		final int bits;
+		final int band;
+		final boolean negative;
+		final long seed;
+
+		transient SimHash simHash;
+		transient long[] signature;
+
+		BandFn(int bits, int band, boolean negative, long seed) {
+			this.bits = bits;
+			this.band = band;
+			this.negative = negative;
+			this.seed = seed;
+		}
+
+		@Override
+		public void initialize() {
+			simHash = new SimHash( bits, seed );
+			signature = new long[bits / 64];
+		}
+
+		@Override
+		public void process(ContEquidistTS ts, Emitter<Pair<Pair<Integer, Long>, Pair<String, Collection<Long>>>> emitter) {
+			double[] x = ts.getPoints();
+			if ( simHash.sketch( x, x.length, signature ) == null ) {
+				increment( "crunchts.lsh", "constant series" );
+				return;
+			}
+			emit( ts.getLabel(), signature, emitter );
+			if ( negative ) {
+				long[] complement = new long[signature.length];
+				for( int w = 0; w < signature.length; w++ ) {
+					complement[w] = ~signature[w];
+				}
+				emit( ts.getLabel(), complement, emitter );
+			}
+		}
+
+		private void emit(String label, long[] sig, Emitter<Pair<Pair<Integer, Long>, Pair<String, Collection<Long>>>> emitter) {
+			List<Long> words = new ArrayList<Long>( sig.length );
+			for( long w : sig ) {
+				words.add( w );
+			}
+			Pair<String, Collection<Long>> value = Pair.of( label, (Collection<Long>) words );
+			int bands = bits / band;
+			for( int b = 0; b < bands; b++ ) {
+				// the band index is part of the key, equal bits of different bands never share a bucket
+				emitter.emit( Pair.of( Pair.of( b, SimHash.band( sig, b, band ) ), value ) );
+			}
+		}
+	}
+
+	/**
+	 * Compares the members of one bucket by their signatures.
+	 */
+	static class BucketFn extends DoFn<Pair<Pair<Integer, Long>, Iterable<Pair<String, Collection<Long>>>>, Pair<String, String>> {
+
+		private static final long serialVersionUID = 1L;
+
+		final double minEstimate;
+		final int maxBucket;
+
+		BucketFn(double minEstimate, int maxBucket) {
+			this.minEstimate = minEstimate;
+			this.maxBucket = maxBucket;
+		}
+
+		@Override
+		public void process(Pair<Pair<Integer, Long>, Iterable<Pair<String, Collection<Long>>>> bucket, Emitter<Pair<String, String>> emitter) {
+			List<String> labels = new ArrayList<String>();
+			List<long[]> signatures = new ArrayList<long[]>();
+			for( Pair<String, Collection<Long>> m : bucket.second() ) {
+				if ( labels.size() == maxBucket ) {
+					increment( "crunchts.lsh", "buckets too large" );
+					return;
+				}
+				labels.add( m.first() );
+				long[] sig = new long[m.second().size()];
+				int w = 0;
+				for( Long l : m.second() ) {
+					sig[w++] = l;
+				}
+				signatures.add( sig );
+			}
+
+			int bits = signatures.isEmpty() ? 0 : 64 * signatures.get( 0 ).length;
+			for( int i = 0; i < labels.size(); i++ ) {
+				for( int j = i + 1; j < labels.size(); j++ ) {
+					String a = labels.get( i );
+					String b = labels.get( j );
+					int c = a.compareTo( b );
+					if ( c == 0 ) {
+						continue;
+					}
+					double estimate = SimHash.correlation( SimHash.hamming( signatures.get( i ), signatures.get( j ) ), bits );
+					if ( Math.abs( estimate ) < minEstimate ) {
+						increment( "crunchts.lsh", "rejected by estimate" );
+						continue;
+					}
+					emitter.emit( c < 0 ? Pair.of( a, b ) : Pair.of( b, a ) );
+				}
+			}
+		}
+	}
+
+	/**
+	 * The pairs of one bucket of m members, m (m - 1) / 2.
+	 */
+	static class CollisionsFn extends DoFn<Pair<Pair<Integer, Long>, Long>, Pair<String, Long>> {
+
+		private static final long serialVersionUID = 1L;
+
+		final int maxBucket;
+
+		CollisionsFn(int maxBucket) {
+			this.maxBucket = maxBucket;
+		}
+
+		@Override
+		public void process(Pair<Pair<Integer, Long>, Long> bucket, Emitter<Pair<String, Long>> emitter) {
+			long m = bucket.second();
+			long pairs = m * (m - 1) / 2;
+			emitter.emit( Pair.of( ALL_COLLISIONS, pairs ) );
+			if ( m > maxBucket ) {
+				emitter.emit( Pair.of( SKIPPED_COLLISIONS, pairs ) );
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package org.apache.crunchts.lib;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.GroupingOptions;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.Pair;
+import org.apache.crunch.Tuple3;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Enumerates the index triples (i,j,k) with i < j < k < n.
+ *
+ * Only ints are created and shuffled, the series themselves stay in a
+ * side input (see ColumnarTSBSideInput) and are looked up by the DoFns
+ * which consume the triples.
+ *
+ * Step 1 (map)    : the seed files with the numbers 0 .. n-1 are expanded
+ *                   into the n(n-1)/2 index pairs (i,j), one mapper per
+ *                   seed file (the input must not be combined)
+ * Step 2 (reduce) : the pairs are spread over the reducers by their id,
+ *                   each pair is expanded into the triples (i,j,k), k > j
+ *
+ * The shuffle spreads the uneven work (pair (0,1) has n-2 triples, pair
+ * (n-2,n-1) has none) over all reducers. The seeds are dealt round robin
+ * to the files, so each mapper gets small and large i.
+ */
+public class IndexTriples {
+
+	public static final String REDUCERS = "crunchts.triples.reducers";
+
+	public static final int DEFAULT_REDUCERS = 20;
+
+	public static final String MAPPERS = "crunchts.triples.mappers";
+
+	public static final int DEFAULT_MAPPERS = 20;
+
+	/**
+	 * Number of triples i < j < k for n elements.
+	 */
+	public static long tripleCount(long n) {
+		return n * (n - 1) * (n - 2) / 6;
+	}
+
+	public static PType<Tuple3<Integer, Integer, Integer>> ptype() {
+		return Avros.triples( Avros.ints(), Avros.ints(), Avros.ints() );
+	}
+
+	/**
+	 * Writes the seed files part-0 .. part-(files-1) into the directory
+	 * seeds, one index per line, index i into file i % files.
+	 */
+	public static void writeSeeds(FileSystem fs, Path seeds, int n, int files) throws IOException {
+		files = Math.max( 1, Math.min( files, n ) );
+		fs.delete( seeds, true );
+		for( int f = 0; f < files; f++ ) {
+			Writer w = new OutputStreamWriter( fs.create( new Path( seeds, "part-" + f ), true ), "UTF-8" );
+			try {
+				for( int i = f; i < n; i += files ) {
+					w.write( Integer.toString( i ) );
+					w.write( '\n' );
+				}
+			}
+			finally {
+				w.close();
+			}
+		}
+	}
+
+	/**
+	 * @param seeds - lines of the files written by writeSeeds() with the same n,
+	 *                e.g. read( From.textFile( path ) ) with
+	 *                RuntimeParameters.DISABLE_COMBINE_FILE
+	 */
+	public static PCollection<Tuple3<Integer, Integer, Integer>> enumerate(PCollection<String> seeds, int n, int reducers) {
+
+		GroupingOptions options = GroupingOptions.builder().numReducers( reducers ).build();
+
+		return seeds
+				.parallelDo( "index pairs", new PairsFn( n ), Avros.tableOf( Avros.longs(), Avros.ints() ) )
+				.groupByKey( options )
+				.parallelDo( "index triples", new TriplesFn( n ), ptype() );
+	}
+
+	/**
+	 * Emits (id, i) for all j > i, with id = i * n + j.
+	 */
+	static class PairsFn extends DoFn<String, Pair<Long, Integer>> {
+
+		private static final long serialVersionUID = 1L;
+
+		final int n;
+
+		PairsFn(int n) {
+			this.n = n;
+		}
+
+		@Override
+		public void process(String line, Emitter<Pair<Long, Integer>> emitter) {
+			String s = line.trim();
+			if ( s.length() == 0 ) {
+				return;
+			}
+			int i = Integer.parseInt( s );
+			for( int j = i + 1; j < n; j++ ) {
+				emitter.emit( Pair.of( (long) i * n + j, i ) );
+			}
+		}
+	}
+
+	static class TriplesFn extends DoFn<Pair<Long, Iterable<Integer>>, Tuple3<Integer, Integer, Integer>> {
+
+		private static final long serialVersionUID = 1L;
+
+		final int n;
+
+		TriplesFn(int n) {
+			this.n = n;
+		}
+
+		@Override
+		public void process(Pair<Long, Iterable<Integer>> input, Emitter<Tuple3<Integer, Integer, Integer>> emitter) {
+			long id = input.first();
+			int i = (int) (id / n);
+			int j = (int) (id % n);
+			for( int k = j + 1; k < n; k++ ) {
+				emitter.emit( Tuple3.of( i, j, k ) );
+			}
+		}
+	}
+}
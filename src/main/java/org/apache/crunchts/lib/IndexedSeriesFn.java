@@ -0,0 +1,80 @@
+package org.apache.crunchts.lib;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.DoubleBuffer;
+
+import org.apache.crunch.CrunchRuntimeException;
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunchts.io.ColumnarTSBReader;
+import org.apache.crunchts.io.ColumnarTSBSideInput;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Base class for DoFns which get indexes of series (e.g. from IndexTriples)
+ * and resolve them in a columnar TSB side input. The file is opened once
+ * per task, series(i) is a view on the memory mapped local copy.
+ * TripleCorrelationFn is the DoFn for the index triples.
+ *
+ *   public void process(Tuple3<Integer,Integer,Integer> t, Emitter<X> e) {
+ *       DoubleBuffer a = series( t.first() );
+ *       ...
+ *   }
+ */
+public abstract class IndexedSeriesFn<S, T> extends DoFn<S, T> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ColumnarTSBSideInput side;
+
+	private transient ColumnarTSBReader reader;
+
+	protected IndexedSeriesFn(ColumnarTSBSideInput side) {
+		this.side = side;
+	}
+
+	@Override
+	public void configure(Configuration conf) {
+		side.configure( conf );
+	}
+
+	@Override
+	public void initialize() {
+		try {
+			// no task context in the MemPipeline
+			URI[] cached = getContext() == null ? null : getContext().getCacheFiles();
+			reader = side.open( getConfiguration(), cached );
+		}
+		catch (IOException e) {
+			throw new CrunchRuntimeException( e );
+		}
+	}
+
+	protected DoubleBuffer series(int i) {
+		try {
+			return reader.get( i );
+		}
+		catch (IOException e) {
+			throw new CrunchRuntimeException( e );
+		}
+	}
+
+	protected String label(int i) {
+		return reader.getLabel( i );
+	}
+
+	protected ColumnarTSBReader getReader() {
+		return reader;
+	}
+
+	@Override
+	public void cleanup(Emitter<T> emitter) {
+		try {
+			reader.close();
+		}
+		catch (IOException e) {
+			throw new CrunchRuntimeException( e );
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package org.apache.crunchts.lib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.GroupingOptions;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.PTypeFamily;
+
+/**
+ * Creates the set of unordered pairs {a,b} with a != b from a PCollection.
+ *
+ * In contrast to Cartesian.cross(c, c), which emits all N^2 ordered pairs
+ * including (a,a) and both (a,b) and (b,a), only the N(N-1)/2 pairs of the
+ * upper triangle are created.
+ *
+ * The elements are distributed round robin over T tiles, each map task
+ * starts at the tile of its task id, so the remainders of the tasks are
+ * spread over all tiles instead of filling the low ones. Each element is
+ * replicated to the T tile pairs (t,u) with t <= u it participates in, so
+ * the shuffle carries N*T records instead of N^2. Every reducer receives
+ * exactly one tile pair and builds the pairs on the reduce side:
+ *
+ *   (t,t) : all pairs i < j inside tile t
+ *   (t,u) : all combinations of an element of t with an element of u
+ *
+ * The tile size controls the tradeoff between reducer memory (two tiles
+ * are held in memory) and parallelism (T(T+1)/2 reducers).
+ *
+ * @author Mirko K'mpf
+ */
+public class SymmetricPairs {
+
+	/**
+	 * Configuration key for the number of elements per tile.
+	 */
+	public static final String TILE_SIZE = "crunchts.pairs.tile.size";
+
+	public static final int DEFAULT_TILE_SIZE = 500;
+
+	/**
+	 * Number of tiles needed to cover n elements with the given tile size.
+	 */
+	public static int tilesFor(long n, int tileSize) {
+		if (tileSize < 1) {
+			throw new IllegalArgumentException("tile size must be positive: " + tileSize);
+		}
+		long t = (n + tileSize - 1) / tileSize;
+		return (int) Math.max(1, t);
+	}
+
+	/**
+	 * Number of unordered pairs without self pairs for n elements.
+	 */
+	public static long pairCount(long n) {
+		return n * (n - 1) / 2;
+	}
+
+	/**
+	 * Dense id of the tile pair (t,u) with t <= u.
+	 */
+	static int tilePairId(int t, int u, int tiles) {
+		return t * tiles - (t * (t - 1)) / 2 + (u - t);
+	}
+
+	/**
+	 * Inverse of tilePairId(), returns {t,u}.
+	 */
+	static int[] tilesOf(int id, int tiles) {
+		for (int t = 0; t < tiles; t++) {
+			int start = tilePairId( t, t, tiles );
+			if (id < start + tiles - t) {
+				return new int[] { t, t + id - start };
+			}
+		}
+		throw new IllegalArgumentException("no tile pair with id " + id);
+	}
+
+	/**
+	 * Creates all unordered pairs of distinct elements of the collection.
+	 *
+	 * @param coll  the elements
+	 * @param tiles number of tiles, see tilesFor()
+	 * @return collection of the N(N-1)/2 pairs
+	 */
+	public static <T> PCollection<Pair<T, T>> upperTriangle(PCollection<T> coll, int tiles) {
+
+		PTypeFamily ptf = coll.getTypeFamily();
+		PType<T> type = coll.getPType();
+
+		PTableType<Integer, Pair<Integer, T>> tiledType =
+				ptf.tableOf( ptf.ints(), ptf.pairs( ptf.ints(), type ) );
+
+		int tilePairs = tiles * (tiles + 1) / 2;
+		GroupingOptions options = GroupingOptions.builder().numReducers( tilePairs ).build();
+
+		return coll
+				.parallelDo( "assign tiles", new AssignTilesFn<T>( tiles ), tiledType )
+				.groupByKey( options )
+				.parallelDo( "pairs per tile", new TilePairsFn<T>( type, tiles ), ptf.pairs( type, type ) );
+	}
+
+	/**
+	 * Puts each element into one tile and replicates it to all tile pairs
+	 * this tile belongs to.
+	 */
+	static class AssignTilesFn<T> extends DoFn<T, Pair<Integer, Pair<Integer, T>>> {
+
+		private static final long serialVersionUID = 1L;
+
+		final int tiles;
+
+		int counter = 0;
+
+		AssignTilesFn(int tiles) {
+			this.tiles = tiles;
+		}
+
+		@Override
+		public void initialize() {
+			// the same start tile if the task is retried, 0 in the MemPipeline
+			counter = getContext() == null ? 0 : getContext().getTaskAttemptID().getTaskID().getId() % tiles;
+		}
+
+		@Override
+		public void process(T input, Emitter<Pair<Integer, Pair<Integer, T>>> emitter) {
+			int t = counter;
+			counter = (counter + 1) % tiles;
+
+			Pair<Integer, T> tagged = Pair.of( t, input );
+			for (int u = 0; u < tiles; u++) {
+				int id = t <= u ? tilePairId( t, u, tiles ) : tilePairId( u, t, tiles );
+				emitter.emit( Pair.of( id, tagged ) );
+			}
+		}
+	}
+
+	/**
+	 * Builds the pairs of one tile pair on the reduce side.
+	 */
+	static class TilePairsFn<T> extends DoFn<Pair<Integer, Iterable<Pair<Integer, T>>>, Pair<T, T>> {
+
+		private static final long serialVersionUID = 1L;
+
+		final PType<T> type;
+		final int tiles;
+
+		TilePairsFn(PType<T> type, int tiles) {
+			this.type = type;
+			this.tiles = tiles;
+		}
+
+		@Override
+		public void initialize() {
+			type.initialize( getConfiguration() );
+		}
+
+		@Override
+		public void process(Pair<Integer, Iterable<Pair<Integer, T>>> input, Emitter<Pair<T, T>> emitter) {
+
+			int[] tu = tilesOf( input.first(), tiles );
+
+			List<T> lower = new ArrayList<T>();
+			List<T> upper = new ArrayList<T>();
+
+			// values may be reused by the framework, so we keep detached copies
+			for (Pair<Integer, T> v : input.second()) {
+				T value = type.getDetachedValue( v.second() );
+				if (v.first() == tu[0]) {
+					lower.add( value );
+				}
+				else {
+					upper.add( value );
+				}
+			}
+
+			if (tu[0] == tu[1]) {
+				// diagonal tile: each unordered pair exactly once
+				for (int i = 0; i < lower.size(); i++) {
+					T a = lower.get( i );
+					for (int j = i + 1; j < lower.size(); j++) {
+						emitter.emit( Pair.of( a, lower.get( j ) ) );
+					}
+				}
+			}
+			else {
+				for (T a : lower) {
+					for (T b : upper) {
+						emitter.emit( Pair.of( a, b ) );
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package org.apache.crunchts.lib;
+
+import java.util.Arrays;
+
+/**
+ * Conversion kernels between event time series and continuous equidistant
+ * time series. They work on primitive arrays and buffers of the caller,
+ * nothing is allocated per event or per sample.
+ */
+public class TSConversion {
+
+	/**
+	 * How the events of one bin are combined.
+	 */
+	public enum Aggregation {
+		/** sum of the values */
+		SUM,
+		/** number of events */
+		COUNT,
+		/** mean of the values, 0 for empty bins */
+		MEAN
+	}
+
+	/**
+	 * @return number of bins of width resolution in [tStart, tEnd]
+	 */
+	public static int bins(long tStart, long tEnd, long resolution) {
+		if ( tEnd < tStart ) {
+			return 0;
+		}
+		long n = (tEnd - tStart) / resolution + 1;
+		if ( n > Integer.MAX_VALUE ) {
+			throw new IllegalArgumentException( "too many bins: " + n );
+		}
+		return (int) n;
+	}
+
+	/**
+	 * @return t rounded down to a multiple of resolution, so that series of
+	 *         different objects are aligned (e.g. full hours)
+	 */
+	public static long align(long t, long resolution) {
+		long q = t / resolution;
+		if ( t < 0 && q * resolution != t ) {
+			q--;
+		}
+		return q * resolution;
+	}
+
+	/**
+	 * Bins n events into out[0 .. bins-1], bin i covers
+	 * [tStart + i * resolution, tStart + (i+1) * resolution). The events do
+	 * not have to be sorted, events outside of the bins are ignored.
+	 *
+	 * @param counts - buffer of at least bins elements, only used for MEAN
+	 * @return number of events in the bins
+	 */
+	public static int bin(long[] t, double[] v, int n, long tStart, long resolution,
+			Aggregation aggregation, double[] out, int bins, int[] counts) {
+
+		Arrays.fill( out, 0, bins, 0.0 );
+		if ( aggregation == Aggregation.MEAN ) {
+			Arrays.fill( counts, 0, bins, 0 );
+		}
+
+		int used = 0;
+		for( int i = 0; i < n; i++ ) {
+			long d = t[i] - tStart;
+			if ( d < 0 ) {
+				continue;
+			}
+			long b = d / resolution;
+			if ( b >= bins ) {
+				continue;
+			}
+			int k = (int) b;
+			switch ( aggregation ) {
+				case COUNT:
+					out[k] += 1.0;
+					break;
+				case MEAN:
+					counts[k]++;
+					out[k] += v[i];
+					break;
+				default:
+					out[k] += v[i];
+			}
+			used++;
+		}
+
+		if ( aggregation == Aggregation.MEAN ) {
+			for( int k = 0; k < bins; k++ ) {
+				if ( counts[k] > 1 ) {
+					out[k] /= counts[k];
+				}
+			}
+		}
+		return used;
+	}
+
+	/**
+	 * Indexes of the upward threshold crossings, x[i-1] <= threshold < x[i].
+	 * The first sample counts as crossing if it is above the threshold.
+	 *
+	 * @param idx - buffer of at least n elements
+	 * @return number of crossings
+	 */
+	public static int crossings(double[] x, int n, double threshold, int[] idx) {
+		int m = 0;
+		boolean below = true;
+		for( int i = 0; i < n; i++ ) {
+			boolean above = x[i] > threshold;
+			if ( above && below ) {
+				idx[m++] = i;
+			}
+			below = !above;
+		}
+		return m;
+	}
+
+	/**
+	 * Indexes of the samples which are not zero.
+	 *
+	 * @param idx - buffer of at least n elements
+	 * @return number of non-zero samples
+	 */
+	public static int nonZero(double[] x, int n, int[] idx) {
+		int m = 0;
+		for( int i = 0; i < n; i++ ) {
+			if ( x[i] != 0.0 ) {
+				idx[m++] = i;
+			}
+		}
+		return m;
+	}
+
+}
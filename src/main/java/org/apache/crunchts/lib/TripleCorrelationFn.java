@@ -0,0 +1,141 @@
+package org.apache.crunchts.lib;
+
+import java.util.Arrays;
+
+import org.apache.crunch.Emitter;
+import org.apache.crunch.Pair;
+import org.apache.crunch.Tuple3;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunchts.io.ColumnarTSBSideInput;
+import org.apache.crunchts.statistics.TSKernels;
+
+/**
+ * Resolves the index triples (i,j,k) of IndexTriples in the columnar side
+ * input and emits the labels with the three Pearson correlations
+ *
+ *   ((label i, label j, label k), (r_ij, r_ik, r_jk))
+ *
+ * Each series is normalized once per task and kept in a cache, which holds
+ * up to crunchts.triples.cache.values values (default 2^23, 64 MB) and is
+ * cleared when it is full. TriplesFn emits all triples of a pair (i,j) one
+ * after the other, so r_ij is calculated once per pair and only r_ik and
+ * r_jk for each triple.
+ *
+ * Triples with series of different length or a constant series are
+ * counted and skipped.
+ */
+public class TripleCorrelationFn extends IndexedSeriesFn<Tuple3<Integer, Integer, Integer>,
+		Pair<Tuple3<String, String, String>, Tuple3<Double, Double, Double>>> {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String CACHE_VALUES = "crunchts.triples.cache.values";
+
+	public static final long DEFAULT_CACHE_VALUES = 1L << 23;
+
+	private final long cacheValues;
+
+	private transient double[][] cache;
+	private transient boolean[] constant;
+	private transient long cached;
+
+	private transient int lastI;
+	private transient int lastJ;
+	private transient double[] a;
+	private transient double[] b;
+	private transient double rij;
+
+	public TripleCorrelationFn(ColumnarTSBSideInput side) {
+		this( side, DEFAULT_CACHE_VALUES );
+	}
+
+	/**
+	 * @param cacheValues - number of normalized values kept per task
+	 */
+	public TripleCorrelationFn(ColumnarTSBSideInput side, long cacheValues) {
+		super( side );
+		this.cacheValues = cacheValues;
+	}
+
+	public static PType<Pair<Tuple3<String, String, String>, Tuple3<Double, Double, Double>>> ptype() {
+		return Avros.pairs(
+				Avros.triples( Avros.strings(), Avros.strings(), Avros.strings() ),
+				Avros.triples( Avros.doubles(), Avros.doubles(), Avros.doubles() ) );
+	}
+
+	@Override
+	public void initialize() {
+		super.initialize();
+		int n = getReader().size();
+		cache = new double[n][];
+		constant = new boolean[n];
+		cached = 0;
+		lastI = -1;
+		lastJ = -1;
+		a = null;
+		b = null;
+	}
+
+	@Override
+	public void process(Tuple3<Integer, Integer, Integer> t,
+			Emitter<Pair<Tuple3<String, String, String>, Tuple3<Double, Double, Double>>> emitter) {
+
+		int i = t.first();
+		int j = t.second();
+		int k = t.third();
+
+		if ( i != lastI || j != lastJ ) {
+			if ( i != lastI ) {
+				a = normalized( i );
+				lastI = i;
+			}
+			if ( j != lastJ ) {
+				b = normalized( j );
+				lastJ = j;
+			}
+			if ( a != null && b != null && a.length == b.length ) {
+				rij = TSKernels.dot( a, b, a.length ) / a.length;
+			}
+		}
+		double[] c = normalized( k );
+
+		if ( a == null || b == null || c == null ) {
+			increment( "crunchts.triples", "constant series" );
+			return;
+		}
+		int n = a.length;
+		if ( b.length != n || c.length != n ) {
+			increment( "crunchts.triples", "different length" );
+			return;
+		}
+
+		double rik = TSKernels.dot( a, c, n ) / n;
+		double rjk = TSKernels.dot( b, c, n ) / n;
+
+		emitter.emit( Pair.of( Tuple3.of( label( i ), label( j ), label( k ) ), Tuple3.of( rij, rik, rjk ) ) );
+	}
+
+	/**
+	 * @return the normalized series i from the cache, null for a constant series
+	 */
+	private double[] normalized(int i) {
+		if ( cache[i] != null || constant[i] ) {
+			return cache[i];
+		}
+		double[] x = new double[getReader().getLength( i )];
+		series( i ).get( x );
+		if ( x.length == 0 || !TSKernels.zNormalize( x, x.length ) ) {
+			constant[i] = true;
+			return null;
+		}
+		if ( cached + x.length > cacheValues ) {
+			// the series of the current pair stay referenced by a and b
+			Arrays.fill( cache, null );
+			cached = 0;
+		}
+		cache[i] = x;
+		cached += x.length;
+		return x;
+	}
+}
@@ -9,6 +9,10 @@ public class AbstractTS {
 	
 	protected int zValues = 0;
 	
+	public long getStart() {
+		return tStart;
+	}
+	
 	public long getLength() {
 		return tEnd - tStart;
 	}	
@@ -1,6 +1,10 @@
 package org.apache.crunchts.pojo;
 
 import java.util.Iterator;
+
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.NamedVector;
+import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.Vector.Element;
 import org.apache.mahout.math.VectorWritable;
 
@@ -21,34 +25,106 @@ public class ContEquidistTS extends AbstractTS {
 	
 	/**
 	 * Conversion of a Vector into an array of doubles.
+	 * 
+	 * Dense vectors are copied with getQuick(), for sparse vectors only the
+	 * non-zero elements are visited. Prefer TSBReader, which avoids the 
+	 * Vector object completely.
 	 *  
 	 * @param VectorWritable vector
 	 * @param double customSR
 	 */
 	public void setData( VectorWritable vector, double customSR, String label ) {
+		super.label = label;
 		sr = customSR;		
-		points = new double[vector.get().size()];
-			
-		int c = 0;
-	    Iterator<Element> i = vector.get().iterator();
-	    while( i.hasNext() ) {
-			points[c] = i.next().get(); 
-			c++;
+		
+		Vector v = vector.get();
+		if ( v instanceof NamedVector ) {
+			v = ((NamedVector) v).getDelegate();
+		}
+		
+		int n = v.size();
+		points = new double[n];
+		
+		if ( v.isDense() ) {
+			for( int c = 0; c < n; c++ ) {
+				points[c] = v.getQuick( c );
+			}
+		}
+		else {
+			Iterator<Element> i = v.iterateNonZero();
+			while( i.hasNext() ) {
+				Element e = i.next();
+				points[e.index()] = e.get(); 
+			}
 		}
 	    
-	    double dist = sr * 1000.0 * (double)c; // length of ts in s
+	    updateEnd();
+	}
+	
+	/**
+	 * Copies the first n values of a buffer, e.g. of a TSVectorWritable.
+	 */
+	public void setData( double[] values, int n, String label, long t0 ) {
+		setData( values, n, label, t0, default_sr );
+	}
+	
+	/**
+	 * Copies the first n values of a buffer, sampled with sr Hz.
+	 */
+	public void setData( double[] values, int n, String label, long t0, double sr ) {
+		super.label = label;
+		super.tStart = t0;
+		this.sr = sr;
+		points = new double[n];
+		System.arraycopy( values, 0, points, 0, n );
+		updateEnd();
+	}
+	
+	/**
+	 * Uses the given array as values of the series, without a copy.
+	 */
+	public void wrap( double[] points, String label, long t0, double sr ) {
+		super.label = label;
+		super.tStart = t0;
+		this.sr = sr;
+		this.points = points;
+		updateEnd();
+	}
+	
+	/**
+	 * tEnd = tStart + length of the series in ms
+	 */
+	private void updateEnd() {
+	    double dist = 1000.0 / sr * (double)points.length;
 	    super.tEnd = super.tStart + (long)dist;
 	}
 	
+	/**
+	 * @return the values of the series (not a copy)
+	 */
+	public double[] getPoints() {
+		return points;
+	}
+	
+	/**
+	 * @return sampling rate in Hz
+	 */
+	public double getSamplingRate() {
+		return sr;
+	}
+	
 	/**
 	 * Creation of a Vector from an array of doubles.
 	 * Allows us to use mathematical operations, which
 	 * are implemented in Apache Mahout libraries.
 	 *  
+	 * The vector is a view on the values of the series, changes of the
+	 * vector are visible in the series.
+	 *  
 	 * @return VectorWritable vector
 	 */
 	public VectorWritable getData() {
-		return null;
+		return new VectorWritable( new DenseVector( points, true ) );
 	}
 }
 
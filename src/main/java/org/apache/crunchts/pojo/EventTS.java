@@ -2,110 +2,375 @@ package org.apache.crunchts.pojo;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Hashtable;
+import java.util.List;
 
 import org.apache.crunchts.types.Event;
 import org.apache.crunchts.types.EventTSRecord;
 
+/**
+ * Event time series, stored in parallel arrays which are sorted by time:
+ *
+ *   long[] times, double[] values, int[] tagIds
+ *
+ * The tags are kept as ids of a TagDictionary (the own one of the series,
+ * or the one of the stream it was read from), so an event needs 20 bytes.
+ * Only the first size() elements of the arrays are valid, append() grows
+ * them by half of their size. The arrays of a new series are allocated
+ * with the first event.
+ */
 public class EventTS extends AbstractTS {
-	
+
 	public EventTS() { };
 
-	Hashtable<Date,Double> values;
-	Hashtable<Date,URI> tags;
-	
-	public void setData( 
-			Hashtable<Date,Double> v, 
-			Hashtable<Date,URI> t, 
-			String label, 
-			Date s, 
+	static final int INITIAL_CAPACITY = 16;
+
+	long[] times = null;
+	double[] values = null;
+	int[] tagIds = null;
+	int size = 0;
+
+	// created on first use, see dictionary()
+	TagDictionary dictionary = null;
+
+	/**
+	 * Compatibility with the former Hashtable based representation.
+	 */
+	public void setData(
+			Hashtable<Date,Double> v,
+			Hashtable<Date,URI> t,
+			String label,
+			Date s,
 			Date e ) {
-		
+
 		super.label = label;
-		values = v;
-		tags = t;
+
+		Date[] d = v.keySet().toArray( new Date[v.size()] );
+		Arrays.sort( d );
+
+		allocate( d.length );
+		for( int i = 0; i < d.length; i++ ) {
+			times[i] = d[i].getTime();
+			values[i] = v.get( d[i] );
+			tagIds[i] = t == null ? TagDictionary.NO_TAG : dictionary().id( t.get( d[i] ) );
+		}
+		size = d.length;
 
 	    super.tStart = s.getTime();
 	    super.tEnd = e.getTime();
 	}
-	
+
+	/**
+	 * Uses the given arrays without a copy, the events are sorted by time
+	 * if necessary.
+	 *
+	 * @param tagIds - ids of the given dictionary
+	 */
+	public void setData( long[] times, double[] values, int[] tagIds, int n, TagDictionary dictionary,
+			String label, long tStart, long tEnd ) {
+
+		this.times = times;
+		this.values = values;
+		this.tagIds = tagIds;
+		this.size = n;
+		this.dictionary = dictionary;
+
+		super.label = label;
+		super.tStart = tStart;
+		super.tEnd = tEnd;
+
+		sort();
+	}
+
 	/**
 	 * Mapping of an Avro record to a POJO.
-	 * 
-	 * @param v
+	 *
+	 * Events with an empty uri have no tag.
+	 *
+	 * @param record
 	 */
-	public void setData( EventTSRecord record ) { 
-				
+	public void setData( EventTSRecord record ) {
+
+		List<Event> events = record.getEventArray();
+		int n = events.size();
+		allocate( n );
+
+		int i = 0;
+		for( Event e : events ) {
+			times[i] = e.getTimestamp();
+			values[i] = e.getValue();
+			String uri = e.getUri().toString();
+			tagIds[i] = uri.length() > 0 ? dictionary().id( URI.create( uri ) ) : TagDictionary.NO_TAG;
+			i++;
+		}
+		size = n;
+		sort();
+
+		super.label = record.getLabel().toString();
+		super.tStart = record.getTStart();
+		super.tEnd = record.getTEnd();
 	};
 
-	/** 
-	 * If no record is available and testmode is on,
-	 * we create a random record on the fly.
-	 * 
-	 * @return EventTSRecord
+	private void allocate( int n ) {
+		times = new long[n];
+		values = new double[n];
+		tagIds = new int[n];
+		size = 0;
+	}
+
+	/**
+	 * Adds an event. Events in time order are appended in amortized constant
+	 * time, an older event is inserted at its position.
 	 */
-	public EventTSRecord getRecord() {
-		if (values == null) return getDefaultRandomRecord( 10 );
-		else return createRecord();
+	public void append( long t, double v, URI tag ) {
+		append( t, v, dictionary().id( tag ) );
+	}
+
+	public void append( long t, double v, int tagId ) {
+		if ( times == null ) {
+			allocate( INITIAL_CAPACITY );
+		}
+		else if ( size == times.length ) {
+			int capacity = Math.max( INITIAL_CAPACITY, size + (size >> 1) );
+			times = Arrays.copyOf( times, capacity );
+			values = Arrays.copyOf( values, capacity );
+			tagIds = Arrays.copyOf( tagIds, capacity );
+		}
+
+		int i = size;
+		if ( size > 0 && t < times[size - 1] ) {
+			i = upperBound( t );
+			System.arraycopy( times, i, times, i + 1, size - i );
+			System.arraycopy( values, i, values, i + 1, size - i );
+			System.arraycopy( tagIds, i, tagIds, i + 1, size - i );
+		}
+		times[i] = t;
+		values[i] = v;
+		tagIds[i] = tagId;
+		size++;
+
+		if ( size == 1 || t < tStart ) {
+			tStart = t;
+		}
+		if ( size == 1 || t > tEnd ) {
+			tEnd = t;
+		}
 	}
 
 	/**
-	 * Mapping of POJO to an Avro record, generated from 
-	 * Avro schema (eventts.avsc)
-	 * 
-	 * @return EventTSRecord
+	 * @return number of events
 	 */
-	private EventTSRecord createRecord() {
-		// TODO Auto-generated method stub
-		return null;
+	public int size() {
+		return size;
+	}
+
+	public long getTime( int i ) {
+		return times[i];
+	}
+
+	public double getValue( int i ) {
+		return values[i];
+	}
+
+	public int getTagId( int i ) {
+		return tagIds[i];
+	}
+
+	public URI getTag( int i ) {
+		return dictionary().tag( tagIds[i] );
 	}
 
 	/**
-	 * For tests, we need some random records. So we create those here.
-	 * 
-	 * @param z : number of events in the random record.
-	 * 
-	 * @return
+	 * The arrays are not copied, only the first size() elements are valid.
 	 */
-	private EventTSRecord getDefaultRandomRecord(int z) {
-		
-		ArrayList<Event> eventArray = new ArrayList<Event>();
-		for(int i = 0; i < z; i++ ) {
-			Event e = new Event( System.currentTimeMillis() , "URI", Math.random() );
-			eventArray.add(e);
-		}
-		
-		label = "randomRecord " + System.currentTimeMillis();
-		EventTSRecord rec = new EventTSRecord(eventArray, label, tStart, tEnd);
-		
-		return rec;
-	}
-	
-//	public static org.apache.crunch.types.PType getWritablePType() {
-//		 return Writables.derived(
-//			      EventTS.class,
-//			      new MapFn<EventTSWritable, EventTS>() {
-//					private static final long serialVersionUID = 1L;
-//					public EventTS map(EventTSWritable etsw) { return etsw.get(); }
-//			      },
-//			      new MapFn<EventTS, EventTSWritable>() {
-//   				private static final long serialVersionUID = 1L;
-//			        public EventTSWritable map(EventTS ets) { return new EventTSWritable(ets); }
-//			      },
-//			      Writables.writables(EventTSWritable.class));		
-//   }
+	public long[] getTimes() {
+		return times;
+	}
 
-}
+	public double[] getValueArray() {
+		return values;
+	}
 
+	public int[] getTagIds() {
+		return tagIds;
+	}
 
+	public TagDictionary getDictionary() {
+		return dictionary();
+	}
 
+	private TagDictionary dictionary() {
+		if ( dictionary == null ) {
+			dictionary = new TagDictionary();
+		}
+		return dictionary;
+	}
 
+	public long getEnd() {
+		return tEnd;
+	}
 
+	/**
+	 * @return index of the first event with time >= t, size() if there is none
+	 */
+	public int lowerBound( long t ) {
+		int lo = 0;
+		int hi = size;
+		while ( lo < hi ) {
+			int mid = (lo + hi) >>> 1;
+			if ( times[mid] < t ) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
 
+	/**
+	 * @return index of the first event with time > t, size() if there is none
+	 */
+	public int upperBound( long t ) {
+		int lo = 0;
+		int hi = size;
+		while ( lo < hi ) {
+			int mid = (lo + hi) >>> 1;
+			if ( times[mid] <= t ) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
 
+	/**
+	 * @return number of events in [from, to)
+	 */
+	public int count( long from, long to ) {
+		return Math.max( 0, lowerBound( to ) - lowerBound( from ) );
+	}
+
+	/**
+	 * @return a copy of the events in [from, to)
+	 */
+	public EventTS range( long from, long to ) {
+		int a = lowerBound( from );
+		int b = Math.max( a, lowerBound( to ) );
 
+		EventTS r = new EventTS();
+		if ( a == b ) {
+			// also for a new series without arrays
+			r.setData( new long[0], new double[0], new int[0], 0, dictionary(), label, from, to );
+		}
+		else {
+			r.setData( Arrays.copyOfRange( times, a, b ), Arrays.copyOfRange( values, a, b ),
+					Arrays.copyOfRange( tagIds, a, b ), b - a, dictionary(), label, from, to );
+		}
+		return r;
+	}
 
+	/**
+	 * Merges two series in one linear pass. For equal times the events of
+	 * this series come first. The arrays of an empty series are not read,
+	 * so new series without arrays can be merged.
+	 *
+	 * @return a new series with the label of this one
+	 */
+	public EventTS merge( EventTS other ) {
+		int n = size + other.size;
+		long[] t = new long[n];
+		double[] v = new double[n];
+		int[] g = new int[n];
 
+		boolean sameDictionary = other.dictionary() == dictionary();
 
+		int i = 0;
+		int j = 0;
+		for( int k = 0; k < n; k++ ) {
+			if ( j >= other.size || (i < size && times[i] <= other.times[j]) ) {
+				t[k] = times[i];
+				v[k] = values[i];
+				g[k] = tagIds[i];
+				i++;
+			}
+			else {
+				t[k] = other.times[j];
+				v[k] = other.values[j];
+				g[k] = sameDictionary ? other.tagIds[j] : dictionary().id( other.getTag( j ) );
+				j++;
+			}
+		}
 
+		EventTS m = new EventTS();
+		m.setData( t, v, g, n, dictionary(), label,
+				Math.min( tStart, other.tStart ), Math.max( tEnd, other.tEnd ) );
+		return m;
+	}
+
+	/**
+	 * Mapping of POJO to an Avro record, generated from
+	 * Avro schema (eventts.avsc). A series without events gives a record
+	 * with an empty event array.
+	 *
+	 * @return EventTSRecord
+	 */
+	public EventTSRecord getRecord() {
+
+		ArrayList<Event> eventArray = new ArrayList<Event>( size );
+		for( int i = 0; i < size; i++ ) {
+			URI tag = getTag( i );
+			eventArray.add( new Event( times[i], tag == null ? "" : tag.toString(), values[i] ) );
+		}
+
+		return new EventTSRecord( eventArray, label == null ? "" : label, tStart, tEnd );
+	}
+
+	/**
+	 * Sorts the events by time, if they are not yet (heap sort, in place).
+	 */
+	private void sort() {
+		boolean sorted = true;
+		for( int i = 1; i < size && sorted; i++ ) {
+			sorted = times[i - 1] <= times[i];
+		}
+		if ( sorted ) {
+			return;
+		}
+		for( int i = size / 2 - 1; i >= 0; i-- ) {
+			siftDown( i, size );
+		}
+		for( int end = size - 1; end > 0; end-- ) {
+			swap( 0, end );
+			siftDown( 0, end );
+		}
+	}
+
+	private void siftDown( int i, int n ) {
+		while ( true ) {
+			int c = 2 * i + 1;
+			if ( c >= n ) {
+				return;
+			}
+			if ( c + 1 < n && times[c + 1] > times[c] ) {
+				c++;
+			}
+			if ( times[i] >= times[c] ) {
+				return;
+			}
+			swap( i, c );
+			i = c;
+		}
+	}
+
+	private void swap( int i, int j ) {
+		long t = times[i]; times[i] = times[j]; times[j] = t;
+		double v = values[i]; values[i] = values[j]; values[j] = v;
+		int g = tagIds[i]; tagIds[i] = tagIds[j]; tagIds[j] = g;
+	}
+
+}
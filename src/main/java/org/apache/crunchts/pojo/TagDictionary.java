@@ -0,0 +1,74 @@
+package org.apache.crunchts.pojo;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps the tag URIs of events to int ids. The id 0 stands for "no tag".
+ *
+ * Lifecycle: there is no JVM-wide dictionary. An EventTS which is built
+ * with append() or from a record has its own dictionary. The series which
+ * are read through one EventTSWritable (one stream of a task) share the
+ * dictionary of that Writable, so a repeated tag is stored once per stream
+ * and an event only keeps its id. When the dictionary of a stream reaches
+ * EventTSWritable.MAX_TAGS it starts a new one, the series read before keep
+ * a reference to the old one, which is collected with them.
+ *
+ * The ids are local to the dictionary, serialized forms (EventTSWritable,
+ * EventTSRecord) contain the URIs. A dictionary is not thread safe, it is
+ * used by one stream or one series.
+ */
+public class TagDictionary {
+
+	public static final int NO_TAG = 0;
+
+	private final Map<URI,Integer> ids = new HashMap<URI,Integer>();
+	private final List<URI> tags = new ArrayList<URI>();
+
+	public TagDictionary() {
+		tags.add( null );
+	}
+
+	/**
+	 * @return the id of the tag, a new id for an unknown tag, NO_TAG for null
+	 */
+	public int id( URI tag ) {
+		if ( tag == null ) {
+			return NO_TAG;
+		}
+		Integer id = ids.get( tag );
+		if ( id == null ) {
+			id = tags.size();
+			ids.put( tag, id );
+			tags.add( tag );
+		}
+		return id;
+	}
+
+	/**
+	 * @return the tag with the given id, null for NO_TAG
+	 */
+	public URI tag( int id ) {
+		return tags.get( id );
+	}
+
+	/**
+	 * @return number of known tags
+	 */
+	public int size() {
+		return tags.size() - 1;
+	}
+
+	/**
+	 * Removes all tags. Only allowed if no EventTS uses the ids of this
+	 * dictionary anymore.
+	 */
+	public void clear() {
+		ids.clear();
+		tags.clear();
+		tags.add( null );
+	}
+}
@@ -0,0 +1,104 @@
+package org.apache.crunchts.ptypes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.crunch.CrunchRuntimeException;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+/**
+ * Hand written PTypes for ContEquidistTS, both use the encoding of
+ * ContEquidistTSWritable.
+ *
+ *   writables() : for pipelines in the Writable type family
+ *   avros()     : Avro bytes, for pipelines in the Avro type family
+ *
+ * The buffers of the MapFns are created on first use, derived types do
+ * not initialize their MapFns in all code paths.
+ *
+ * Use them only for intermediate data and shuffles. The records are not
+ * readable with a schema, so Avros.reflects( ContEquidistTS.class ) (the
+ * default of TSBReader.toContEquidistTS) is the type for collections which
+ * are written to targets.
+ */
+public class ContEquidistTSPTypes {
+
+	public static PType<ContEquidistTS> writables() {
+		return Writables.derived(
+				ContEquidistTS.class,
+				new MapFn<ContEquidistTSWritable, ContEquidistTS>() {
+					private static final long serialVersionUID = 1L;
+					public ContEquidistTS map(ContEquidistTSWritable w) { return w.get(); }
+				},
+				new MapFn<ContEquidistTS, ContEquidistTSWritable>() {
+					private static final long serialVersionUID = 1L;
+					public ContEquidistTSWritable map(ContEquidistTS ts) { return new ContEquidistTSWritable( ts ); }
+				},
+				Writables.writables( ContEquidistTSWritable.class ) );
+	}
+
+	public static PType<ContEquidistTS> avros() {
+		return Avros.derived(
+				ContEquidistTS.class,
+				new FromBytesFn(),
+				new ToBytesFn(),
+				Avros.bytes() );
+	}
+
+	static class FromBytesFn extends MapFn<ByteBuffer, ContEquidistTS> {
+
+		private static final long serialVersionUID = 1L;
+
+		transient DataInputBuffer in;
+		transient ContEquidistTSWritable w;
+
+		@Override
+		public ContEquidistTS map(ByteBuffer bytes) {
+			if ( in == null ) {
+				in = new DataInputBuffer();
+				w = new ContEquidistTSWritable();
+			}
+			in.reset( bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining() );
+			try {
+				w.readFields( in );
+			}
+			catch (IOException e) {
+				throw new CrunchRuntimeException( e );
+			}
+			return w.get();
+		}
+	}
+
+	static class ToBytesFn extends MapFn<ContEquidistTS, ByteBuffer> {
+
+		private static final long serialVersionUID = 1L;
+
+		transient DataOutputBuffer out;
+		transient ContEquidistTSWritable w;
+
+		@Override
+		public ByteBuffer map(ContEquidistTS ts) {
+			if ( out == null ) {
+				out = new DataOutputBuffer();
+				w = new ContEquidistTSWritable();
+			}
+			out.reset();
+			w.set( ts );
+			try {
+				w.write( out );
+			}
+			catch (IOException e) {
+				throw new CrunchRuntimeException( e );
+			}
+			byte[] b = new byte[out.getLength()];
+			System.arraycopy( out.getData(), 0, b, 0, b.length );
+			return ByteBuffer.wrap( b );
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package org.apache.crunchts.ptypes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Binary encoding of a ContEquidistTS:
+ *
+ *   label (UTF), t0 (long), sampling rate (double), n (varint),
+ *   n values as one block of big endian doubles
+ *
+ * The values are converted with one bulk copy between a reused byte[] and
+ * the double[], there is no per value call and no per element encoding as
+ * with Avro reflection.
+ */
+public class ContEquidistTSWritable implements Writable {
+
+	private ContEquidistTS ts;
+
+	private byte[] raw = new byte[0];
+
+	public ContEquidistTSWritable() { }
+
+	public ContEquidistTSWritable( ContEquidistTS ts ) {
+		this.ts = ts;
+	}
+
+	public ContEquidistTS get() {
+		return ts;
+	}
+
+	public void set( ContEquidistTS ts ) {
+		this.ts = ts;
+	}
+
+	/**
+	 * Each call creates a new ContEquidistTS, the series handed out by get()
+	 * are never overwritten.
+	 */
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		String label = in.readUTF();
+		long t0 = in.readLong();
+		double sr = in.readDouble();
+		int n = WritableUtils.readVInt( in );
+
+		int bytes = 8 * n;
+		if ( raw.length < bytes ) {
+			raw = new byte[bytes];
+		}
+		in.readFully( raw, 0, bytes );
+
+		double[] points = new double[n];
+		ByteBuffer.wrap( raw, 0, bytes ).asDoubleBuffer().get( points );
+
+		ts = new ContEquidistTS();
+		ts.wrap( points, label, t0, sr );
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		double[] points = ts.getPoints();
+		int n = points == null ? 0 : points.length;
+
+		out.writeUTF( ts.getLabel() == null ? "" : ts.getLabel() );
+		out.writeLong( ts.getStart() );
+		out.writeDouble( ts.getSamplingRate() );
+		WritableUtils.writeVInt( out, n );
+
+		int bytes = 8 * n;
+		if ( raw.length < bytes ) {
+			raw = new byte[bytes];
+		}
+		if ( n > 0 ) {
+			ByteBuffer.wrap( raw, 0, bytes ).asDoubleBuffer().put( points );
+		}
+		out.write( raw, 0, bytes );
+	}
+}
@@ -1,116 +1,56 @@
 package org.apache.crunchts.ptypes;
 
-import java.util.ArrayList;
-import java.util.Hashtable;
-import java.util.Date;
-import java.awt.List;
-import java.net.URI;
-
 import org.apache.crunch.MapFn;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.avro.Avros;
 import org.apache.crunch.types.writable.Writables;
-import org.apache.crunchts.pojo.AbstractTS;
-
 import org.apache.crunchts.types.EventTSRecord;
-import org.apache.crunchts.types.Event;
-
-public class EventTS extends AbstractTS {
-	
-	public EventTS() { };
-
-	Hashtable<Date,Double> values;
-	Hashtable<Date,URI> tags;
-	
-	public void setData( 
-			Hashtable<Date,Double> v, 
-			Hashtable<Date,URI> t, 
-			String label, 
-			Date s, 
-			Date e ) {
-		
-		super.label = label;
-		values = v;
-		tags = t;
 
-	    super.tStart = s.getTime();
-	    super.tEnd = e.getTime();
-	}
-	
-	/**
-	 * Mapping of an Avro record to a POJO.
-	 * 
-	 * @param v
-	 */
-	public void setData( EventTSRecord record ) { 
-				
-	};
+/**
+ * Event time series with Writable and Avro PTypes. The data and the mapping to
+ * the Avro record (eventts.avsc) are inherited from the POJO.
+ */
+public class EventTS extends org.apache.crunchts.pojo.EventTS {
 
-	/** 
-	 * If no record is available and testmode is on,
-	 * we create a random record on the fly.
-	 * 
-	 * @return EventTSRecord
-	 */
-	public EventTSRecord getRecord() {
-		if (values == null) return getDefaultRandomRecord( 10 );
-		else return createRecord();
-	}
+	public EventTS() { };
 
 	/**
-	 * Mapping of POJO to an Avro record, generated from 
-	 * Avro schema (eventts.avsc)
-	 * 
-	 * @return EventTSRecord
+	 * PType for pipelines in the Writable type family, the series are
+	 * encoded by EventTSWritable.
 	 */
-	private EventTSRecord createRecord() {
-		// TODO Auto-generated method stub
-		return null;
+	public static PType<org.apache.crunchts.pojo.EventTS> getWritablePType() {
+		return Writables.derived(
+				org.apache.crunchts.pojo.EventTS.class,
+				new MapFn<EventTSWritable, org.apache.crunchts.pojo.EventTS>() {
+					private static final long serialVersionUID = 1L;
+					public org.apache.crunchts.pojo.EventTS map(EventTSWritable etsw) { return etsw.get(); }
+				},
+				new MapFn<org.apache.crunchts.pojo.EventTS, EventTSWritable>() {
+					private static final long serialVersionUID = 1L;
+					public EventTSWritable map(org.apache.crunchts.pojo.EventTS ets) { return new EventTSWritable( ets ); }
+				},
+				Writables.writables( EventTSWritable.class ) );
 	}
 
 	/**
-	 * For tests, we need some random records. So we create those here.
-	 * 
-	 * @param z : number of events in the random record.
-	 * 
-	 * @return
+	 * PType for Avro pipelines, the series are stored as EventTSRecord.
 	 */
-	private EventTSRecord getDefaultRandomRecord(int z) {
-		
-		ArrayList<Event> eventArray = new ArrayList<Event>();
-		for(int i = 0; i < z; i++ ) {
-			Event e = new Event( System.currentTimeMillis() , "URI", Math.random() );
-			eventArray.add(e);
-		}
-		
-		label = "randomRecord " + System.currentTimeMillis();
-		EventTSRecord rec = new EventTSRecord(eventArray, label, tStart, tEnd);
-		
-		return rec;
+	public static PType<org.apache.crunchts.pojo.EventTS> getAvroPType() {
+		return Avros.derived(
+				org.apache.crunchts.pojo.EventTS.class,
+				new MapFn<EventTSRecord, org.apache.crunchts.pojo.EventTS>() {
+					private static final long serialVersionUID = 1L;
+					public org.apache.crunchts.pojo.EventTS map(EventTSRecord rec) {
+						org.apache.crunchts.pojo.EventTS ets = new org.apache.crunchts.pojo.EventTS();
+						ets.setData( rec );
+						return ets;
+					}
+				},
+				new MapFn<org.apache.crunchts.pojo.EventTS, EventTSRecord>() {
+					private static final long serialVersionUID = 1L;
+					public EventTSRecord map(org.apache.crunchts.pojo.EventTS ets) { return ets.getRecord(); }
+				},
+				Avros.records( EventTSRecord.class ) );
 	}
-	
-//	public static org.apache.crunch.types.PType getWritablePType() {
-//		 return Writables.derived(
-//			      EventTS.class,
-//			      new MapFn<EventTSWritable, EventTS>() {
-//					private static final long serialVersionUID = 1L;
-//					public EventTS map(EventTSWritable etsw) { return etsw.get(); }
-//			      },
-//			      new MapFn<EventTS, EventTSWritable>() {
-//   				private static final long serialVersionUID = 1L;
-//			        public EventTSWritable map(EventTS ets) { return new EventTSWritable(ets); }
-//			      },
-//			      Writables.writables(EventTSWritable.class));		
-//   }
 
 }
-
-
-
-
-
-
-
-
-
-
-
-
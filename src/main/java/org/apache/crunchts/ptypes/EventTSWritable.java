@@ -3,38 +3,160 @@ package org.apache.crunchts.ptypes;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
 
 import org.apache.crunchts.pojo.EventTS;
+import org.apache.crunchts.pojo.TagDictionary;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 
 
 /**
- * This stub class is not used at the moment.
- * 
+ * Binary encoding of an EventTS:
+ *
+ *   label (UTF), tStart (vlong), tEnd (vlong), n (vint)
+ *   timestamps   : first value, then the differences (vlong), the events
+ *                  are written in time order, so the deltas are small
+ *   tags         : dictionary size (vint) and the distinct URIs (UTF),
+ *                  then one id per event (vint, 0 = no tag), the ids are
+ *                  numbered per series and mapped to the TagDictionary of
+ *                  the reading Writable, which all series read by it share
+ *                  (a new one after MAX_TAGS tags, see TagDictionary)
+ *   values       : n big endian doubles in one block
+ *
  * @author training
  *
  */
 public class EventTSWritable implements Writable {
 
-	
+	/**
+	 * Tags per dictionary of a stream, then a new dictionary is started.
+	 */
+	public static final int MAX_TAGS = 1 << 20;
+
+	private EventTS ets;
+
+	private byte[] raw = new byte[0];
+
+	private TagDictionary dictionary = new TagDictionary();
+
+	// write(): dictionary id -> local tag number, all 0 between the calls
+	private int[] remap = new int[0];
+	private int[] distinct = new int[0];
+
+	public EventTSWritable() { }
+
 	public EventTSWritable( EventTS ets ) {
-		
+		this.ets = ets;
 	}
-	
+
 	public EventTS get() {
-		return null;
+		return ets;
 	}
-	
+
 	@Override
 	public void readFields(DataInput in) throws IOException {
-		 
-		
+		String label = in.readUTF();
+		long tStart = WritableUtils.readVLong( in );
+		long tEnd = WritableUtils.readVLong( in );
+		int n = WritableUtils.readVInt( in );
+
+		long[] times = new long[n];
+		long t = 0;
+		for( int i = 0; i < n; i++ ) {
+			t += WritableUtils.readVLong( in );
+			times[i] = t;
+		}
+
+		// local tag number -> id in the dictionary of this stream
+		if ( dictionary.size() >= MAX_TAGS ) {
+			dictionary = new TagDictionary();
+		}
+		int[] local = new int[WritableUtils.readVInt( in ) + 1];
+		for( int k = 1; k < local.length; k++ ) {
+			local[k] = dictionary.id( URI.create( in.readUTF() ) );
+		}
+		int[] tagIds = new int[n];
+		for( int i = 0; i < n; i++ ) {
+			tagIds[i] = local[WritableUtils.readVInt( in )];
+		}
+
+		double[] values = readDoubles( in, n );
+
+		ets = new EventTS();
+		ets.setData( times, values, tagIds, n, dictionary, label, tStart, tEnd );
 	}
 
 	@Override
 	public void write(DataOutput out) throws IOException {
-		 
-		
+		int n = ets.size();
+		long[] times = ets.getTimes();
+		int[] tagIds = ets.getTagIds();
+
+		out.writeUTF( ets.getLabel() == null ? "" : ets.getLabel() );
+		WritableUtils.writeVLong( out, ets.getStart() );
+		WritableUtils.writeVLong( out, ets.getEnd() );
+		WritableUtils.writeVInt( out, n );
+
+		long last = 0;
+		for( int i = 0; i < n; i++ ) {
+			WritableUtils.writeVLong( out, times[i] - last );
+			last = times[i];
+		}
+
+		// the ids of the dictionary are renumbered per series: remap[id] is
+		// the local number, 0 if the tag did not occur yet
+		int tags = ets.getDictionary().size() + 1;
+		if ( remap.length < tags ) {
+			remap = new int[Math.max( tags, remap.length + (remap.length >> 1) )];
+		}
+		if ( distinct.length < n ) {
+			distinct = new int[n];
+		}
+		int z = 0;
+		for( int i = 0; i < n; i++ ) {
+			int id = tagIds[i];
+			if ( id != TagDictionary.NO_TAG && remap[id] == 0 ) {
+				distinct[z++] = id;
+				remap[id] = z;
+			}
+		}
+		WritableUtils.writeVInt( out, z );
+		for( int k = 0; k < z; k++ ) {
+			out.writeUTF( ets.getDictionary().tag( distinct[k] ).toString() );
+		}
+		for( int i = 0; i < n; i++ ) {
+			WritableUtils.writeVInt( out, remap[tagIds[i]] );
+		}
+		// only the used entries are reset
+		for( int k = 0; k < z; k++ ) {
+			remap[distinct[k]] = 0;
+		}
+
+		writeDoubles( out, ets.getValueArray(), n );
+	}
+
+	private double[] readDoubles(DataInput in, int n) throws IOException {
+		int bytes = 8 * n;
+		if ( raw.length < bytes ) {
+			raw = new byte[bytes];
+		}
+		in.readFully( raw, 0, bytes );
+		double[] v = new double[n];
+		ByteBuffer.wrap( raw, 0, bytes ).asDoubleBuffer().get( v );
+		return v;
+	}
+
+	private void writeDoubles(DataOutput out, double[] v, int n) throws IOException {
+		int bytes = 8 * n;
+		if ( raw.length < bytes ) {
+			raw = new byte[bytes];
+		}
+		if ( n > 0 ) {
+			ByteBuffer.wrap( raw, 0, bytes ).asDoubleBuffer().put( v, 0, n );
+		}
+		out.write( raw, 0, bytes );
 	}
 
 }
@@ -0,0 +1,118 @@
+package org.apache.crunchts.simple;
+
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.PipelineResult;
+import org.apache.crunch.io.avro.AvroFileTarget;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.util.CrunchTool;
+import org.apache.crunchts.TSBValidator;
+import org.apache.crunchts.io.TSBReader;
+import org.apache.crunchts.io.TSVectorWritable;
+import org.apache.crunchts.lib.CorrelationCandidates;
+import org.apache.crunchts.lib.SymmetricPairs;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.crunchts.ptypes.ContEquidistTSPTypes;
+import org.apache.crunchts.simple.CrossCorrelationNetworkFromTSBucket.CrossCorrelationFn;
+import org.apache.crunchts.types.CorrelationLink;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Crunch time series processing pipeline.
+ *
+ * Creates a correlation network like CrossCorrelationNetworkFromTSBucket,
+ * but only the candidate pairs of CorrelationCandidates (SimHash / LSH) are
+ * verified with the exact lagged cross-correlation. The recall for the
+ * configured LSH parameters (reduced by the collisions in skipped buckets)
+ * and the fraction of verified pairs are printed, see CorrelationCandidates
+ * for the parameters.
+ *
+ *   -Dcrunchts.cc.maxlag=10        lag window [-maxlag, maxlag]
+ *   -Dcrunchts.cc.threshold=0.5    minimal |rho| of a link
+ *
+ * With the constructor argument inMemory = true (or --inmemory as third
+ * argument of main) the pipeline runs in the MemPipeline.
+ *
+ * @author Mirko K'mpf
+ *
+ */
+public class ApproximateCorrelationNetworkFromTSBucket extends CrunchTool {
+
+	private static final long serialVersionUID = 1L;
+
+	public ApproximateCorrelationNetworkFromTSBucket() {
+		this( false );
+	}
+
+	public ApproximateCorrelationNetworkFromTSBucket(boolean inMemory) {
+		super( inMemory );
+	}
+
+	@Override
+	public int run(String[] args) throws Exception {
+
+		if (args.length != 2) {
+			System.out.printf("Usage: ApproximateCorrelationNetworkFromTSBucket <input file> <output dir> [--inmemory]\n");
+			System.exit(-1);
+		}
+
+		int maxLag = getConf().getInt( CrossCorrelationNetworkFromTSBucket.MAX_LAG, 10 );
+		double threshold = Double.parseDouble( getConf().get( CrossCorrelationNetworkFromTSBucket.THRESHOLD, "0.5" ) );
+
+		CorrelationCandidates lsh = new CorrelationCandidates( getConf(), threshold );
+
+		// load the time series from SequenceFiles
+		PTable<Text,TSVectorWritable> tsb = read( TSBReader.source( args[0] ) );
+
+		// consistency check first, if enabled with -Dcrunchts.validate=true
+		PCollection<ContEquidistTS> converted = TSBValidator.gate( getConf(), TSBReader.toContEquidistTS( tsb, ContEquidistTSPTypes.avros() ), args[1] );
+
+		PTable<Pair<Integer, Long>, Pair<String, Collection<Long>>> bands = lsh.bands( converted );
+		PCollection<Pair<String, String>> candidates = lsh.candidates( bands );
+		PTable<String, Long> collisions = lsh.collisions( bands );
+
+		PCollection<Pair<ContEquidistTS,ContEquidistTS>> pairs = CorrelationCandidates.resolve( candidates, converted );
+
+		PCollection<CorrelationLink> links = pairs.parallelDo( "cross-correlation of candidates",
+				new CrossCorrelationFn( maxLag, threshold ),
+				Avros.specifics( CorrelationLink.class ) );
+
+		AvroFileTarget target = new AvroFileTarget( new Path( args[1] + "_approx_cc_links_avro" ) );
+		this.write( links, target );
+
+		long zSeries = tsb.length().getValue();
+		long zCandidates = candidates.length().getValue();
+		long zPairs = SymmetricPairs.pairCount( zSeries );
+
+		// recall with the collisions lost in skipped buckets
+		Map<String, Long> c = collisions.materializeToMap();
+		Long all = c.get( CorrelationCandidates.ALL_COLLISIONS );
+		Long skipped = c.get( CorrelationCandidates.SKIPPED_COLLISIONS );
+		lsh.report( threshold, all == null || skipped == null || all == 0 ? 0.0 : (double) skipped / all );
+
+		System.out.println("# of series     : " + zSeries );
+		System.out.println("# of pairs      : " + zPairs );
+		System.out.println("# of candidates : " + zCandidates
+				+ (zPairs > 0 ? String.format( " (%.4f of all pairs)", (double) zCandidates / zPairs ) : "") );
+		System.out.println("# of links      : " + links.length().getValue() );
+
+		PipelineResult result = done();
+
+		return result.succeeded() ? 0 : 1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		boolean inMemory = args.length == 3 && "--inmemory".equals( args[2] );
+		String[] arguments = inMemory ? new String[] { args[0], args[1] } : args;
+		int exitCode = ToolRunner.run(new Configuration(), new ApproximateCorrelationNetworkFromTSBucket( inMemory ), arguments);
+		System.exit(exitCode);
+	}
+}
@@ -0,0 +1,78 @@
+package org.apache.crunchts.simple;
+
+
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PipelineResult;
+import org.apache.crunch.io.From;
+import org.apache.crunch.io.avro.AvroFileTarget;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.util.CrunchTool;
+import org.apache.crunchts.lib.TSConversion.Aggregation;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.crunchts.types.EventTSRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Crunch time series processing pipeline.
+ *
+ * Converts event time series (Avro EventTSRecords) into continuous
+ * equidistant time series, e.g. hourly or daily click counts. Each series
+ * is converted on its own, so the job is map only.
+ *
+ * Parameters:
+ *
+ *   -Dcrunchts.bin.resolution=3600000   bin width in ms
+ *   -Dcrunchts.bin.aggregation=SUM      SUM, COUNT or MEAN
+ *   -Dcrunchts.bin.start=<ms>           optional fixed window, all series
+ *   -Dcrunchts.bin.end=<ms>             get the same length
+ *
+ * @author Mirko K'mpf
+ *
+ */
+public class BinEventTimeSeries extends CrunchTool {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String RESOLUTION = "crunchts.bin.resolution";
+	public static final String AGGREGATION = "crunchts.bin.aggregation";
+	public static final String START = "crunchts.bin.start";
+	public static final String END = "crunchts.bin.end";
+
+	@Override
+	public int run(String[] args) throws Exception {
+
+		if (args.length != 2) {
+			System.out.printf("Usage: BinEventTimeSeries <input file> <output dir>\n");
+			System.exit(-1);
+		}
+
+		long resolution = getConf().getLong( RESOLUTION, 3600000L );
+		Aggregation aggregation = Aggregation.valueOf( getConf().get( AGGREGATION, "SUM" ).toUpperCase() );
+		long start = getConf().getLong( START, Long.MIN_VALUE );
+		long end = getConf().getLong( END, Long.MIN_VALUE );
+
+		if ( (start == Long.MIN_VALUE) != (end == Long.MIN_VALUE) ) {
+			throw new IllegalArgumentException( START + " and " + END + " have to be set both" );
+		}
+
+		PCollection<EventTSRecord> events = read( From.avroFile( args[0], Avros.records( EventTSRecord.class ) ) );
+
+		PCollection<ContEquidistTS> binned = events.parallelDo( "bin event series",
+				new EventsToContEquidistTSFn( resolution, aggregation, start, end ),
+				Avros.reflects( ContEquidistTS.class ) );
+
+		AvroFileTarget target = new AvroFileTarget( new Path( args[1] + "_binned_avro" ) );
+		this.write( binned, target );
+
+		PipelineResult result = done();
+
+		return result.succeeded() ? 0 : 1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int exitCode = ToolRunner.run(new Configuration(), new BinEventTimeSeries(), args);
+		System.exit(exitCode);
+	}
+}
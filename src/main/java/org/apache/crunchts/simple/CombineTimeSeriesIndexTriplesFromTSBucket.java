@@ -0,0 +1,118 @@
+package org.apache.crunchts.simple;
+
+
+import org.apache.crunch.PCollection;
+import org.apache.crunch.Pair;
+import org.apache.crunch.PipelineResult;
+import org.apache.crunch.Source;
+import org.apache.crunch.Tuple3;
+import org.apache.crunch.impl.mr.run.RuntimeParameters;
+import org.apache.crunch.io.From;
+import org.apache.crunch.io.avro.AvroFileTarget;
+import org.apache.crunch.util.CrunchTool;
+import org.apache.crunchts.TSBValidator;
+import org.apache.crunchts.io.ColumnarTSBReader;
+import org.apache.crunchts.io.ColumnarTSBSideInput;
+import org.apache.crunchts.io.TSBConverter;
+import org.apache.crunchts.lib.IndexTriples;
+import org.apache.crunchts.lib.TripleCorrelationFn;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Crunch time series processing pipeline.
+ *
+ * Creates the triples of a time series bucket as index triples (i,j,k)
+ * with i < j < k. The series are stored once in a columnar TSB next to the
+ * output, the indexes refer to the order in this file. Analysis DoFns
+ * resolve the indexes with IndexedSeriesFn instead of shipping three
+ * series per triple. With -Dcrunchts.triples.correlations=true the
+ * pairwise correlations of each triple are calculated this way
+ * (TripleCorrelationFn) and written to <output>_triple_correlations_avro.
+ *
+ * The input is a SequenceFile TSB, which is converted on the client, or
+ * an existing columnar TSB given with -Dcrunchts.triples.columnar=<path>.
+ * With -Dcrunchts.validate=true only the series accepted by TSBValidator
+ * are converted, the rejects are listed in <output>_rejects.
+ *
+ * Parameters:
+ *
+ *   -Dcrunchts.triples.mappers=20          seed files, one mapper each
+ *   -Dcrunchts.triples.reducers=20         reducers for the triples
+ *   -Dcrunchts.triples.cache.values=8388608
+ *                                          normalized values cached per task
+ *                                          by TripleCorrelationFn
+ *
+ * @author Mirko K'mpf
+ *
+ */
+public class CombineTimeSeriesIndexTriplesFromTSBucket extends CrunchTool {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String COLUMNAR = "crunchts.triples.columnar";
+
+	public static final String CORRELATIONS = "crunchts.triples.correlations";
+
+	@Override
+	public int run(String[] args) throws Exception {
+
+		if (args.length != 2) {
+			System.out.printf("Usage: CombineTimeSeriesIndexTriplesFromTSBucket <input file> <output dir>\n");
+			System.exit(-1);
+		}
+
+		Configuration conf = getConf();
+
+		Path columnar;
+		if ( conf.get( COLUMNAR ) != null ) {
+			columnar = new Path( conf.get( COLUMNAR ) );
+		}
+		else {
+			columnar = new Path( args[1] + "_series.ctsb" );
+			TSBValidator validator = conf.getBoolean( TSBValidator.ENABLED, false ) ? TSBValidator.fromConf( conf ) : null;
+			TSBConverter.toColumnar( conf, new Path( args[0] ), columnar, validator, new Path( args[1] + "_rejects" ) );
+		}
+
+		ColumnarTSBReader index = new ColumnarTSBReader( columnar.getFileSystem( conf ), columnar );
+		int n = index.size();
+		index.close();
+
+		// one mapper per seed file
+		Path seeds = new Path( args[1] + "_seeds" );
+		IndexTriples.writeSeeds( seeds.getFileSystem( conf ), seeds, n, conf.getInt( IndexTriples.MAPPERS, IndexTriples.DEFAULT_MAPPERS ) );
+		Source<String> seedSource = From.textFile( seeds );
+		seedSource.inputConf( RuntimeParameters.DISABLE_COMBINE_FILE, "true" );
+
+		int reducers = conf.getInt( IndexTriples.REDUCERS, IndexTriples.DEFAULT_REDUCERS );
+		PCollection<Tuple3<Integer, Integer, Integer>> triples = IndexTriples.enumerate( read( seedSource ), n, reducers );
+
+		AvroFileTarget target = new AvroFileTarget( new Path( args[1] + "_index_triples_avro" ) );
+		this.write( triples, target );
+
+		if ( conf.getBoolean( CORRELATIONS, false ) ) {
+			long cacheValues = conf.getLong( TripleCorrelationFn.CACHE_VALUES, TripleCorrelationFn.DEFAULT_CACHE_VALUES );
+			PCollection<Pair<Tuple3<String, String, String>, Tuple3<Double, Double, Double>>> correlations = triples.parallelDo(
+					"triple correlations", new TripleCorrelationFn( new ColumnarTSBSideInput( columnar ), cacheValues ), TripleCorrelationFn.ptype() );
+			this.write( correlations, new AvroFileTarget( new Path( args[1] + "_triple_correlations_avro" ) ) );
+		}
+
+		PipelineResult result = done();
+
+		FileSystem fs = seeds.getFileSystem( conf );
+		fs.delete( seeds, true );
+
+		System.out.println("# of series  : " + n );
+		System.out.println("# of triples : " + IndexTriples.tripleCount( n ) );
+		System.out.println("> series     : " + columnar );
+
+		return result.succeeded() ? 0 : 1;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int exitCode = ToolRunner.run(new Configuration(), new CombineTimeSeriesIndexTriplesFromTSBucket(), args);
+		System.exit(exitCode);
+	}
+}
@@ -1,24 +1,22 @@
 package org.apache.crunchts.simple;
 
 
-import org.apache.crunch.DoFn;
-import org.apache.crunch.Emitter;
 import org.apache.crunch.PCollection;
 import org.apache.crunch.PObject;
 import org.apache.crunch.PTable;
 import org.apache.crunch.Pair;
 import org.apache.crunch.PipelineResult;
-import org.apache.crunch.io.From;
 import org.apache.crunch.io.avro.AvroFileTarget;
-import org.apache.crunch.lib.Cartesian;
-import org.apache.crunch.types.avro.Avros;
 import org.apache.crunch.util.CrunchTool;
+import org.apache.crunchts.TSBValidator;
+import org.apache.crunchts.io.TSBReader;
+import org.apache.crunchts.io.TSVectorWritable;
 import org.apache.crunchts.pojo.EventTS;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.ToolRunner;
-import org.apache.mahout.math.VectorWritable;
+import org.apache.crunchts.lib.SymmetricPairs;
 import org.apache.crunchts.pojo.ContEquidistTS;
 import org.apache.crunchts.types.EventTSRecord;
  
@@ -29,6 +27,9 @@ import org.apache.crunchts.types.EventTSRecord;
  * 
  * Step 2: Extract event time series from continuous equidistant time series. 
  * 
+ * Pairs are created with SymmetricPairs, the tile size is configured via
+ * -Dcrunchts.pairs.tile.size=... (default 500 series per tile).
+ * 
  * @author Mirko K'mpf
  *
  */
@@ -45,50 +46,32 @@ public class CombineTimeSeriesPairsFromTSBucket extends CrunchTool {
 		}
 
 		// load the time series from SequenceFiles
-		PTable<Text,org.apache.mahout.math.VectorWritable> tsb = read( 
-				From.sequenceFile(  
-						args[0],                                            // location in HDFS 
-						Text.class,                                         // key-type
-						org.apache.mahout.math.VectorWritable.class ) );    // value-type
+		PTable<Text,TSVectorWritable> tsb = read( TSBReader.source( args[0] ) );
 		
-		PCollection<ContEquidistTS> converted = covertFromVectorWritables( tsb );
+		// consistency check first, if enabled with -Dcrunchts.validate=true
+		PCollection<ContEquidistTS> converted = TSBValidator.gate( getConf(), TSBReader.toContEquidistTS( tsb ), args[1] );
 		
-		PCollection<Pair<ContEquidistTS,ContEquidistTS>> combinedP = Cartesian.cross(converted, converted);
+		// only the upper triangle: N(N-1)/2 pairs, built per tile pair on the reduce side
+		long zSeries = tsb.length().getValue();
+		int tileSize = getConf().getInt( SymmetricPairs.TILE_SIZE, SymmetricPairs.DEFAULT_TILE_SIZE );
+		int tiles = SymmetricPairs.tilesFor( zSeries, tileSize );
 		
-		PipelineResult result = done();
+		System.out.println("# of series : " + zSeries + " in " + tiles + " tiles of size " + tileSize );
 		
-		PObject<Long> zRecords = combinedP.length();
+		PCollection<Pair<ContEquidistTS,ContEquidistTS>> combinedP = SymmetricPairs.upperTriangle( converted, tiles );
 		
 		AvroFileTarget target1 = new AvroFileTarget( new Path( args[1] + "_combined_pairs_avro" ) );
 		this.write( combinedP, target1);
 		
-		System.out.println("# of records: " + zRecords.getValue()  );
+		PObject<Long> zRecords = combinedP.length();
+		
+		System.out.println("# of records: " + zRecords.getValue() + " (expected " + SymmetricPairs.pairCount( zSeries ) + ")" );
+		
+		PipelineResult result = done();
 		
 		return result.succeeded() ? 0 : 1;		
 	}
 
-	/**
-	 * 
-	 * @param tsb
-	 * @return
-	 */
-	private PCollection<ContEquidistTS> covertFromVectorWritables(PTable<Text, VectorWritable> tsb) {
-		
-		return tsb.parallelDo( new DoFn<Pair<Text, VectorWritable>, ContEquidistTS>() {
-			@Override
-		    public void process(Pair<Text, VectorWritable> ts, Emitter<ContEquidistTS> emitter) {
-				
-				String key = ts.first().toString();
-				VectorWritable v = ts.second();
-				
-				ContEquidistTS out = new ContEquidistTS();
-				out.setData(v, key, 0);
-				
-				emitter.emit( out );
-			}
-		},
-		Avros.reflects( ContEquidistTS.class ) );			
-	}
 	
 	public static void main(String[] args) throws Exception {
 		int exitCode = ToolRunner.run(new Configuration(), new CombineTimeSeriesPairsFromTSBucket(), args);
@@ -0,0 +1,68 @@
+package org.apache.crunchts.simple;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunchts.lib.TSConversion;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.crunchts.types.Event;
+import org.apache.crunchts.types.EventTSRecord;
+
+/**
+ * Extracts an event time series from a continuous equidistant time series.
+ *
+ *   NONZERO   : every sample which is not 0 is an event (e.g. clicks)
+ *   THRESHOLD : an event is an upward crossing of the threshold
+ *
+ * The time of an event is tStart + i / sr, the value is the sample. The
+ * indexes are collected in a reused int[], only the events of the output
+ * record are created.
+ */
+public class ContEquidistTSToEventsFn extends DoFn<ContEquidistTS, EventTSRecord> {
+
+	private static final long serialVersionUID = 1L;
+
+	public enum Mode { NONZERO, THRESHOLD }
+
+	final Mode mode;
+	final double threshold;
+
+	transient int[] idx;
+
+	public ContEquidistTSToEventsFn(Mode mode, double threshold) {
+		this.mode = mode;
+		this.threshold = threshold;
+	}
+
+	@Override
+	public void initialize() {
+		idx = new int[0];
+	}
+
+	@Override
+	public void process(ContEquidistTS ts, Emitter<EventTSRecord> emitter) {
+		double[] x = ts.getPoints();
+		int n = x.length;
+		if ( idx.length < n ) {
+			idx = new int[n];
+		}
+
+		int m = mode == Mode.THRESHOLD
+				? TSConversion.crossings( x, n, threshold, idx )
+				: TSConversion.nonZero( x, n, idx );
+
+		double dt = 1000.0 / ts.getSamplingRate();
+		long t0 = ts.getStart();
+
+		List<Event> events = new ArrayList<Event>( m );
+		for( int k = 0; k < m; k++ ) {
+			int i = idx[k];
+			events.add( new Event( t0 + (long) (i * dt), "", x[i] ) );
+		}
+
+		long tEnd = t0 + (long) (n * dt);
+		emitter.emit( new EventTSRecord( events, ts.getLabel(), t0, tEnd ) );
+	}
+}
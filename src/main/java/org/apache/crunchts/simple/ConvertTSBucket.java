@@ -1,23 +1,20 @@
 package org.apache.crunchts.simple;
 
 
-import org.apache.crunch.DoFn;
-import org.apache.crunch.Emitter;
 import org.apache.crunch.PCollection;
 import org.apache.crunch.PObject;
 import org.apache.crunch.PTable;
-import org.apache.crunch.Pair;
 import org.apache.crunch.PipelineResult;
-import org.apache.crunch.io.From;
 import org.apache.crunch.io.avro.AvroFileTarget;
 import org.apache.crunch.types.avro.Avros;
 import org.apache.crunch.util.CrunchTool;
+import org.apache.crunchts.io.TSBReader;
+import org.apache.crunchts.io.TSVectorWritable;
 import org.apache.crunchts.pojo.ContEquidistTS;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.ToolRunner;
-import org.apache.mahout.math.VectorWritable;
  
 
 public class ConvertTSBucket extends CrunchTool {
@@ -33,13 +30,9 @@ public class ConvertTSBucket extends CrunchTool {
 		}
 
 		// load the time series from SequenceFiles
-		PTable<Text,org.apache.mahout.math.VectorWritable> tsb = read( 
-				From.sequenceFile(  
-						args[0],                                            // location in HDFS 
-						Text.class,                                         // key-type
-						org.apache.mahout.math.VectorWritable.class ) );    // value-type
+		PTable<Text,TSVectorWritable> tsb = read( TSBReader.source( args[0] ) );
 		
-		PCollection<ContEquidistTS> converted = covertFromVectorWritables( tsb );
+		PCollection<ContEquidistTS> converted = TSBReader.toContEquidistTS( tsb, Avros.reflects( ContEquidistTS.class ) );
 		
 		PObject<Long> zRecords = converted.length();
 		
@@ -64,31 +57,7 @@ public class ConvertTSBucket extends CrunchTool {
 		return result.succeeded() ? 0 : 1;		
 	}
 
-	/**
-	 * 
-	 * @param tsb
-	 * @return
-	 */
-	private PCollection<ContEquidistTS> covertFromVectorWritables(PTable<Text, VectorWritable> tsb) {
-		
-		return tsb.parallelDo( new DoFn<Pair<Text, VectorWritable>, ContEquidistTS>() {
-			@Override
-		    public void process(Pair<Text, VectorWritable> ts, Emitter<ContEquidistTS> emitter) {
-				
-				String key = ts.first().toString();
-				VectorWritable v = ts.second();
-				
-				ContEquidistTS out = new ContEquidistTS();
-				out.setData(v, key, 0);
-				
-				emitter.emit( out );
-			}
-		},
-		Avros.reflects( ContEquidistTS.class ) );	
-		
-	}
-
-	public PCollection<Double> countAllClicks(PTable<Text,VectorWritable> ts) {
+	public PCollection<Double> countAllClicks(PTable<Text,TSVectorWritable> ts) {
 		return ts.parallelDo("calc total number of clicks", new SimpleClickCountFn(), Avros.doubles() );
 	}
 	
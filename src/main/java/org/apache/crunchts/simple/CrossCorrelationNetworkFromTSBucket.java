@@ -0,0 +1,146 @@
+package org.apache.crunchts.simple;
+
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.PipelineResult;
+import org.apache.crunch.io.avro.AvroFileTarget;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.util.CrunchTool;
+import org.apache.crunchts.TSBValidator;
+import org.apache.crunchts.io.TSBReader;
+import org.apache.crunchts.io.TSVectorWritable;
+import org.apache.crunchts.lib.SymmetricPairs;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.crunchts.ptypes.ContEquidistTSPTypes;
+import org.apache.crunchts.statistics.CrossCorrelation;
+import org.apache.crunchts.types.CorrelationLink;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Crunch time series processing pipeline.
+ *
+ * Creates a correlation network from a time series bucket (TSB). For all
+ * unordered pairs of series the lagged cross-correlation is calculated and
+ * only the links with |rho| >= threshold are written as CorrelationLink
+ * records. The pairs are never materialized, they are created and consumed
+ * inside the reducers of the tile pairs (see SymmetricPairs).
+ *
+ * Parameters:
+ *
+ *   -Dcrunchts.cc.maxlag=10        lag window [-maxlag, maxlag]
+ *   -Dcrunchts.cc.threshold=0.5    minimal |rho| of a link
+ *   -Dcrunchts.pairs.tile.size=500 series per tile
+ *   -Dcrunchts.validate=true       drops inconsistent series first (see TSBValidator)
+ *
+ * @author Mirko K'mpf
+ *
+ */
+public class CrossCorrelationNetworkFromTSBucket extends CrunchTool {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String MAX_LAG = "crunchts.cc.maxlag";
+	public static final String THRESHOLD = "crunchts.cc.threshold";
+
+	@Override
+	public int run(String[] args) throws Exception {
+
+		if (args.length != 2) {
+			System.out.printf("Usage: CrossCorrelationNetworkFromTSBucket <input file> <output dir>\n");
+			System.exit(-1);
+		}
+
+		int maxLag = getConf().getInt( MAX_LAG, 10 );
+		double threshold = Double.parseDouble( getConf().get( THRESHOLD, "0.5" ) );
+		int tileSize = getConf().getInt( SymmetricPairs.TILE_SIZE, SymmetricPairs.DEFAULT_TILE_SIZE );
+
+		// load the time series from SequenceFiles
+		PTable<Text,TSVectorWritable> tsb = read( TSBReader.source( args[0] ) );
+
+		// consistency check first, if enabled with -Dcrunchts.validate=true
+		PCollection<ContEquidistTS> converted = TSBValidator.gate( getConf(), TSBReader.toContEquidistTS( tsb, ContEquidistTSPTypes.avros() ), args[1] );
+
+		long zSeries = tsb.length().getValue();
+		int tiles = SymmetricPairs.tilesFor( zSeries, tileSize );
+
+		PCollection<Pair<ContEquidistTS,ContEquidistTS>> pairs = SymmetricPairs.upperTriangle( converted, tiles );
+
+		PCollection<CorrelationLink> links = pairs.parallelDo( "cross-correlation",
+				new CrossCorrelationFn( maxLag, threshold ),
+				Avros.specifics( CorrelationLink.class ) );
+
+		AvroFileTarget target = new AvroFileTarget( new Path( args[1] + "_cc_links_avro" ) );
+		this.write( links, target );
+
+		System.out.println("# of series : " + zSeries );
+		System.out.println("# of pairs  : " + SymmetricPairs.pairCount( zSeries ) );
+		System.out.println("# of links  : " + links.length().getValue() );
+
+		PipelineResult result = done();
+
+		return result.succeeded() ? 0 : 1;
+	}
+
+	/**
+	 * Calculates the cross-correlation function of one pair and emits the
+	 * link for the lag with the strongest correlation.
+	 */
+	public static class CrossCorrelationFn extends DoFn<Pair<ContEquidistTS,ContEquidistTS>, CorrelationLink> {
+
+		private static final long serialVersionUID = 1L;
+
+		final int maxLag;
+		final double threshold;
+
+		transient CrossCorrelation cc;
+		transient double[] rho;
+
+		public CrossCorrelationFn(int maxLag, double threshold) {
+			this.maxLag = maxLag;
+			this.threshold = threshold;
+		}
+
+		@Override
+		public void initialize() {
+			cc = new CrossCorrelation();
+			rho = new double[2 * maxLag + 1];
+		}
+
+		@Override
+		public void process(Pair<ContEquidistTS,ContEquidistTS> pair, Emitter<CorrelationLink> emitter) {
+
+			ContEquidistTS a = pair.first();
+			ContEquidistTS b = pair.second();
+
+			int n = Math.min( a.getPoints().length, b.getPoints().length );
+			if ( n <= maxLag ) {
+				increment( "crunchts.cc", "series too short" );
+				return;
+			}
+
+			cc.correlate( a.getPoints(), b.getPoints(), maxLag, rho );
+
+			int i = CrossCorrelation.strongestLag( rho );
+			if ( i < 0 || Double.isNaN( rho[i] ) ) {
+				increment( "crunchts.cc", "undefined correlation" );
+				return;
+			}
+
+			if ( Math.abs( rho[i] ) >= threshold ) {
+				emitter.emit( new CorrelationLink( a.getLabel(), b.getLabel(), i - maxLag, rho[i] ) );
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int exitCode = ToolRunner.run(new Configuration(), new CrossCorrelationNetworkFromTSBucket(), args);
+		System.exit(exitCode);
+	}
+}
@@ -0,0 +1,77 @@
+package org.apache.crunchts.simple;
+
+
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.PipelineResult;
+import org.apache.crunch.io.avro.AvroFileTarget;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.util.CrunchTool;
+import org.apache.crunchts.io.TSBReader;
+import org.apache.crunchts.io.TSVectorWritable;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.crunchts.ptypes.ContEquidistTSPTypes;
+import org.apache.crunchts.statistics.DetrendedFluctuationAnalysis;
+import org.apache.crunchts.types.DFAResult;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.ToolRunner;
+ 
+/**
+ * Crunch time series processing pipeline.
+ * 
+ * Step 1: Covert data from SequenceFile representation into Avro records.
+ * 
+ * Step 2: Detrended Fluctuation Analysis (DFA) of each time series. 
+ * 
+ * Parameters:
+ * 
+ *   -Dcrunchts.dfa.smin=4                smallest window size, 3 or greater
+ *   -Dcrunchts.dfa.scales.per.octave=4   density of the scales, 1 or greater
+ * 
+ * @author Mirko K'mpf
+ *
+ */
+public class DFAFromTSBucket extends CrunchTool {
+	
+	private static final long serialVersionUID = 1L;
+
+	public static final String S_MIN = "crunchts.dfa.smin";
+	public static final String SCALES_PER_OCTAVE = "crunchts.dfa.scales.per.octave";
+	
+	@Override
+	public int run(String[] args) throws Exception {
+		
+		if (args.length != 2) {
+			System.out.printf("Usage: DFAFromTSBucket <input file> <output dir>\n");
+			System.exit(-1);
+		}
+
+		int sMin = getConf().getInt( S_MIN, 4 );
+		int perOctave = getConf().getInt( SCALES_PER_OCTAVE, 4 );
+		DetrendedFluctuationAnalysis.checkScales( sMin, perOctave );
+		
+		// load the time series from SequenceFiles
+		PTable<Text,TSVectorWritable> tsb = read( TSBReader.source( args[0] ) );
+		
+		PCollection<ContEquidistTS> converted = TSBReader.toContEquidistTS( tsb, ContEquidistTSPTypes.avros() );
+		
+		PCollection<DFAResult> dfa = converted.parallelDo( "DFA", 
+				new DetrendedFluctuationFn( sMin, perOctave ), 
+				Avros.specifics( DFAResult.class ) );
+		
+		AvroFileTarget target = new AvroFileTarget( new Path( args[1] + "_dfa_avro" ) );
+		this.write( dfa, target );
+		
+		PipelineResult result = done();
+		
+		return result.succeeded() ? 0 : 1;		
+	}
+
+	
+	public static void main(String[] args) throws Exception {
+		int exitCode = ToolRunner.run(new Configuration(), new DFAFromTSBucket(), args);
+		System.exit(exitCode);
+	}
+}
@@ -0,0 +1,71 @@
+package org.apache.crunchts.simple;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.crunchts.statistics.DetrendedFluctuationAnalysis;
+import org.apache.crunchts.types.DFAResult;
+
+/**
+ * Calculates the fluctuation function F(s) and the DFA exponent alpha
+ * for each time series.
+ * 
+ * The scales are spaced logarithmically between sMin and n/4. The DFA
+ * instance and the scales for the last seen series length are reused, so
+ * no per-window objects are created.
+ */
+public class DetrendedFluctuationFn extends DoFn<ContEquidistTS, DFAResult> {
+	
+	private static final long serialVersionUID = 1L;
+
+	final int sMin;
+	final int perOctave;
+	
+	transient DetrendedFluctuationAnalysis dfa;
+	transient int[] scales;
+	transient double[] fluct;
+	transient int lastLength;
+	
+	public DetrendedFluctuationFn(int sMin, int perOctave) {
+		this.sMin = sMin;
+		this.perOctave = perOctave;
+	}
+	
+	@Override
+	public void initialize() {
+		dfa = new DetrendedFluctuationAnalysis();
+		lastLength = -1;
+	}
+
+	@Override
+	public void process(ContEquidistTS ts, Emitter<DFAResult> emitter) {
+		
+		double[] x = ts.getPoints();
+		
+		if ( x.length != lastLength ) {
+			scales = DetrendedFluctuationAnalysis.scales( x.length, sMin, perOctave );
+			fluct = new double[scales.length];
+			lastLength = x.length;
+		}
+		
+		if ( scales.length < 2 ) {
+			increment( "crunchts.dfa", "series too short" );
+			return;
+		}
+		
+		dfa.fluctuation( x, scales, fluct );
+		double alpha = DetrendedFluctuationAnalysis.alpha( scales, fluct );
+		
+		List<Integer> s = new ArrayList<Integer>( scales.length );
+		List<Double> f = new ArrayList<Double>( scales.length );
+		for( int i = 0; i < scales.length; i++ ) {
+			s.add( scales[i] );
+			f.add( fluct[i] );
+		}
+		
+		emitter.emit( new DFAResult( ts.getLabel(), alpha, s, f ) );
+	}
+}
@@ -0,0 +1,113 @@
+package org.apache.crunchts.simple;
+
+import java.util.List;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunchts.lib.TSConversion;
+import org.apache.crunchts.lib.TSConversion.Aggregation;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.crunchts.types.Event;
+import org.apache.crunchts.types.EventTSRecord;
+
+/**
+ * Converts an event time series into a continuous equidistant time series
+ * with one value per bin of the given resolution (e.g. 3600000 ms for
+ * hourly series).
+ *
+ * By default the first bin starts at the first event, rounded down to a
+ * multiple of the resolution. With a fixed window [tStart, tEnd) all
+ * series get the same length and events outside are dropped.
+ *
+ * The time stamps and values are copied into reused buffers, only the
+ * array of the resulting series is allocated per record.
+ */
+public class EventsToContEquidistTSFn extends DoFn<EventTSRecord, ContEquidistTS> {
+
+	private static final long serialVersionUID = 1L;
+
+	final long resolution;
+	final Aggregation aggregation;
+	final long tStart;
+	final long tEnd;
+
+	transient long[] t;
+	transient double[] v;
+	transient int[] counts;
+
+	public EventsToContEquidistTSFn(long resolution, Aggregation aggregation) {
+		this( resolution, aggregation, Long.MIN_VALUE, Long.MIN_VALUE );
+	}
+
+	/**
+	 * @param tStart - begin of the window in ms, Long.MIN_VALUE for none
+	 * @param tEnd - end of the window in ms (exclusive)
+	 */
+	public EventsToContEquidistTSFn(long resolution, Aggregation aggregation, long tStart, long tEnd) {
+		if ( resolution <= 0 ) {
+			throw new IllegalArgumentException( "resolution must be positive: " + resolution );
+		}
+		this.resolution = resolution;
+		this.aggregation = aggregation;
+		this.tStart = tStart;
+		this.tEnd = tEnd;
+	}
+
+	@Override
+	public void initialize() {
+		t = new long[0];
+		v = new double[0];
+		counts = new int[0];
+	}
+
+	@Override
+	public void process(EventTSRecord rec, Emitter<ContEquidistTS> emitter) {
+		List<Event> events = rec.getEventArray();
+		int n = events.size();
+		if ( t.length < n ) {
+			t = new long[n];
+			v = new double[n];
+		}
+
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		int i = 0;
+		for( Event e : events ) {
+			long ts = e.getTimestamp();
+			t[i] = ts;
+			v[i] = e.getValue();
+			if ( ts < min ) min = ts;
+			if ( ts > max ) max = ts;
+			i++;
+		}
+
+		long start;
+		int bins;
+		if ( tStart != Long.MIN_VALUE ) {
+			start = tStart;
+			bins = TSConversion.bins( tStart, tEnd - 1, resolution );
+		}
+		else if ( n > 0 ) {
+			start = TSConversion.align( min, resolution );
+			bins = TSConversion.bins( start, max, resolution );
+		}
+		else {
+			increment( "crunchts.convert", "empty event series" );
+			return;
+		}
+
+		if ( aggregation == Aggregation.MEAN && counts.length < bins ) {
+			counts = new int[bins];
+		}
+
+		double[] points = new double[bins];
+		int used = TSConversion.bin( t, v, n, start, resolution, aggregation, points, bins, counts );
+		if ( used < n ) {
+			increment( "crunchts.convert", "events outside of the window", n - used );
+		}
+
+		ContEquidistTS out = new ContEquidistTS();
+		out.wrap( points, rec.getLabel().toString(), start, 1000.0 / resolution );
+		emitter.emit( out );
+	}
+}
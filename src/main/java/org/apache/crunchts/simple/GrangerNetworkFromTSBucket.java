@@ -0,0 +1,187 @@
+package org.apache.crunchts.simple;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.PipelineResult;
+import org.apache.crunch.io.avro.AvroFileTarget;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.util.CrunchTool;
+import org.apache.crunchts.io.TSBReader;
+import org.apache.crunchts.io.TSVectorWritable;
+import org.apache.crunchts.lib.SymmetricPairs;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.crunchts.ptypes.ContEquidistTSPTypes;
+import org.apache.crunchts.statistics.BatchedGrangerCausality;
+import org.apache.crunchts.types.GrangerLink;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Crunch time series processing pipeline.
+ *
+ * Creates a dependency network from a time series bucket (TSB). Each
+ * unordered pair of series is tested in both directions for the lags
+ * 1..L, a directed GrangerLink source -> target is written if the smallest
+ * p-value is <= alpha.
+ *
+ * The lag design of a series is prepared once per task and kept in a
+ * cache, the reducers of SymmetricPairs emit the pairs of a tile in nested
+ * loops, so most pairs find both designs in the cache.
+ *
+ * Parameters:
+ *
+ *   -Dcrunchts.granger.maxlag=5        lags 1..L
+ *   -Dcrunchts.granger.alpha=0.01      maximal p-value of a link
+ *   -Dcrunchts.pairs.tile.size=500     series per tile
+ *
+ * @author Mirko K'mpf
+ *
+ */
+public class GrangerNetworkFromTSBucket extends CrunchTool {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String MAX_LAG = "crunchts.granger.maxlag";
+	public static final String ALPHA = "crunchts.granger.alpha";
+
+	@Override
+	public int run(String[] args) throws Exception {
+
+		if (args.length != 2) {
+			System.out.printf("Usage: GrangerNetworkFromTSBucket <input file> <output dir>\n");
+			System.exit(-1);
+		}
+
+		int maxLag = getConf().getInt( MAX_LAG, 5 );
+		double alpha = Double.parseDouble( getConf().get( ALPHA, "0.01" ) );
+		int tileSize = getConf().getInt( SymmetricPairs.TILE_SIZE, SymmetricPairs.DEFAULT_TILE_SIZE );
+
+		// load the time series from SequenceFiles
+		PTable<Text,TSVectorWritable> tsb = read( TSBReader.source( args[0] ) );
+
+		PCollection<ContEquidistTS> converted = TSBReader.toContEquidistTS( tsb, ContEquidistTSPTypes.avros() );
+
+		long zSeries = tsb.length().getValue();
+		int tiles = SymmetricPairs.tilesFor( zSeries, tileSize );
+
+		PCollection<Pair<ContEquidistTS,ContEquidistTS>> pairs = SymmetricPairs.upperTriangle( converted, tiles );
+
+		PCollection<GrangerLink> links = pairs.parallelDo( "granger causality",
+				new GrangerFn( maxLag, alpha, 2 * tileSize ),
+				Avros.specifics( GrangerLink.class ) );
+
+		AvroFileTarget target = new AvroFileTarget( new Path( args[1] + "_granger_links_avro" ) );
+		this.write( links, target );
+
+		System.out.println("# of series : " + zSeries );
+		System.out.println("# of tests  : " + 2 * SymmetricPairs.pairCount( zSeries ) * maxLag );
+		System.out.println("# of links  : " + links.length().getValue() );
+
+		PipelineResult result = done();
+
+		return result.succeeded() ? 0 : 1;
+	}
+
+	/**
+	 * Tests both directions of a pair and emits the significant links.
+	 */
+	public static class GrangerFn extends DoFn<Pair<ContEquidistTS,ContEquidistTS>, GrangerLink> {
+
+		private static final long serialVersionUID = 1L;
+
+		final int maxLag;
+		final double alpha;
+		final int cacheSize;
+
+		transient BatchedGrangerCausality granger;
+		transient Map<String, BatchedGrangerCausality.Design> designs;
+		transient double[] p;
+		transient double[] f;
+
+		public GrangerFn(int maxLag, double alpha, int cacheSize) {
+			this.maxLag = maxLag;
+			this.alpha = alpha;
+			this.cacheSize = cacheSize;
+		}
+
+		@Override
+		public void initialize() {
+			granger = new BatchedGrangerCausality( maxLag );
+			designs = new HashMap<String, BatchedGrangerCausality.Design>();
+			p = new double[maxLag];
+			f = new double[maxLag];
+		}
+
+		@Override
+		public void process(Pair<ContEquidistTS,ContEquidistTS> pair, Emitter<GrangerLink> emitter) {
+
+			BatchedGrangerCausality.Design a = design( pair.first() );
+			BatchedGrangerCausality.Design b = design( pair.second() );
+
+			if ( a == null || b == null ) {
+				increment( "crunchts.granger", "series too short or constant" );
+				return;
+			}
+			if ( a.length() != b.length() ) {
+				increment( "crunchts.granger", "series of different length" );
+				return;
+			}
+
+			test( b, a, pair.first().getLabel(), pair.second().getLabel(), emitter );
+			test( a, b, pair.second().getLabel(), pair.first().getLabel(), emitter );
+		}
+
+		private void test(BatchedGrangerCausality.Design target, BatchedGrangerCausality.Design source,
+				String sourceLabel, String targetLabel, Emitter<GrangerLink> emitter) {
+
+			granger.test( target, source, p, f );
+
+			int best = -1;
+			for( int l = 0; l < maxLag; l++ ) {
+				if ( !Double.isNaN( p[l] ) && (best < 0 || p[l] < p[best]) ) {
+					best = l;
+				}
+			}
+			if ( best < 0 ) {
+				increment( "crunchts.granger", "undefined test" );
+				return;
+			}
+			if ( p[best] <= alpha ) {
+				List<Double> all = new ArrayList<Double>( maxLag );
+				for( int l = 0; l < maxLag; l++ ) {
+					all.add( p[l] );
+				}
+				emitter.emit( new GrangerLink( sourceLabel, targetLabel, best + 1, f[best], p[best], all ) );
+			}
+		}
+
+		private BatchedGrangerCausality.Design design(ContEquidistTS ts) {
+			String key = ts.getLabel();
+			if ( designs.containsKey( key ) ) {
+				return designs.get( key );
+			}
+			if ( designs.size() >= cacheSize ) {
+				designs.clear();
+			}
+			BatchedGrangerCausality.Design d = granger.prepare( ts.getPoints() );
+			designs.put( key, d );
+			return d;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int exitCode = ToolRunner.run(new Configuration(), new GrangerNetworkFromTSBucket(), args);
+		System.exit(exitCode);
+	}
+}
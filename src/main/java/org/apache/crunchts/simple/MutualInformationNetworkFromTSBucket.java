@@ -0,0 +1,154 @@
+package org.apache.crunchts.simple;
+
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.PipelineResult;
+import org.apache.crunch.io.avro.AvroFileTarget;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.util.CrunchTool;
+import org.apache.crunchts.io.TSBReader;
+import org.apache.crunchts.io.TSVectorWritable;
+import org.apache.crunchts.lib.SymmetricPairs;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.crunchts.ptypes.ContEquidistTSPTypes;
+import org.apache.crunchts.statistics.Discretizer;
+import org.apache.crunchts.statistics.MutualInformation;
+import org.apache.crunchts.statistics.SymbolCache;
+import org.apache.crunchts.types.MILink;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Crunch time series processing pipeline.
+ *
+ * Creates a mutual-information network from a time series bucket (TSB).
+ * Each series is discretized once per task (see Discretizer), for all
+ * unordered pairs the mutual information of the symbols is calculated and
+ * the links with MI >= threshold are written as MILink records.
+ *
+ * Parameters:
+ *
+ *   -Dcrunchts.mi.method=EQUAL_FREQUENCY  EQUAL_WIDTH, EQUAL_FREQUENCY or BAYESIAN_BLOCKS
+ *   -Dcrunchts.mi.bins=16                 bins per series (not for BAYESIAN_BLOCKS)
+ *   -Dcrunchts.mi.threshold=0.1           minimal MI of a link in bits
+ *   -Dcrunchts.pairs.tile.size=500        series per tile
+ *
+ * @author Mirko K'mpf
+ *
+ */
+public class MutualInformationNetworkFromTSBucket extends CrunchTool {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String METHOD = "crunchts.mi.method";
+	public static final String BINS = "crunchts.mi.bins";
+	public static final String THRESHOLD = "crunchts.mi.threshold";
+
+	@Override
+	public int run(String[] args) throws Exception {
+
+		if (args.length != 2) {
+			System.out.printf("Usage: MutualInformationNetworkFromTSBucket <input file> <output dir>\n");
+			System.exit(-1);
+		}
+
+		Discretizer.Method method = Discretizer.Method.valueOf( getConf().get( METHOD, "EQUAL_FREQUENCY" ).toUpperCase() );
+		int bins = getConf().getInt( BINS, 16 );
+		double threshold = Double.parseDouble( getConf().get( THRESHOLD, "0.1" ) );
+		int tileSize = getConf().getInt( SymmetricPairs.TILE_SIZE, SymmetricPairs.DEFAULT_TILE_SIZE );
+
+		// load the time series from SequenceFiles
+		PTable<Text,TSVectorWritable> tsb = read( TSBReader.source( args[0] ) );
+
+		PCollection<ContEquidistTS> converted = TSBReader.toContEquidistTS( tsb, ContEquidistTSPTypes.avros() );
+
+		long zSeries = tsb.length().getValue();
+		int tiles = SymmetricPairs.tilesFor( zSeries, tileSize );
+
+		PCollection<Pair<ContEquidistTS,ContEquidistTS>> pairs = SymmetricPairs.upperTriangle( converted, tiles );
+
+		PCollection<MILink> links = pairs.parallelDo( "mutual information",
+				new MutualInformationFn( method, bins, threshold, 2 * tileSize ),
+				Avros.specifics( MILink.class ) );
+
+		AvroFileTarget target = new AvroFileTarget( new Path( args[1] + "_mi_links_avro" ) );
+		this.write( links, target );
+
+		System.out.println("# of series : " + zSeries );
+		System.out.println("# of pairs  : " + SymmetricPairs.pairCount( zSeries ) );
+		System.out.println("# of links  : " + links.length().getValue() );
+
+		PipelineResult result = done();
+
+		return result.succeeded() ? 0 : 1;
+	}
+
+	/**
+	 * Calculates the mutual information of one pair, the symbols of a
+	 * series are kept in a SymbolCache for the other pairs of its tile.
+	 * Pairs of series with different length are counted and skipped.
+	 */
+	public static class MutualInformationFn extends DoFn<Pair<ContEquidistTS,ContEquidistTS>, MILink> {
+
+		private static final long serialVersionUID = 1L;
+
+		final Discretizer.Method method;
+		final int bins;
+		final double threshold;
+		final int cacheSize;
+
+		transient MutualInformation mi;
+		transient SymbolCache symbols;
+
+		public MutualInformationFn(Discretizer.Method method, int bins, double threshold, int cacheSize) {
+			this.method = method;
+			this.bins = bins;
+			this.threshold = threshold;
+			this.cacheSize = cacheSize;
+		}
+
+		@Override
+		public void initialize() {
+			mi = new MutualInformation();
+			symbols = new SymbolCache( new Discretizer( method, bins ), cacheSize );
+		}
+
+		@Override
+		public void process(Pair<ContEquidistTS,ContEquidistTS> pair, Emitter<MILink> emitter) {
+
+			ContEquidistTS a = pair.first();
+			ContEquidistTS b = pair.second();
+
+			SymbolCache.Symbols sa = symbols.get( a.getLabel(), a.getPoints() );
+			SymbolCache.Symbols sb = symbols.get( b.getLabel(), b.getPoints() );
+			if ( sa.length() != sb.length() ) {
+				increment( "crunchts.mi", "series of different length" );
+				return;
+			}
+			int n = sa.length();
+			if ( n < 2 ) {
+				increment( "crunchts.mi", "series too short" );
+				return;
+			}
+
+			double value = mi.mutualInformation( sa.symbols(), sa.alphabet(), sb.symbols(), sb.alphabet(), n );
+
+			if ( value >= threshold ) {
+				double ha = mi.entropy( sa.symbols(), sa.alphabet(), n );
+				double hb = mi.entropy( sb.symbols(), sb.alphabet(), n );
+				emitter.emit( new MILink( a.getLabel(), b.getLabel(), value, ha, hb ) );
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int exitCode = ToolRunner.run(new Configuration(), new MutualInformationNetworkFromTSBucket(), args);
+		System.exit(exitCode);
+	}
+}
@@ -0,0 +1,240 @@
+package org.apache.crunchts.simple;
+
+
+import java.util.Collections;
+
+import org.apache.crunch.Aggregator;
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.PipelineResult;
+import org.apache.crunch.io.From;
+import org.apache.crunch.io.To;
+import org.apache.crunch.io.avro.AvroFileTarget;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.util.CrunchTool;
+import org.apache.crunchts.io.TSBReader;
+import org.apache.crunchts.io.TSVectorWritable;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.crunchts.ptypes.ContEquidistTSPTypes;
+import org.apache.crunchts.statistics.ReturnIntervalHistogram;
+import org.apache.crunchts.statistics.ReturnIntervalStatistics;
+import org.apache.crunchts.types.Event;
+import org.apache.crunchts.types.EventTSRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Crunch time series processing pipeline.
+ *
+ * Return-Interval-Statistics (RIS) for all series of a bucket. For each
+ * quantile the return intervals of a series are collected in a histogram.
+ * The per series histograms are written and merged per quantile across the
+ * bucket. The merge runs in the combiner, so only compact histograms are
+ * shuffled.
+ *
+ * The input is either a TSB (SequenceFile of Text/VectorWritable) or an
+ * Avro file of EventTSRecords (-Dcrunchts.ris.input=events).
+ *
+ * Parameters:
+ *
+ *   -Dcrunchts.ris.quantiles=0.9,0.95,0.99   thresholds
+ *   -Dcrunchts.ris.bins.per.octave=4         histogram resolution
+ *   -Dcrunchts.ris.resolution=1000           interval unit for events in ms
+ *
+ * @author Mirko K'mpf
+ *
+ */
+public class ReturnIntervalStatisticsFromTSBucket extends CrunchTool {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String INPUT = "crunchts.ris.input";
+	public static final String QUANTILES = "crunchts.ris.quantiles";
+	public static final String BINS_PER_OCTAVE = "crunchts.ris.bins.per.octave";
+	public static final String RESOLUTION = "crunchts.ris.resolution";
+
+	@Override
+	public int run(String[] args) throws Exception {
+
+		if (args.length != 2) {
+			System.out.printf("Usage: ReturnIntervalStatisticsFromTSBucket <input file> <output dir>\n");
+			System.exit(-1);
+		}
+
+		String[] q = getConf().getStrings( QUANTILES, "0.9", "0.95", "0.99" );
+		double[] quantiles = new double[q.length];
+		for( int i = 0; i < q.length; i++ ) {
+			quantiles[i] = Double.parseDouble( q[i].trim() );
+		}
+		int binsPerOctave = getConf().getInt( BINS_PER_OCTAVE, 4 );
+		double resolution = Double.parseDouble( getConf().get( RESOLUTION, "1000" ) );
+
+		PTableType<String, ReturnIntervalHistogram> histType =
+				Avros.tableOf( Avros.strings(), Avros.reflects( ReturnIntervalHistogram.class ) );
+
+		PTable<String, ReturnIntervalHistogram> perSeries;
+
+		if ( "events".equals( getConf().get( INPUT ) ) ) {
+			PCollection<EventTSRecord> events = read( From.avroFile( args[0], Avros.records( EventTSRecord.class ) ) );
+			perSeries = events.parallelDo( "RIS of event series",
+					new EventRISFn( quantiles, binsPerOctave, resolution ), histType );
+		}
+		else {
+			// load the time series from SequenceFiles
+			PTable<Text,TSVectorWritable> tsb = read( TSBReader.source( args[0] ) );
+
+			PCollection<ContEquidistTS> converted = TSBReader.toContEquidistTS( tsb, ContEquidistTSPTypes.avros() );
+
+			perSeries = converted.parallelDo( "RIS of equidistant series",
+					new RISFn( quantiles, binsPerOctave ), histType );
+		}
+
+		// merge all histograms of one quantile, the combiner does most of the work
+		PTable<String, ReturnIntervalHistogram> merged = perSeries
+				.parallelDo( new MapFn<Pair<String, ReturnIntervalHistogram>, Pair<String, ReturnIntervalHistogram>>() {
+					@Override
+					public Pair<String, ReturnIntervalHistogram> map(Pair<String, ReturnIntervalHistogram> in) {
+						return Pair.of( "q=" + in.second().getQuantile(), in.second() );
+					}
+				}, histType )
+				.groupByKey()
+				.combineValues( new MergeHistograms() );
+
+		AvroFileTarget target1 = new AvroFileTarget( new Path( args[1] + "_ris_per_series_avro" ) );
+		this.write( perSeries, target1 );
+
+		merged.values().write( To.textFile( args[1] + "_ris_bucket" ) );
+
+		PipelineResult result = done();
+
+		return result.succeeded() ? 0 : 1;
+	}
+
+	/**
+	 * Emits one histogram per quantile, keyed by the label of the series.
+	 */
+	public static class RISFn extends DoFn<ContEquidistTS, Pair<String, ReturnIntervalHistogram>> {
+
+		private static final long serialVersionUID = 1L;
+
+		final double[] quantiles;
+		final int binsPerOctave;
+
+		transient ReturnIntervalStatistics ris;
+
+		public RISFn(double[] quantiles, int binsPerOctave) {
+			this.quantiles = quantiles;
+			this.binsPerOctave = binsPerOctave;
+		}
+
+		@Override
+		public void initialize() {
+			ris = new ReturnIntervalStatistics( quantiles, binsPerOctave );
+		}
+
+		@Override
+		public void process(ContEquidistTS ts, Emitter<Pair<String, ReturnIntervalHistogram>> emitter) {
+			ReturnIntervalHistogram[] hist = ris.createHistograms();
+			ris.process( ts.getPoints(), hist );
+			for( ReturnIntervalHistogram h : hist ) {
+				emitter.emit( Pair.of( ts.getLabel(), h ) );
+			}
+		}
+	}
+
+	/**
+	 * Same as RISFn for event time series, the intervals are measured in
+	 * units of the given resolution.
+	 */
+	public static class EventRISFn extends DoFn<EventTSRecord, Pair<String, ReturnIntervalHistogram>> {
+
+		private static final long serialVersionUID = 1L;
+
+		final double[] quantiles;
+		final int binsPerOctave;
+		final double resolution;
+
+		transient ReturnIntervalStatistics ris;
+		transient long[] t;
+		transient double[] v;
+
+		public EventRISFn(double[] quantiles, int binsPerOctave, double resolution) {
+			this.quantiles = quantiles;
+			this.binsPerOctave = binsPerOctave;
+			this.resolution = resolution;
+		}
+
+		@Override
+		public void initialize() {
+			ris = new ReturnIntervalStatistics( quantiles, binsPerOctave );
+			t = new long[0];
+			v = new double[0];
+		}
+
+		@Override
+		public void process(EventTSRecord rec, Emitter<Pair<String, ReturnIntervalHistogram>> emitter) {
+			int n = rec.getEventArray().size();
+			if ( t.length < n ) {
+				t = new long[n];
+				v = new double[n];
+			}
+			int i = 0;
+			for( Event e : rec.getEventArray() ) {
+				t[i] = e.getTimestamp();
+				v[i] = e.getValue();
+				i++;
+			}
+			ReturnIntervalStatistics.sortByTime( t, v, n );
+
+			ReturnIntervalHistogram[] hist = ris.createHistograms();
+			ris.process( t, v, n, resolution, hist );
+			for( ReturnIntervalHistogram h : hist ) {
+				emitter.emit( Pair.of( rec.getLabel().toString(), h ) );
+			}
+		}
+	}
+
+	/**
+	 * Adds up histograms, used as combiner and reducer.
+	 */
+	public static class MergeHistograms implements Aggregator<ReturnIntervalHistogram> {
+
+		private static final long serialVersionUID = 1L;
+
+		ReturnIntervalHistogram sum = null;
+
+		@Override
+		public void initialize(Configuration conf) {
+		}
+
+		@Override
+		public void reset() {
+			sum = null;
+		}
+
+		@Override
+		public void update(ReturnIntervalHistogram value) {
+			if ( sum == null ) {
+				sum = new ReturnIntervalHistogram( value.getQuantile(), value.getBinsPerOctave() );
+			}
+			sum.merge( value );
+		}
+
+		@Override
+		public Iterable<ReturnIntervalHistogram> results() {
+			return sum == null ? Collections.<ReturnIntervalHistogram>emptyList() : Collections.singletonList( sum );
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int exitCode = ToolRunner.run(new Configuration(), new ReturnIntervalStatisticsFromTSBucket(), args);
+		System.exit(exitCode);
+	}
+}
@@ -0,0 +1,220 @@
+package org.apache.crunchts.simple;
+
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.PipelineResult;
+import org.apache.crunch.io.To;
+import org.apache.crunch.io.avro.AvroFileTarget;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.util.CrunchTool;
+import org.apache.crunchts.TSBValidator;
+import org.apache.crunchts.io.TSBReader;
+import org.apache.crunchts.io.TSVectorWritable;
+import org.apache.crunchts.lib.SymmetricPairs;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.crunchts.ptypes.ContEquidistTSPTypes;
+import org.apache.crunchts.statistics.RollingCorrelation;
+import org.apache.crunchts.types.RollingCorrelationLink;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Crunch time series processing pipeline.
+ *
+ * Creates a sequence of correlation networks, one per window step: the
+ * Pearson correlation (lag 0) of each pair is calculated in windows of w
+ * values which move by s values, a RollingCorrelationLink is written for
+ * each window with |rho| >= threshold. The window index is part of each
+ * link, so the network of one step (or the difference of two steps) is a
+ * simple filter on the output.
+ *
+ * The window sums of a series are prepared once per task (see
+ * RollingCorrelation), for a pair only the cross products are updated
+ * incrementally. The pairs are created in tiles like in
+ * CrossCorrelationNetworkFromTSBucket. The number of links per window is
+ * written as "window \t start \t links" to <output>_rolling_counts.
+ *
+ * Parameters:
+ *
+ *   -Dcrunchts.rolling.window=168      values per window
+ *   -Dcrunchts.rolling.step=24         values between two windows
+ *   -Dcrunchts.rolling.threshold=0.5   minimal |rho| of a link
+ *   -Dcrunchts.pairs.tile.size=500     series per tile
+ *
+ * @author Mirko K'mpf
+ *
+ */
+public class RollingCorrelationNetworkFromTSBucket extends CrunchTool {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String WINDOW = "crunchts.rolling.window";
+	public static final String STEP = "crunchts.rolling.step";
+	public static final String THRESHOLD = "crunchts.rolling.threshold";
+
+	@Override
+	public int run(String[] args) throws Exception {
+
+		if (args.length != 2) {
+			System.out.printf("Usage: RollingCorrelationNetworkFromTSBucket <input file> <output dir>\n");
+			System.exit(-1);
+		}
+
+		int window = getConf().getInt( WINDOW, 168 );
+		int step = getConf().getInt( STEP, 24 );
+		double threshold = Double.parseDouble( getConf().get( THRESHOLD, "0.5" ) );
+		int tileSize = getConf().getInt( SymmetricPairs.TILE_SIZE, SymmetricPairs.DEFAULT_TILE_SIZE );
+
+		// load the time series from SequenceFiles
+		PTable<Text,TSVectorWritable> tsb = read( TSBReader.source( args[0] ) );
+
+		// consistency check first, if enabled with -Dcrunchts.validate=true
+		PCollection<ContEquidistTS> converted = TSBValidator.gate( getConf(), TSBReader.toContEquidistTS( tsb, ContEquidistTSPTypes.avros() ), args[1] );
+
+		long zSeries = tsb.length().getValue();
+		int tiles = SymmetricPairs.tilesFor( zSeries, tileSize );
+
+		PCollection<Pair<ContEquidistTS,ContEquidistTS>> pairs = SymmetricPairs.upperTriangle( converted, tiles );
+
+		PCollection<RollingCorrelationLink> links = pairs.parallelDo( "rolling correlation",
+				new RollingCorrelationFn( window, step, threshold, 2 * tileSize ),
+				Avros.specifics( RollingCorrelationLink.class ) );
+
+		AvroFileTarget target = new AvroFileTarget( new Path( args[1] + "_rolling_links_avro" ) );
+		this.write( links, target );
+
+		PCollection<String> counts = links
+				.parallelDo( "window of link", new WindowFn(), Avros.strings() )
+				.count()
+				.parallelDo( "format counts", new FormatFn(), Avros.strings() );
+		this.write( counts, To.textFile( args[1] + "_rolling_counts" ) );
+
+		System.out.println("# of series : " + zSeries );
+		System.out.println("# of pairs  : " + SymmetricPairs.pairCount( zSeries ) );
+		System.out.println("# of links  : " + links.length().getValue() );
+
+		PipelineResult result = done();
+
+		return result.succeeded() ? 0 : 1;
+	}
+
+	/**
+	 * "window \t start" of a link, the key of the counts per window.
+	 */
+	static class WindowFn extends MapFn<RollingCorrelationLink, String> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public String map(RollingCorrelationLink link) {
+			return link.getWindow() + "\t" + link.getStart();
+		}
+	}
+
+	static class FormatFn extends MapFn<Pair<String, Long>, String> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public String map(Pair<String, Long> c) {
+			return c.first() + "\t" + c.second();
+		}
+	}
+
+	/**
+	 * Correlates a pair in all windows and emits the links.
+	 */
+	public static class RollingCorrelationFn extends DoFn<Pair<ContEquidistTS,ContEquidistTS>, RollingCorrelationLink> {
+
+		private static final long serialVersionUID = 1L;
+
+		final int window;
+		final int step;
+		final double threshold;
+		final int cacheSize;
+
+		transient RollingCorrelation rolling;
+		transient Map<String, RollingCorrelation.Moments> moments;
+		transient double[] rho;
+
+		public RollingCorrelationFn(int window, int step, double threshold, int cacheSize) {
+			this.window = window;
+			this.step = step;
+			this.threshold = threshold;
+			this.cacheSize = cacheSize;
+		}
+
+		@Override
+		public void initialize() {
+			rolling = new RollingCorrelation( window, step );
+			moments = new HashMap<String, RollingCorrelation.Moments>();
+			rho = new double[0];
+		}
+
+		@Override
+		public void process(Pair<ContEquidistTS,ContEquidistTS> pair, Emitter<RollingCorrelationLink> emitter) {
+
+			ContEquidistTS first = pair.first();
+			ContEquidistTS second = pair.second();
+
+			RollingCorrelation.Moments a = moments( first );
+			RollingCorrelation.Moments b = moments( second );
+
+			if ( a.windows() == 0 || b.windows() == 0 ) {
+				increment( "crunchts.rolling", "series shorter than window" );
+				return;
+			}
+			if ( a.length() != b.length() ) {
+				increment( "crunchts.rolling", "series of different length" );
+			}
+
+			if ( rho.length < a.windows() ) {
+				rho = new double[a.windows()];
+			}
+			int windows = rolling.correlate( a, b, rho );
+
+			double msPerValue = 1000.0 / first.getSamplingRate();
+			for( int k = 0; k < windows; k++ ) {
+				if ( Double.isNaN( rho[k] ) ) {
+					increment( "crunchts.rolling", "constant window" );
+					continue;
+				}
+				if ( Math.abs( rho[k] ) >= threshold ) {
+					int offset = k * step;
+					long start = first.getStart() + (long) (offset * msPerValue);
+					emitter.emit( new RollingCorrelationLink( k, offset, start, first.getLabel(), second.getLabel(), rho[k] ) );
+				}
+			}
+		}
+
+		private RollingCorrelation.Moments moments(ContEquidistTS ts) {
+			String key = ts.getLabel();
+			RollingCorrelation.Moments m = moments.get( key );
+			if ( m != null ) {
+				return m;
+			}
+			if ( moments.size() >= cacheSize ) {
+				moments.clear();
+			}
+			double[] p = ts.getPoints();
+			m = rolling.prepare( p, p.length );
+			moments.put( key, m );
+			return m;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int exitCode = ToolRunner.run(new Configuration(), new RollingCorrelationNetworkFromTSBucket(), args);
+		System.exit(exitCode);
+	}
+}
@@ -0,0 +1,184 @@
+package org.apache.crunchts.simple;
+
+
+import java.util.Random;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.PipelineResult;
+import org.apache.crunch.io.avro.AvroFileTarget;
+import org.apache.crunch.types.avro.Avros;
+import org.apache.crunch.util.CrunchTool;
+import org.apache.crunchts.io.TSBReader;
+import org.apache.crunchts.io.TSVectorWritable;
+import org.apache.crunchts.lib.SymmetricPairs;
+import org.apache.crunchts.pojo.ContEquidistTS;
+import org.apache.crunchts.ptypes.ContEquidistTSPTypes;
+import org.apache.crunchts.statistics.Discretizer;
+import org.apache.crunchts.statistics.SymbolCache;
+import org.apache.crunchts.statistics.TransferEntropy;
+import org.apache.crunchts.types.TELink;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Crunch time series processing pipeline.
+ *
+ * Creates a directed information-flow network from a time series bucket
+ * (TSB). Each series is discretized once per task, for all unordered pairs
+ * the transfer entropy is calculated in both directions and tested against
+ * shuffled surrogates. The links with p <= alpha are written as TELink
+ * records.
+ *
+ * Parameters:
+ *
+ *   -Dcrunchts.te.history=1               history length k
+ *   -Dcrunchts.te.lag=1                   the source history ends lag steps before the target value
+ *   -Dcrunchts.te.method=EQUAL_FREQUENCY  EQUAL_WIDTH, EQUAL_FREQUENCY or BAYESIAN_BLOCKS
+ *   -Dcrunchts.te.bins=4                  bins per series (not for BAYESIAN_BLOCKS)
+ *   -Dcrunchts.te.surrogates=100          shuffled surrogates per direction
+ *   -Dcrunchts.te.alpha=0.05              maximal p-value of a link
+ *   -Dcrunchts.te.seed=0                  seed of the shuffles
+ *   -Dcrunchts.pairs.tile.size=500        series per tile
+ *
+ * @author Mirko K'mpf
+ *
+ */
+public class TransferEntropyNetworkFromTSBucket extends CrunchTool {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String HISTORY = "crunchts.te.history";
+	public static final String LAG = "crunchts.te.lag";
+	public static final String METHOD = "crunchts.te.method";
+	public static final String BINS = "crunchts.te.bins";
+	public static final String SURROGATES = "crunchts.te.surrogates";
+	public static final String ALPHA = "crunchts.te.alpha";
+	public static final String SEED = "crunchts.te.seed";
+
+	@Override
+	public int run(String[] args) throws Exception {
+
+		if (args.length != 2) {
+			System.out.printf("Usage: TransferEntropyNetworkFromTSBucket <input file> <output dir>\n");
+			System.exit(-1);
+		}
+
+		int history = getConf().getInt( HISTORY, 1 );
+		int lag = getConf().getInt( LAG, 1 );
+		Discretizer.Method method = Discretizer.Method.valueOf( getConf().get( METHOD, "EQUAL_FREQUENCY" ).toUpperCase() );
+		int bins = getConf().getInt( BINS, 4 );
+		int surrogates = getConf().getInt( SURROGATES, 100 );
+		double alpha = Double.parseDouble( getConf().get( ALPHA, "0.05" ) );
+		long seed = getConf().getLong( SEED, 0 );
+		int tileSize = getConf().getInt( SymmetricPairs.TILE_SIZE, SymmetricPairs.DEFAULT_TILE_SIZE );
+
+		// load the time series from SequenceFiles
+		PTable<Text,TSVectorWritable> tsb = read( TSBReader.source( args[0] ) );
+
+		PCollection<ContEquidistTS> converted = TSBReader.toContEquidistTS( tsb, ContEquidistTSPTypes.avros() );
+
+		long zSeries = tsb.length().getValue();
+		int tiles = SymmetricPairs.tilesFor( zSeries, tileSize );
+
+		PCollection<Pair<ContEquidistTS,ContEquidistTS>> pairs = SymmetricPairs.upperTriangle( converted, tiles );
+
+		TransferEntropyFn fn = new TransferEntropyFn( history, lag, method, bins, surrogates, alpha, seed, 2 * tileSize );
+		PCollection<TELink> links = pairs.parallelDo( "transfer entropy", fn, Avros.specifics( TELink.class ) );
+
+		AvroFileTarget target = new AvroFileTarget( new Path( args[1] + "_te_links_avro" ) );
+		this.write( links, target );
+
+		System.out.println("# of series     : " + zSeries );
+		System.out.println("# of directions : " + 2 * SymmetricPairs.pairCount( zSeries ) );
+		System.out.println("# of links      : " + links.length().getValue() );
+
+		PipelineResult result = done();
+
+		return result.succeeded() ? 0 : 1;
+	}
+
+	/**
+	 * Calculates and tests the transfer entropy of one pair in both
+	 * directions. The symbols of a series are kept in a SymbolCache for the
+	 * other pairs of its tile, the kernel reuses its buffers for all
+	 * surrogates. Pairs of series with different length are skipped.
+	 */
+	public static class TransferEntropyFn extends DoFn<Pair<ContEquidistTS,ContEquidistTS>, TELink> {
+
+		private static final long serialVersionUID = 1L;
+
+		final int history;
+		final int lag;
+		final Discretizer.Method method;
+		final int bins;
+		final int surrogates;
+		final double alpha;
+		final long seed;
+		final int cacheSize;
+
+		transient TransferEntropy te;
+		transient Random random;
+		transient SymbolCache symbols;
+
+		public TransferEntropyFn(int history, int lag, Discretizer.Method method, int bins,
+				int surrogates, double alpha, long seed, int cacheSize) {
+			this.history = history;
+			this.lag = lag;
+			this.method = method;
+			this.bins = bins;
+			this.surrogates = surrogates;
+			this.alpha = alpha;
+			this.seed = seed;
+			this.cacheSize = cacheSize;
+		}
+
+		@Override
+		public void initialize() {
+			te = new TransferEntropy( history, lag );
+			random = new Random( seed );
+			symbols = new SymbolCache( new Discretizer( method, bins ), cacheSize );
+		}
+
+		@Override
+		public void process(Pair<ContEquidistTS,ContEquidistTS> pair, Emitter<TELink> emitter) {
+
+			ContEquidistTS a = pair.first();
+			ContEquidistTS b = pair.second();
+
+			SymbolCache.Symbols sa = symbols.get( a.getLabel(), a.getPoints() );
+			SymbolCache.Symbols sb = symbols.get( b.getLabel(), b.getPoints() );
+			if ( sa.length() != sb.length() ) {
+				increment( "crunchts.te", "series of different length" );
+				return;
+			}
+
+			test( sa, a.getLabel(), sb, b.getLabel(), emitter );
+			test( sb, b.getLabel(), sa, a.getLabel(), emitter );
+		}
+
+		private void test(SymbolCache.Symbols y, String source, SymbolCache.Symbols x, String target, Emitter<TELink> emitter) {
+
+			double value = te.transferEntropy( y.symbols(), y.alphabet(), x.symbols(), x.alphabet(), x.length() );
+			if ( Double.isNaN( value ) ) {
+				increment( "crunchts.te", "series too short" );
+				return;
+			}
+
+			double p = te.pValue( surrogates, random );
+			if ( p <= alpha ) {
+				emitter.emit( new TELink( source, target, value, p, te.getSurrogateMean() ) );
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int exitCode = ToolRunner.run(new Configuration(), new TransferEntropyNetworkFromTSBucket(), args);
+		System.exit(exitCode);
+	}
+}
@@ -0,0 +1,331 @@
+package org.apache.crunchts.statistics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.math.MathException;
+import org.apache.commons.math.distribution.FDistribution;
+import org.apache.commons.math.distribution.FDistributionImpl;
+
+/**
+ * Granger-Causality tests for many pairs of series and the lags 1..L.
+ *
+ * GrangerCausality fits both regressions from scratch for each call. Here
+ * each series is prepared once (Design): the Gram matrix of its lags, the
+ * restricted model y ~ lags of y + const and its Cholesky factor for all
+ * lags. A test of a predictor x only needs the cross products of the lags
+ * of x and y. The full model is solved through the Schur complement of
+ * the restricted part:
+ *
+ *   S    = Z'Z - Z'X (X'X)^-1 X'Z
+ *   r    = Z'y - Z'X b0
+ *   RSS1 = RSS0 - r' S^-1 r
+ *
+ * with X = [lags of y, 1] and Z = lags of x. All lags use the same rows
+ * t = L .. n-1, so the tests of different lags are comparable. The series
+ * are standardized first, this does not change the F statistic but keeps
+ * the normal equations well conditioned.
+ *
+ * One instance keeps its work buffers (not thread safe).
+ */
+public class BatchedGrangerCausality {
+
+    private final int maxLag;
+
+    private final double[][] cross;
+    private final double[] zy;
+    private final double[][] w;
+    private final double[][] s;
+    private final double[][] sChol;
+    private final double[] r;
+    private final double[] q;
+    private final double[] col;
+
+    private final Map<Long, FDistribution> distributions = new HashMap<Long, FDistribution>();
+
+    /**
+     * @param maxLag - L, the tests are done for the lags 1..L
+     */
+    public BatchedGrangerCausality(int maxLag) {
+        if (maxLag < 1) {
+            throw new IllegalArgumentException("lag should be 1 or greater: " + maxLag);
+        }
+        this.maxLag = maxLag;
+        this.cross = new double[maxLag][maxLag];
+        this.zy = new double[maxLag];
+        this.w = new double[maxLag + 1][maxLag];
+        this.s = new double[maxLag][maxLag];
+        this.sChol = new double[maxLag][maxLag];
+        this.r = new double[maxLag];
+        this.q = new double[maxLag];
+        this.col = new double[maxLag + 1];
+    }
+
+    public int getMaxLag() {
+        return maxLag;
+    }
+
+    /**
+     * The lag structure of one series, used as target and as predictor.
+     */
+    public static class Design {
+
+        final double[] z;
+        final int n;
+
+        /** Gram matrix of [lag 1 .. lag L, 1] over the rows t = L .. n-1 */
+        final double[][] gram;
+        /** [lags, 1]' y */
+        final double[] xy;
+
+        /** restricted model per lag l: Cholesky factor, coefficients, RSS */
+        final double[][][] chol;
+        final double[][] beta;
+        final double[] rss;
+
+        Design(double[] z, int maxLag) {
+            this.z = z;
+            this.n = z.length;
+            this.gram = new double[maxLag + 1][maxLag + 1];
+            this.xy = new double[maxLag + 1];
+            this.chol = new double[maxLag + 1][][];
+            this.beta = new double[maxLag + 1][];
+            this.rss = new double[maxLag + 1];
+        }
+
+        public int length() {
+            return n;
+        }
+    }
+
+    /**
+     * @return the design of the series, null if the series is constant or
+     *         too short for the lag L
+     */
+    public Design prepare(double[] x) {
+        int n = x.length;
+        int m = n - maxLag;
+        if (m - 2 * maxLag - 1 < 1) {
+            return null;
+        }
+
+        double[] z = new double[n];
+        System.arraycopy(x, 0, z, 0, n);
+        if (!TSKernels.zNormalize(z, n)) {
+            return null;
+        }
+
+        Design d = new Design(z, maxLag);
+        int L = maxLag;
+
+        double yy = 0.0;
+        for (int t = L; t < n; t++) {
+            double y = z[t];
+            yy += y * y;
+            for (int a = 0; a < L; a++) {
+                double va = z[t - 1 - a];
+                d.xy[a] += va * y;
+                d.gram[a][L] += va;
+                for (int b = a; b < L; b++) {
+                    d.gram[a][b] += va * z[t - 1 - b];
+                }
+            }
+            d.xy[L] += y;
+        }
+        d.gram[L][L] = m;
+        for (int a = 0; a <= L; a++) {
+            for (int b = 0; b < a; b++) {
+                d.gram[a][b] = d.gram[b][a];
+            }
+        }
+
+        // restricted model for each lag: y ~ lag 1 .. lag l + const
+        for (int l = 1; l <= L; l++) {
+            int k = l + 1;
+            double[][] g = new double[k][k];
+            double[] b = new double[k];
+            for (int i = 0; i < k; i++) {
+                int ci = restrictedColumn(i, l);
+                b[i] = d.xy[ci];
+                for (int j = 0; j < k; j++) {
+                    g[i][j] = d.gram[ci][restrictedColumn(j, l)];
+                }
+            }
+            double[][] c = new double[k][k];
+            if (!cholesky(g, k, c)) {
+                return null;
+            }
+            double[] beta = new double[k];
+            solve(c, k, b, beta);
+
+            double fit = 0.0;
+            for (int i = 0; i < k; i++) {
+                fit += beta[i] * b[i];
+            }
+            d.chol[l] = c;
+            d.beta[l] = beta;
+            d.rss[l] = yy - fit;
+        }
+        return d;
+    }
+
+    /**
+     * Column i of the restricted design for lag l in the Gram matrix.
+     */
+    private int restrictedColumn(int i, int l) {
+        return i < l ? i : maxLag;
+    }
+
+    /**
+     * Tests if x Granger-causes y for the lags 1..L.
+     *
+     * @param pValues - p-value of lag l at index l-1, NaN if undefined
+     * @param f - F statistic of lag l at index l-1, may be null
+     */
+    public void test(Design y, Design x, double[] pValues, double[] f) {
+        if (x.n != y.n) {
+            throw new IllegalArgumentException("series of different length: " + x.n + " and " + y.n);
+        }
+        int L = maxLag;
+        int n = y.n;
+        int m = n - L;
+
+        // cross products of the lags of x with the lags of y and with y
+        for (int a = 0; a < L; a++) {
+            Arrays.fill(cross[a], 0.0);
+            zy[a] = 0.0;
+        }
+        double[] xz = x.z;
+        double[] yz = y.z;
+        for (int t = L; t < n; t++) {
+            double yt = yz[t];
+            for (int a = 0; a < L; a++) {
+                double xa = xz[t - 1 - a];
+                zy[a] += xa * yt;
+                double[] ca = cross[a];
+                for (int b = 0; b < L; b++) {
+                    ca[b] += xa * yz[t - 1 - b];
+                }
+            }
+        }
+
+        for (int l = 1; l <= L; l++) {
+            int k = l + 1;
+            double[][] c = y.chol[l];
+            double[] beta = y.beta[l];
+
+            // W = (X'X)^-1 X'Z, column by column
+            for (int a = 0; a < l; a++) {
+                for (int i = 0; i < k; i++) {
+                    col[i] = zx(x, a, restrictedColumn(i, l));
+                }
+                solve(c, k, col, col);
+                for (int i = 0; i < k; i++) {
+                    w[i][a] = col[i];
+                }
+            }
+
+            for (int a = 0; a < l; a++) {
+                double ra = zy[a];
+                for (int i = 0; i < k; i++) {
+                    ra -= zx(x, a, restrictedColumn(i, l)) * beta[i];
+                }
+                r[a] = ra;
+                for (int b = 0; b < l; b++) {
+                    double sab = x.gram[a][b];
+                    for (int i = 0; i < k; i++) {
+                        sab -= zx(x, a, restrictedColumn(i, l)) * w[i][b];
+                    }
+                    s[a][b] = sab;
+                }
+            }
+
+            int df2 = m - 2 * l - 1;
+            double p = Double.NaN;
+            double fl = Double.NaN;
+            if (cholesky(s, l, sChol)) {
+                solve(sChol, l, r, q);
+                double reduction = 0.0;
+                for (int a = 0; a < l; a++) {
+                    reduction += r[a] * q[a];
+                }
+                double rss1 = y.rss[l] - reduction;
+                if (rss1 > 0.0 && df2 > 0) {
+                    fl = (Math.max(reduction, 0.0) / l) / (rss1 / df2);
+                    p = pValue(fl, l, df2);
+                }
+            }
+            pValues[l - 1] = p;
+            if (f != null) {
+                f[l - 1] = fl;
+            }
+        }
+    }
+
+    /**
+     * Z'X entry: lag a of x times column c (a lag of y or the constant).
+     */
+    private double zx(Design x, int a, int c) {
+        return c == maxLag ? x.gram[a][maxLag] : cross[a][c];
+    }
+
+    private double pValue(double f, int df1, int df2) {
+        Long key = ((long) df1 << 32) | df2;
+        FDistribution dist = distributions.get(key);
+        if (dist == null) {
+            dist = new FDistributionImpl(df1, df2);
+            distributions.put(key, dist);
+        }
+        try {
+            return 1.0 - dist.cumulativeProbability(f);
+        } catch (MathException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Cholesky decomposition a = c c' of the leading k x k block.
+     *
+     * @return false if a is not positive definite
+     */
+    static boolean cholesky(double[][] a, int k, double[][] c) {
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = a[i][j];
+                for (int p = 0; p < j; p++) {
+                    sum -= c[i][p] * c[j][p];
+                }
+                if (i == j) {
+                    if (sum <= 1e-12 * Math.max(1.0, Math.abs(a[i][i]))) {
+                        return false;
+                    }
+                    c[i][i] = Math.sqrt(sum);
+                } else {
+                    c[i][j] = sum / c[j][j];
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Solves c c' x = b, x and b may be the same array.
+     */
+    static void solve(double[][] c, int k, double[] b, double[] x) {
+        for (int i = 0; i < k; i++) {
+            double sum = b[i];
+            for (int p = 0; p < i; p++) {
+                sum -= c[i][p] * x[p];
+            }
+            x[i] = sum / c[i][i];
+        }
+        for (int i = k - 1; i >= 0; i--) {
+            double sum = x[i];
+            for (int p = i + 1; p < k; p++) {
+                sum -= c[p][i] * x[p];
+            }
+            x[i] = sum / c[i][i];
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.apache.crunchts.statistics;
+
+/**
+ * Lagged Pearson cross-correlation of two equidistant time series.
+ *
+ * Both series are z-normalized and the correlation for lag tau is
+ *
+ *   rho(tau) = 1/(n-|tau|) * sum_t x(t) * y(t+tau)
+ *
+ * for tau in [-maxLag, maxLag]. A positive lag means that y follows x.
+ *
+ * For short series or small lag windows the sums are calculated directly,
+ * otherwise the correlation is calculated in the frequency domain. One
+ * instance keeps its work buffers, so it should be reused for many pairs
+ * (but not shared between threads).
+ */
+public class CrossCorrelation {
+
+    /**
+     * Relative cost of one FFT butterfly compared to one multiply-add,
+     * used to choose between the direct and the FFT method.
+     */
+    static final double FFT_COST_FACTOR = 6.0;
+
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+
+    private double[] re = new double[0];
+    private double[] im = new double[0];
+
+    /**
+     * Calculates rho(tau) for all lags of the window.
+     *
+     * @param a - first series
+     * @param b - second series
+     * @param maxLag - size of the lag window, 0 or greater
+     * @param rho - result, length 2*maxLag+1, rho[maxLag+tau]
+     * @return rho
+     */
+    public double[] correlate(double[] a, double[] b, int maxLag, double[] rho) {
+        int n = Math.min(a.length, b.length);
+        if (maxLag >= n) {
+            throw new IllegalArgumentException("lag window " + maxLag
+                    + " is too large for series of length " + n);
+        }
+        if (rho == null || rho.length != 2 * maxLag + 1) {
+            rho = new double[2 * maxLag + 1];
+        }
+
+        ensureCapacity(n);
+        System.arraycopy(a, 0, x, 0, n);
+        System.arraycopy(b, 0, y, 0, n);
+
+        if (!TSKernels.zNormalize(x, n) || !TSKernels.zNormalize(y, n)) {
+            // a constant series has no defined correlation
+            java.util.Arrays.fill(rho, Double.NaN);
+            return rho;
+        }
+
+        if (useFFT(n, maxLag)) {
+            correlateFFT(n, maxLag, rho);
+        } else {
+            correlateDirect(n, maxLag, rho);
+        }
+        return rho;
+    }
+
+    /**
+     * Index of the lag window with the largest absolute correlation.
+     *
+     * @return index into rho, the lag is index - maxLag
+     */
+    public static int strongestLag(double[] rho) {
+        int best = -1;
+        double max = -1.0;
+        for (int i = 0; i < rho.length; i++) {
+            double r = Math.abs(rho[i]);
+            if (r > max) {
+                max = r;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Cost model: direct needs n*(2L+1) multiply-adds, the FFT method two
+     * transforms of length m >= n+L.
+     */
+    static boolean useFFT(int n, int maxLag) {
+        int m = nextPowerOfTwo(n + maxLag);
+        double direct = (double) n * (2 * maxLag + 1);
+        double fft = FFT_COST_FACTOR * 2.0 * m * (Math.log(m) / Math.log(2));
+        return fft < direct;
+    }
+
+    private void correlateDirect(int n, int maxLag, double[] rho) {
+        for (int tau = -maxLag; tau <= maxLag; tau++) {
+            rho[maxLag + tau] = TSKernels.laggedDot(x, y, n, tau) / (n - Math.abs(tau));
+        }
+    }
+
+    /**
+     * Both real series are transformed with one complex FFT of x + i*y. The
+     * cross spectrum conj(X)*Y is transformed back, the zero padding to
+     * m >= n + maxLag avoids circular wrap around inside the lag window.
+     */
+    private void correlateFFT(int n, int maxLag, double[] rho) {
+        int m = nextPowerOfTwo(n + maxLag);
+        if (re.length < m) {
+            re = new double[m];
+            im = new double[m];
+        }
+        System.arraycopy(x, 0, re, 0, n);
+        System.arraycopy(y, 0, im, 0, n);
+        java.util.Arrays.fill(re, n, m, 0.0);
+        java.util.Arrays.fill(im, n, m, 0.0);
+
+        fft(re, im, m, false);
+
+        // X_k = (Z_k + conj(Z_m-k)) / 2 , Y_k = (Z_k - conj(Z_m-k)) / 2i
+        // conj(X_k) * Y_k is calculated for k and m-k at the same time
+        for (int k = 0; k <= m / 2; k++) {
+            int j = (m - k) & (m - 1);
+            double zr = re[k], zi = im[k];
+            double cr = re[j], ci = -im[j];
+
+            double xr = 0.5 * (zr + cr), xi = 0.5 * (zi + ci);
+            double yr = 0.5 * (zi - ci), yi = -0.5 * (zr - cr);
+
+            // conj(X) * Y
+            double pr = xr * yr + xi * yi;
+            double pi = xr * yi - xi * yr;
+
+            re[k] = pr;
+            im[k] = pi;
+            if (j != k) {
+                // the cross spectrum of real series is hermitian
+                re[j] = pr;
+                im[j] = -pi;
+            }
+        }
+
+        fft(re, im, m, true);
+
+        for (int tau = -maxLag; tau <= maxLag; tau++) {
+            int idx = tau >= 0 ? tau : m + tau;
+            rho[maxLag + tau] = re[idx] / (n - Math.abs(tau));
+        }
+    }
+
+    /**
+     * In-place iterative radix-2 FFT, the inverse transform is scaled by 1/m.
+     */
+    static void fft(double[] re, double[] im, int m, boolean inverse) {
+        // bit reversal permutation
+        for (int i = 1, j = 0; i < m; i++) {
+            int bit = m >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+
+        for (int len = 2; len <= m; len <<= 1) {
+            double ang = 2 * Math.PI / len * (inverse ? 1 : -1);
+            double wr = Math.cos(ang), wi = Math.sin(ang);
+            int half = len >> 1;
+            for (int i = 0; i < m; i += len) {
+                double cr = 1.0, ci = 0.0;
+                for (int k = 0; k < half; k++) {
+                    int a = i + k, b = a + half;
+                    double vr = re[b] * cr - im[b] * ci;
+                    double vi = re[b] * ci + im[b] * cr;
+                    re[b] = re[a] - vr;
+                    im[b] = im[a] - vi;
+                    re[a] += vr;
+                    im[a] += vi;
+                    double ncr = cr * wr - ci * wi;
+                    ci = cr * wi + ci * wr;
+                    cr = ncr;
+                }
+            }
+        }
+
+        if (inverse) {
+            for (int i = 0; i < m; i++) {
+                re[i] /= m;
+                im[i] /= m;
+            }
+        }
+    }
+
+    static int nextPowerOfTwo(int v) {
+        int m = 1;
+        while (m < v) {
+            m <<= 1;
+        }
+        return m;
+    }
+
+    private void ensureCapacity(int n) {
+        if (x.length < n) {
+            x = new double[n];
+            y = new double[n];
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+package org.apache.crunchts.statistics;
+
+/**
+ * Detrended Fluctuation Analysis (DFA-1) for equidistant time series.
+ *
+ * The integrated profile Y(i) = sum_k<=i (x(k) - <x>) is built once per
+ * series. For each scale s the profile is cut into non-overlapping windows
+ * of length s, starting at the beginning and at the end of the series. In
+ * each window a linear trend is removed by least squares and F(s) is the
+ * root mean square of the residuals over all windows.
+ *
+ * The linear fit uses closed-form sums: for the positions 0..s-1 the sums
+ * Sx and Sxx are constants, so only Sy, Sxy and Syy are collected per
+ * window and no regression objects are created. One instance keeps the
+ * profile buffer and should be reused for many series (not thread safe).
+ *
+ * The fluctuation exponent alpha is the slope of log F(s) vs. log s.
+ */
+public class DetrendedFluctuationAnalysis {
+
+    private double[] profile = new double[0];
+
+    /**
+     * Logarithmically spaced scales between sMin and n/4.
+     *
+     * @param n - length of the series
+     * @param sMin - smallest scale, 3 or greater (a linear fit needs 3
+     *               points), 4 or greater is recommended
+     * @param perOctave - number of scales per factor of 2, 1 or greater
+     * @return scales in increasing order, can be empty for short series
+     * @throws IllegalArgumentException for sMin < 3 or perOctave < 1
+     */
+    public static int[] scales(int n, int sMin, int perOctave) {
+        checkScales(sMin, perOctave);
+        int sMax = n / 4;
+        int[] tmp = new int[64 * perOctave];
+        int z = 0;
+        double f = Math.pow(2.0, 1.0 / perOctave);
+        double s = sMin;
+        int last = 0;
+        while ((int) Math.round(s) <= sMax && z < tmp.length) {
+            int si = (int) Math.round(s);
+            if (si != last) {
+                tmp[z++] = si;
+                last = si;
+            }
+            s *= f;
+        }
+        int[] res = new int[z];
+        System.arraycopy(tmp, 0, res, 0, z);
+        return res;
+    }
+
+    /**
+     * @throws IllegalArgumentException if sMin and perOctave give no valid
+     *         scales, see scales()
+     */
+    public static void checkScales(int sMin, int perOctave) {
+        if (sMin < 3) {
+            throw new IllegalArgumentException("smallest scale should be 3 or greater: " + sMin);
+        }
+        if (perOctave < 1) {
+            throw new IllegalArgumentException("scales per octave should be 1 or greater: " + perOctave);
+        }
+    }
+
+    /**
+     * Calculates F(s) for all scales.
+     *
+     * @param x - the series
+     * @param scales - window sizes, each between 3 and x.length
+     * @param fluct - result, F(s) for each scale
+     * @return fluct
+     */
+    public double[] fluctuation(double[] x, int[] scales, double[] fluct) {
+        int n = x.length;
+        if (fluct == null || fluct.length != scales.length) {
+            fluct = new double[scales.length];
+        }
+        buildProfile(x);
+
+        for (int k = 0; k < scales.length; k++) {
+            int s = scales[k];
+            int w = n / s;
+            if (s < 3 || w < 1) {
+                fluct[k] = Double.NaN;
+                continue;
+            }
+
+            // constants of the fit for positions 0..s-1
+            double sx = 0.5 * s * (s - 1);
+            double sxx = (s - 1.0) * s * (2.0 * s - 1.0) / 6.0;
+            double d = s * (s * sxx - sx * sx);
+
+            double rss = 0.0;
+            int offset = n - w * s;
+            for (int j = 0; j < w; j++) {
+                rss += windowResiduals(j * s, s, sx, d);
+                rss += windowResiduals(offset + j * s, s, sx, d);
+            }
+            fluct[k] = Math.sqrt(rss / (2.0 * w * s));
+        }
+        return fluct;
+    }
+
+    /**
+     * Sum of squared residuals of a linear fit in one window, the window is
+     * shifted by its first value to avoid cancellation in Syy - Sy^2/s.
+     */
+    private double windowResiduals(int start, int s, double sx, double d) {
+        double y0 = profile[start];
+        double sy = 0.0, sxy = 0.0, syy = 0.0;
+        for (int i = 0; i < s; i++) {
+            double y = profile[start + i] - y0;
+            sy += y;
+            sxy += i * y;
+            syy += y * y;
+        }
+        double c = s * sxy - sx * sy;
+        double r = syy - sy * sy / s - c * c / d;
+        return r > 0.0 ? r : 0.0;
+    }
+
+    private void buildProfile(double[] x) {
+        int n = x.length;
+        if (profile.length < n) {
+            profile = new double[n];
+        }
+        double mean = TSKernels.mean(x, n);
+        double y = 0.0;
+        for (int i = 0; i < n; i++) {
+            y += x[i] - mean;
+            profile[i] = y;
+        }
+    }
+
+    /**
+     * Least squares slope of log F(s) vs. log s, undefined and zero values
+     * of F are ignored.
+     *
+     * @return alpha, NaN if less than two points are available
+     */
+    public static double alpha(int[] scales, double[] fluct) {
+        double sx = 0.0, sy = 0.0, sxx = 0.0, sxy = 0.0;
+        int z = 0;
+        for (int k = 0; k < scales.length; k++) {
+            double f = fluct[k];
+            if (Double.isNaN(f) || f <= 0.0) {
+                continue;
+            }
+            double lx = Math.log(scales[k]);
+            double ly = Math.log(f);
+            sx += lx;
+            sy += ly;
+            sxx += lx * lx;
+            sxy += lx * ly;
+            z++;
+        }
+        if (z < 2) {
+            return Double.NaN;
+        }
+        return (z * sxy - sx * sy) / (z * sxx - sx * sx);
+    }
+
+}
@@ -0,0 +1,222 @@
+package org.apache.crunchts.statistics;
+
+import java.util.Arrays;
+
+/**
+ * Maps the values of a series to the symbols 0..k-1, the input for the
+ * count based estimators in MutualInformation.
+ *
+ *   EQUAL_WIDTH     : k bins of the same width between min and max
+ *   EQUAL_FREQUENCY : bin edges at the quantiles, about n/k values per bin,
+ *                     equal values always share a bin
+ *   BAYESIAN_BLOCKS : the optimal partition of the value distribution into
+ *                     blocks of constant density (Scargle et al. 2013), the
+ *                     number of bins follows from the data, O(u^2) for u
+ *                     distinct values
+ *
+ * One instance keeps its work buffers, so it should be reused for many
+ * series (but not shared between threads).
+ */
+public class Discretizer {
+
+    public enum Method {
+        EQUAL_WIDTH, EQUAL_FREQUENCY, BAYESIAN_BLOCKS
+    }
+
+    /**
+     * False positive rate used for the prior of the number of blocks.
+     */
+    static final double BLOCKS_P0 = 0.05;
+
+    private final Method method;
+    private final int bins;
+
+    private double[] sorted = new double[0];
+    private double[] edges = new double[0];
+
+    // Bayesian blocks
+    private int[] cellCounts = new int[0];
+    private double[] cellEdges = new double[0];
+    private double[] best = new double[0];
+    private int[] last = new int[0];
+
+    /**
+     * @param bins - number of bins, not used for BAYESIAN_BLOCKS
+     */
+    public Discretizer(Method method, int bins) {
+        if (method != Method.BAYESIAN_BLOCKS && bins < 1) {
+            throw new IllegalArgumentException("bins should be 1 or greater: " + bins);
+        }
+        this.method = method;
+        this.bins = bins;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @param x - the series, only the first n values are used
+     * @param symbols - result, the symbol of x[i] at index i
+     * @return k, the symbols are in 0..k-1
+     */
+    public int discretize(double[] x, int n, int[] symbols) {
+        if (n == 0) {
+            return 0;
+        }
+        switch (method) {
+            case EQUAL_WIDTH:
+                return equalWidth(x, n, symbols);
+            case EQUAL_FREQUENCY:
+                sortCopy(x, n);
+                return byEdges(x, n, symbols, quantileEdges(n));
+            default:
+                sortCopy(x, n);
+                return byEdges(x, n, symbols, bayesianBlockEdges(n));
+        }
+    }
+
+    private int equalWidth(double[] x, int n, int[] symbols) {
+        double min = x[0];
+        double max = x[0];
+        for (int i = 1; i < n; i++) {
+            if (x[i] < min) {
+                min = x[i];
+            } else if (x[i] > max) {
+                max = x[i];
+            }
+        }
+        if (max == min) {
+            Arrays.fill(symbols, 0, n, 0);
+            return 1;
+        }
+        double scale = bins / (max - min);
+        for (int i = 0; i < n; i++) {
+            int s = (int) ((x[i] - min) * scale);
+            symbols[i] = s < bins ? s : bins - 1;
+        }
+        return bins;
+    }
+
+    private void sortCopy(double[] x, int n) {
+        if (sorted.length < n) {
+            sorted = new double[n];
+        }
+        System.arraycopy(x, 0, sorted, 0, n);
+        Arrays.sort(sorted, 0, n);
+    }
+
+    /**
+     * Inner edges at the quantiles of the sorted values, without duplicates.
+     *
+     * @return number of inner edges
+     */
+    private int quantileEdges(int n) {
+        ensureEdges(bins);
+        int e = 0;
+        for (int b = 1; b < bins; b++) {
+            double edge = sorted[(int) ((long) b * n / bins)];
+            if (edge > sorted[0] && (e == 0 || edge > edges[e - 1])) {
+                edges[e++] = edge;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Bayesian blocks for the values as events: the cells are the distinct
+     * values, the fitness of a block is N (log N - log width).
+     *
+     * @return number of inner edges
+     */
+    private int bayesianBlockEdges(int n) {
+        // distinct values with their counts
+        int u = 0;
+        if (cellCounts.length < n) {
+            cellCounts = new int[n];
+            cellEdges = new double[n + 1];
+            best = new double[n];
+            last = new int[n];
+        }
+        for (int i = 0; i < n; i++) {
+            if (u > 0 && sorted[i] == sorted[u - 1]) {
+                cellCounts[u - 1]++;
+            } else {
+                sorted[u] = sorted[i];
+                cellCounts[u++] = 1;
+            }
+        }
+        ensureEdges(u);
+        if (u == 1) {
+            return 0;
+        }
+
+        cellEdges[0] = sorted[0];
+        for (int i = 1; i < u; i++) {
+            cellEdges[i] = 0.5 * (sorted[i - 1] + sorted[i]);
+        }
+        cellEdges[u] = sorted[u - 1];
+
+        double prior = 4.0 - Math.log(73.53 * BLOCKS_P0 * Math.pow(n, -0.478));
+
+        for (int r = 0; r < u; r++) {
+            // blocks k..r for all k, counts accumulated from the right
+            int count = 0;
+            double bestFit = Double.NEGATIVE_INFINITY;
+            int bestK = 0;
+            for (int k = r; k >= 0; k--) {
+                count += cellCounts[k];
+                double width = cellEdges[r + 1] - cellEdges[k];
+                double fit = count * (Math.log(count) - Math.log(width)) - prior;
+                if (k > 0) {
+                    fit += best[k - 1];
+                }
+                if (fit > bestFit) {
+                    bestFit = fit;
+                    bestK = k;
+                }
+            }
+            best[r] = bestFit;
+            last[r] = bestK;
+        }
+
+        // change points from the right, stored in reverse order
+        int e = 0;
+        for (int r = last[u - 1]; r > 0; r = last[r - 1]) {
+            edges[e++] = cellEdges[r];
+        }
+        for (int i = 0, j = e - 1; i < j; i++, j--) {
+            double t = edges[i];
+            edges[i] = edges[j];
+            edges[j] = t;
+        }
+        return e;
+    }
+
+    private void ensureEdges(int size) {
+        if (edges.length < size) {
+            edges = new double[size];
+        }
+    }
+
+    /**
+     * Symbol of a value: the number of inner edges <= value.
+     */
+    private int byEdges(double[] x, int n, int[] symbols, int e) {
+        for (int i = 0; i < n; i++) {
+            double v = x[i];
+            int lo = 0;
+            int hi = e;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (edges[mid] <= v) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            symbols[i] = lo;
+        }
+        return e + 1;
+    }
+}
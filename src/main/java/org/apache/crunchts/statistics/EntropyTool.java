@@ -12,6 +12,9 @@ import java.util.Map;
  *
  * This is my own implementation, not really well tested at the moment.
  * 
+ * Each distinct value is one symbol, use Discretizer and MutualInformation
+ * for continuous data and for many series.
+ * 
  * @author kamir
  */
 public class EntropyTool {
@@ -55,9 +55,14 @@ public class GrangerCausality {
     }
 
 
+    /**
+     * The lags of the series, without a constant column: the regression
+     * adds the intercept itself, a second constant column makes the design
+     * singular and the residuals wrong.
+     */
     private static double[][] createLaggedSide(int L, double[]... a) {
         int n = a[0].length - L;
-        double[][] res = new double[n][L*a.length+1];
+        double[][] res = new double[n][L*a.length];
         for(int i=0; i<a.length; i++){
             double[] ai = a[i];
             for(int l=0; l<L; l++){
@@ -66,9 +71,6 @@ public class GrangerCausality {
                 }
             }
         }
-        for(int i=0; i<n; i++){
-            res[i][L*a.length] = 1;
-        }
         return res;
     }
 
@@ -0,0 +1,167 @@
+package org.apache.crunchts.statistics;
+
+import java.util.Arrays;
+
+/**
+ * Shannon entropy, joint entropy and mutual information (in bits) of
+ * discretized series, see Discretizer.
+ *
+ * The symbols are counted in int arrays. The joint distribution uses a
+ * dense ka x kb array as long as it is small, otherwise an open addressing
+ * map with long keys, so no boxing and no String keys are involved (see
+ * EntropyTool for the old implementation on exact values).
+ *
+ * One instance keeps its work buffers, so it should be reused for many
+ * pairs (but not shared between threads).
+ */
+public class MutualInformation {
+
+    /**
+     * Largest ka * kb for the dense joint count array.
+     */
+    static final int MAX_DENSE_JOINT = 1 << 16;
+
+    private static final double LN2 = Math.log(2.0);
+
+    private int[] counts = new int[0];
+    private int[] joint = new int[0];
+    private final LongCountMap sparse = new LongCountMap();
+
+    /**
+     * @param s - symbols in 0..k-1, only the first n are used
+     */
+    public double entropy(int[] s, int k, int n) {
+        if (n == 0) {
+            return 0.0;
+        }
+        if (counts.length < k) {
+            counts = new int[k];
+        }
+        Arrays.fill(counts, 0, k, 0);
+        for (int i = 0; i < n; i++) {
+            counts[s[i]]++;
+        }
+        return histogramEntropy(counts, k, n);
+    }
+
+    /**
+     * H(A,B) of the first n symbol pairs.
+     */
+    public double jointEntropy(int[] a, int ka, int[] b, int kb, int n) {
+        if (n == 0) {
+            return 0.0;
+        }
+        long cells = (long) ka * kb;
+        if (cells <= MAX_DENSE_JOINT) {
+            int size = (int) cells;
+            if (joint.length < size) {
+                joint = new int[size];
+            }
+            Arrays.fill(joint, 0, size, 0);
+            for (int i = 0; i < n; i++) {
+                joint[a[i] * kb + b[i]]++;
+            }
+            return histogramEntropy(joint, size, n);
+        }
+
+        sparse.clear();
+        for (int i = 0; i < n; i++) {
+            sparse.increment(((long) a[i] << 32) | b[i]);
+        }
+        return histogramEntropy(sparse.values(), sparse.capacity(), n);
+    }
+
+    /**
+     * I(A;B) = H(A) + H(B) - H(A,B) of the first n symbol pairs.
+     */
+    public double mutualInformation(int[] a, int ka, int[] b, int kb, int n) {
+        double mi = entropy(a, ka, n) + entropy(b, kb, n) - jointEntropy(a, ka, b, kb, n);
+        // rounding can give tiny negative values for independent series
+        return mi > 0.0 ? mi : 0.0;
+    }
+
+    /**
+     * Entropy of a histogram with total n, empty cells are skipped.
+     */
+    static double histogramEntropy(int[] c, int size, int n) {
+        // H = log n - 1/n sum c log c
+        double sum = 0.0;
+        for (int i = 0; i < size; i++) {
+            int ci = c[i];
+            if (ci > 1) {
+                sum += ci * Math.log(ci);
+            }
+        }
+        return (Math.log(n) - sum / n) / LN2;
+    }
+
+    /**
+     * Open addressing hash map long -> count with linear probing. The
+     * counts of empty slots are 0, so values() can be summed directly.
+     */
+    static class LongCountMap {
+
+        private long[] keys = new long[16];
+        private int[] values = new int[16];
+        private int size;
+
+        void clear() {
+            if (size > 0) {
+                Arrays.fill(values, 0);
+                size = 0;
+            }
+        }
+
+        void increment(long key) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (values[i] != 0) {
+                if (keys[i] == key) {
+                    values[i]++;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = 1;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        int capacity() {
+            return keys.length;
+        }
+
+        int[] values() {
+            return values;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldValues[j] != 0) {
+                    int i = hash(oldKeys[j]) & mask;
+                    while (values[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.apache.crunchts.statistics;
+
+/**
+ * Logarithmically binned histogram of return intervals for one threshold.
+ *
+ * An interval r >= 1 goes into bin floor(log2(r) * binsPerOctave), shorter
+ * intervals go into bin 0. Histograms with the same quantile and binning
+ * can be merged, so only these compact arrays have to be shuffled instead
+ * of the raw intervals.
+ *
+ * The class is a plain bean, so it can be shipped with Avros.reflects().
+ */
+public class ReturnIntervalHistogram {
+
+    double quantile;
+    int binsPerOctave;
+
+    long[] counts = new long[0];
+
+    long total = 0;
+    double sumIntervals = 0.0;
+
+    public ReturnIntervalHistogram() { }
+
+    public ReturnIntervalHistogram(double quantile, int binsPerOctave) {
+        this.quantile = quantile;
+        this.binsPerOctave = binsPerOctave;
+    }
+
+    public void add(double r) {
+        int bin = bin(r);
+        if (bin >= counts.length) {
+            grow(bin + 1);
+        }
+        counts[bin]++;
+        total++;
+        sumIntervals += r;
+    }
+
+    /**
+     * Adds the counts of another histogram with the same binning.
+     */
+    public void merge(ReturnIntervalHistogram other) {
+        if (other.binsPerOctave != binsPerOctave) {
+            throw new IllegalArgumentException("can not merge histograms with "
+                    + binsPerOctave + " and " + other.binsPerOctave + " bins per octave");
+        }
+        if (other.counts.length > counts.length) {
+            grow(other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sumIntervals += other.sumIntervals;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(counts, 0L);
+        total = 0;
+        sumIntervals = 0.0;
+    }
+
+    int bin(double r) {
+        if (r <= 1.0) {
+            return 0;
+        }
+        return (int) Math.floor(Math.log(r) / Math.log(2) * binsPerOctave);
+    }
+
+    /**
+     * @return lower bound of the interval length in bin i
+     */
+    public double lowerBound(int i) {
+        return Math.pow(2.0, (double) i / binsPerOctave);
+    }
+
+    private void grow(int n) {
+        long[] c = new long[n];
+        System.arraycopy(counts, 0, c, 0, counts.length);
+        counts = c;
+    }
+
+    public double getQuantile() {
+        return quantile;
+    }
+
+    public int getBinsPerOctave() {
+        return binsPerOctave;
+    }
+
+    public long[] getCounts() {
+        return counts;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return mean return interval <R>, NaN if no interval was recorded
+     */
+    public double getMeanInterval() {
+        return total == 0 ? Double.NaN : sumIntervals / total;
+    }
+
+    /**
+     * One line per bin: quantile, lower bound, R/<R>, count and density.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        double mean = getMeanInterval();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            double lo = lowerBound(i);
+            double width = lowerBound(i + 1) - (i == 0 ? 0.0 : lo);
+            sb.append(quantile).append('\t')
+              .append(lo).append('\t')
+              .append(lo / mean).append('\t')
+              .append(counts[i]).append('\t')
+              .append(counts[i] / (width * total)).append('\n');
+        }
+        return sb.toString();
+    }
+}
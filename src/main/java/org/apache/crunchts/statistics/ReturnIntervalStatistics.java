@@ -0,0 +1,166 @@
+package org.apache.crunchts.statistics;
+
+import java.util.Arrays;
+
+/**
+ * Return-Interval-Statistics (RIS).
+ *
+ * For each quantile q a threshold is taken from the value distribution of
+ * the series. An exceedance is a sample with a value above the threshold,
+ * a return interval is the time between two consecutive exceedances.
+ *
+ * All thresholds are handled in one pass over the series: the thresholds
+ * are sorted, so a sample that exceeds threshold k also exceeds all lower
+ * thresholds. One instance keeps its work buffers and should be reused for
+ * many series (not thread safe).
+ */
+public class ReturnIntervalStatistics {
+
+    private final double[] quantiles;
+    private final int binsPerOctave;
+
+    private double[] sorted = new double[0];
+    private final double[] thresholds;
+    private final long[] last;
+    // time stamps can be negative, so last[] has no free sentinel value
+    private final boolean[] seen;
+
+    /**
+     * @param quantiles - e.g. {0.9, 0.95, 0.99}, will be sorted
+     * @param binsPerOctave - resolution of the histograms
+     */
+    public ReturnIntervalStatistics(double[] quantiles, int binsPerOctave) {
+        this.quantiles = quantiles.clone();
+        Arrays.sort(this.quantiles);
+        this.binsPerOctave = binsPerOctave;
+        this.thresholds = new double[quantiles.length];
+        this.last = new long[quantiles.length];
+        this.seen = new boolean[quantiles.length];
+    }
+
+    /**
+     * Creates empty histograms, one per quantile in increasing order.
+     */
+    public ReturnIntervalHistogram[] createHistograms() {
+        ReturnIntervalHistogram[] h = new ReturnIntervalHistogram[quantiles.length];
+        for (int k = 0; k < h.length; k++) {
+            h[k] = new ReturnIntervalHistogram(quantiles[k], binsPerOctave);
+        }
+        return h;
+    }
+
+    /**
+     * Return intervals of an equidistant series, measured in samples.
+     *
+     * @param x - the series
+     * @param hist - histograms from createHistograms(), are cleared first
+     */
+    public void process(double[] x, ReturnIntervalHistogram[] hist) {
+        int n = x.length;
+        calcThresholds(x, n);
+        prepare(hist);
+
+        for (int i = 0; i < n; i++) {
+            exceed(x[i], i, 1.0, hist);
+        }
+    }
+
+    /**
+     * Return intervals of an event series.
+     *
+     * @param t - time stamps, sorted in increasing order
+     * @param v - values
+     * @param n - number of events
+     * @param resolution - unit of the intervals, e.g. 1000 for seconds if t is in ms
+     * @param hist - histograms from createHistograms(), are cleared first
+     */
+    public void process(long[] t, double[] v, int n, double resolution, ReturnIntervalHistogram[] hist) {
+        calcThresholds(v, n);
+        prepare(hist);
+
+        for (int i = 0; i < n; i++) {
+            exceed(v[i], t[i], resolution, hist);
+        }
+    }
+
+    private void exceed(double value, long time, double resolution, ReturnIntervalHistogram[] hist) {
+        // thresholds are increasing, so only the lower ones can be exceeded
+        for (int k = 0; k < thresholds.length && value > thresholds[k]; k++) {
+            if (seen[k]) {
+                hist[k].add((time - last[k]) / resolution);
+            }
+            last[k] = time;
+            seen[k] = true;
+        }
+    }
+
+    private void prepare(ReturnIntervalHistogram[] hist) {
+        Arrays.fill(seen, false);
+        for (ReturnIntervalHistogram h : hist) {
+            h.clear();
+        }
+    }
+
+    private void calcThresholds(double[] x, int n) {
+        if (sorted.length < n) {
+            sorted = new double[n];
+        }
+        System.arraycopy(x, 0, sorted, 0, n);
+        Arrays.sort(sorted, 0, n);
+        for (int k = 0; k < quantiles.length; k++) {
+            int i = (int) Math.floor(quantiles[k] * (n - 1));
+            thresholds[k] = n == 0 ? Double.NaN : sorted[Math.max(0, Math.min(n - 1, i))];
+        }
+    }
+
+    /**
+     * @return the thresholds of the last processed series
+     */
+    public double[] getThresholds() {
+        return thresholds;
+    }
+
+    /**
+     * Sorts the events by time, the values are moved together with their
+     * time stamps (heap sort, in place).
+     */
+    public static void sortByTime(long[] t, double[] v, int n) {
+        boolean sorted = true;
+        for (int i = 1; i < n && sorted; i++) {
+            sorted = t[i - 1] <= t[i];
+        }
+        if (sorted) {
+            return;
+        }
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(t, v, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            swap(t, v, 0, end);
+            siftDown(t, v, 0, end);
+        }
+    }
+
+    private static void siftDown(long[] t, double[] v, int i, int n) {
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= n) {
+                return;
+            }
+            if (c + 1 < n && t[c + 1] > t[c]) {
+                c++;
+            }
+            if (t[i] >= t[c]) {
+                return;
+            }
+            swap(t, v, i, c);
+            i = c;
+        }
+    }
+
+    private static void swap(long[] t, double[] v, int i, int j) {
+        long tt = t[i]; t[i] = t[j]; t[j] = tt;
+        double vv = v[i]; v[i] = v[j]; v[j] = vv;
+    }
+
+}
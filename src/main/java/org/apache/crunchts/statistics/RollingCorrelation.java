@@ -0,0 +1,173 @@
+package org.apache.crunchts.statistics;
+
+/**
+ * Pearson correlation of two series in sliding windows of w values, the
+ * window k covers the values k*step .. k*step+w-1.
+ *
+ * The sums and sums of squares of the windows only depend on one series,
+ * they are calculated once per series (prepare()). For a pair only the
+ * cross products are updated while the window slides: the step values
+ * which leave the window are subtracted, the step values which enter are
+ * added. The series are centered by their mean first and the running sums
+ * are recalculated every REFRESH windows, so the rounding errors of the
+ * updates do not accumulate.
+ *
+ * Windows with constant values (e.g. no clicks at all) are common. They
+ * are found exactly in prepare() by the runs of equal values, and a window
+ * whose variance is below EPSILON relative to its sum of squares is also
+ * treated as constant, so the rounding residue of the updates never gives a
+ * correlation. The correlation of a constant window is NaN.
+ *
+ * One instance can be reused for many pairs (not shared between threads).
+ */
+public class RollingCorrelation {
+
+    /**
+     * Windows between two exact recalculations of the running sums.
+     */
+    static final int REFRESH = 64;
+
+    /**
+     * Relative variance w * sumSq - sum^2 below which a window is constant.
+     */
+    static final double EPSILON = 1e-12;
+
+    private final int window;
+    private final int step;
+
+    public RollingCorrelation(int window, int step) {
+        if (window < 2 || step < 1) {
+            throw new IllegalArgumentException("window should be 2 or greater and step 1 or greater: "
+                    + window + ", " + step);
+        }
+        this.window = window;
+        this.step = step;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * @return number of complete windows in a series of length n
+     */
+    public int windows(int n) {
+        return n < window ? 0 : (n - window) / step + 1;
+    }
+
+    /**
+     * The centered series with the sums and sums of squares of all windows.
+     */
+    public static class Moments {
+
+        final double[] x;
+        final double[] sum;
+        final double[] sumSq;
+
+        Moments(double[] x, int windows) {
+            this.x = x;
+            this.sum = new double[windows];
+            this.sumSq = new double[windows];
+        }
+
+        public int length() {
+            return x.length;
+        }
+
+        public int windows() {
+            return sum.length;
+        }
+    }
+
+    public Moments prepare(double[] values, int n) {
+        double mean = n > 0 ? TSKernels.mean(values, n) : 0.0;
+
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = values[i] - mean;
+        }
+
+        int windows = windows(n);
+        Moments m = new Moments(x, windows);
+
+        // run[i]: number of equal values ending at i
+        int[] run = new int[n];
+        for (int i = 0; i < n; i++) {
+            run[i] = i > 0 && values[i] == values[i - 1] ? run[i - 1] + 1 : 1;
+        }
+
+        double s = 0.0;
+        double ss = 0.0;
+        for (int k = 0; k < windows; k++) {
+            int begin = k * step;
+            if (k % REFRESH == 0 || step >= window) {
+                s = 0.0;
+                ss = 0.0;
+                for (int i = begin; i < begin + window; i++) {
+                    s += x[i];
+                    ss += x[i] * x[i];
+                }
+            } else {
+                int prev = begin - step;
+                for (int i = prev; i < begin; i++) {
+                    s -= x[i];
+                    ss -= x[i] * x[i];
+                }
+                for (int i = prev + window; i < begin + window; i++) {
+                    s += x[i];
+                    ss += x[i] * x[i];
+                }
+            }
+            if (run[begin + window - 1] >= window) {
+                // constant window, zero variance without rounding residue
+                m.sum[k] = 0.0;
+                m.sumSq[k] = 0.0;
+            } else {
+                m.sum[k] = s;
+                m.sumSq[k] = ss;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * @param rho - result, the correlation of window k at index k, NaN for
+     *              a constant window; at least min(a.windows(), b.windows())
+     * @return number of windows
+     */
+    public int correlate(Moments a, Moments b, double[] rho) {
+        int windows = Math.min(a.windows(), b.windows());
+        double[] x = a.x;
+        double[] y = b.x;
+        double sxy = 0.0;
+        double w = window;
+        for (int k = 0; k < windows; k++) {
+            int begin = k * step;
+            if (k % REFRESH == 0 || step >= window) {
+                sxy = TSKernels.dot(x, begin, y, begin, window);
+            } else {
+                int prev = begin - step;
+                for (int i = prev; i < begin; i++) {
+                    sxy -= x[i] * y[i];
+                }
+                for (int i = prev + window; i < begin + window; i++) {
+                    sxy += x[i] * y[i];
+                }
+            }
+            double sx = a.sum[k];
+            double sy = b.sum[k];
+            double vx = w * a.sumSq[k] - sx * sx;
+            double vy = w * b.sumSq[k] - sy * sy;
+            if (vx <= EPSILON * w * a.sumSq[k] || vy <= EPSILON * w * b.sumSq[k]) {
+                rho[k] = Double.NaN;
+            } else {
+                rho[k] = (w * sxy - sx * sy) / Math.sqrt(vx * vy);
+            }
+        }
+        return windows;
+    }
+}
@@ -0,0 +1,154 @@
+package org.apache.crunchts.statistics;
+
+/**
+ * Summary statistics of one series or of a whole bucket: count, sum, mean,
+ * variance, min, max, the fraction of zeros and the non-zero length (first
+ * to last non-zero value) of the series.
+ *
+ * Sum and variance of a series are calculated with TSKernels (two-pass
+ * variance), min, max and the zeros in one more pass. Profiles are merged
+ * with the pairwise update of Chan et al. for mean and variance, so they
+ * can be combined in any order (combiner and reducer).
+ *
+ * The class is a plain bean, so it can be shipped with Avros.reflects().
+ */
+public class SeriesProfile {
+
+    long series = 0;
+    long count = 0;
+    long zeros = 0;
+    long nonZeroLength = 0;
+
+    double sum = 0.0;
+    double mean = 0.0;
+    double m2 = 0.0;
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+
+    public SeriesProfile() { }
+
+    /**
+     * Profile of the first n values of one series.
+     */
+    public static SeriesProfile of(double[] v, int n) {
+        SeriesProfile p = new SeriesProfile();
+        p.add(v, n);
+        return p;
+    }
+
+    /**
+     * Adds one series.
+     */
+    public void add(double[] v, int n) {
+        if (n == 0) {
+            series++;
+            return;
+        }
+        double s = TSKernels.sum(v, n);
+        double mu = s / n;
+        double s2 = TSKernels.squaredDeviations(v, n, mu);
+        double lo = v[0];
+        double hi = v[0];
+        long z = 0;
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < n; i++) {
+            double x = v[i];
+            if (x < lo) {
+                lo = x;
+            } else if (x > hi) {
+                hi = x;
+            }
+            if (x == 0.0) {
+                z++;
+            } else {
+                if (first < 0) {
+                    first = i;
+                }
+                last = i;
+            }
+        }
+        SeriesProfile p = new SeriesProfile();
+        p.series = 1;
+        p.count = n;
+        p.zeros = z;
+        p.nonZeroLength = first < 0 ? 0 : last - first + 1;
+        p.sum = s;
+        p.mean = mu;
+        p.m2 = s2;
+        p.min = lo;
+        p.max = hi;
+        merge(p);
+    }
+
+    /**
+     * Adds the values of another profile.
+     */
+    public void merge(SeriesProfile other) {
+        long n = count + other.count;
+        if (other.count > 0) {
+            double d = other.mean - mean;
+            mean += d * other.count / n;
+            m2 += other.m2 + d * d * ((double) count * other.count / n);
+        }
+        count = n;
+        series += other.series;
+        zeros += other.zeros;
+        nonZeroLength += other.nonZeroLength;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long getSeries() {
+        return series;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMean() {
+        return count > 0 ? mean : Double.NaN;
+    }
+
+    /**
+     * @return the sample variance, NaN for less than two values
+     */
+    public double getVariance() {
+        return count > 1 ? m2 / (count - 1) : Double.NaN;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getZeroFraction() {
+        return count > 0 ? (double) zeros / count : Double.NaN;
+    }
+
+    /**
+     * @return the non-zero length of a series, the mean over the series for a bucket
+     */
+    public double getNonZeroLength() {
+        return series > 0 ? (double) nonZeroLength / series : Double.NaN;
+    }
+
+    public static String header() {
+        return "series\tcount\tsum\tmean\tvariance\tmin\tmax\tzeroFraction\tnonZeroLength";
+    }
+
+    @Override
+    public String toString() {
+        return series + "\t" + count + "\t" + sum + "\t" + getMean() + "\t" + getVariance()
+                + "\t" + min + "\t" + max + "\t" + getZeroFraction() + "\t" + getNonZeroLength();
+    }
+}
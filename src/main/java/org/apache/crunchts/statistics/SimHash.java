@@ -0,0 +1,174 @@
+package org.apache.crunchts.statistics;
+
+/**
+ * Sign random projections (SimHash) of equidistant series.
+ *
+ * Each bit of the signature is the sign of the dot product of the centered
+ * series with a random +1/-1 vector. For two series with the correlation
+ * rho (at lag 0) the bits agree with the probability
+ *
+ *   p(rho) = 1 - acos(rho) / pi
+ *
+ * so the Hamming distance h of two signatures with b bits gives the
+ * estimate rho ~ cos(pi * h / b). For LSH the signature is cut into bands
+ * of r bits, two series become candidates if one band is equal, this
+ * happens with the probability 1 - (1 - p^r)^bands (see recall()).
+ *
+ * The random vectors are derived from the seed with a hash function, so
+ * all tasks create the same signatures without shipping a matrix, they
+ * are stored as bits (one long per 64 projections and position).
+ *
+ * One instance keeps its work buffers, so it should be reused for many
+ * series (but not shared between threads).
+ */
+public class SimHash {
+
+    private final int bits;
+    private final int words;
+    private final long seed;
+
+    /** planes[i * words + w]: signs of the projections 64w..64w+63 at position i */
+    private long[] planes = new long[0];
+    private int dimension = 0;
+
+    private final double[] acc;
+    private double[] centered = new double[0];
+
+    /**
+     * @param bits - length of the signatures, a multiple of 64
+     */
+    public SimHash(int bits, long seed) {
+        if (bits < 64 || bits % 64 != 0) {
+            throw new IllegalArgumentException("bits should be a multiple of 64: " + bits);
+        }
+        this.bits = bits;
+        this.words = bits / 64;
+        this.seed = seed;
+        this.acc = new double[bits];
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * @param x - the series, only the first n values are used
+     * @param signature - result, bits/64 longs, may be null
+     * @return the signature, null for a constant series
+     */
+    public long[] sketch(double[] x, int n, long[] signature) {
+        if (signature == null || signature.length != words) {
+            signature = new long[words];
+        }
+        ensureDimension(n);
+        if (centered.length < n) {
+            centered = new double[n];
+        }
+        System.arraycopy(x, 0, centered, 0, n);
+        if (!TSKernels.zNormalize(centered, n)) {
+            return null;
+        }
+
+        java.util.Arrays.fill(acc, 0.0);
+        for (int i = 0; i < n; i++) {
+            double xi = centered[i];
+            double neg = -xi;
+            int row = i * words;
+            for (int w = 0; w < words; w++) {
+                long s = planes[row + w];
+                int base = w << 6;
+                for (int j = 0; j < 64; j++) {
+                    acc[base + j] += ((s >>> j) & 1L) == 0 ? xi : neg;
+                }
+            }
+        }
+
+        for (int w = 0; w < words; w++) {
+            long sig = 0L;
+            int base = w << 6;
+            for (int j = 0; j < 64; j++) {
+                if (acc[base + j] > 0.0) {
+                    sig |= 1L << j;
+                }
+            }
+            signature[w] = sig;
+        }
+        return signature;
+    }
+
+    private void ensureDimension(int n) {
+        if (n <= dimension) {
+            return;
+        }
+        long[] p = new long[n * words];
+        System.arraycopy(planes, 0, p, 0, planes.length);
+        for (int i = dimension; i < n; i++) {
+            for (int w = 0; w < words; w++) {
+                p[i * words + w] = mix(seed + 0x9E3779B97F4A7C15L * ((long) i * words + w + 1));
+            }
+        }
+        planes = p;
+        dimension = n;
+    }
+
+    /**
+     * Bits band*r .. band*r+r-1 of the signature, r <= 64.
+     */
+    public static long band(long[] signature, int band, int r) {
+        int from = band * r;
+        int w = from >>> 6;
+        int offset = from & 63;
+        long v = signature[w] >>> offset;
+        if (offset + r > 64) {
+            v |= signature[w + 1] << (64 - offset);
+        }
+        return r == 64 ? v : v & ((1L << r) - 1);
+    }
+
+    public static int hamming(long[] a, long[] b) {
+        int h = 0;
+        for (int w = 0; w < a.length; w++) {
+            h += Long.bitCount(a[w] ^ b[w]);
+        }
+        return h;
+    }
+
+    /**
+     * Correlation estimate from the Hamming distance of two signatures.
+     */
+    public static double correlation(int hamming, int bits) {
+        return Math.cos(Math.PI * hamming / bits);
+    }
+
+    /**
+     * Probability that one bit of two series with correlation rho agrees.
+     */
+    public static double collisionProbability(double rho) {
+        return 1.0 - Math.acos(Math.max(-1.0, Math.min(1.0, rho))) / Math.PI;
+    }
+
+    /**
+     * Probability that a pair with correlation rho shares at least one of
+     * the bands of r bits.
+     */
+    public static double recall(double rho, int r, int bands) {
+        return recall(rho, r, bands, 0.0);
+    }
+
+    /**
+     * Same as recall(rho, r, bands), but a collision in a band is lost with
+     * probability lost (e.g. because the bucket is too large to compare).
+     */
+    public static double recall(double rho, int r, int bands, double lost) {
+        return 1.0 - Math.pow(1.0 - Math.pow(collisionProbability(rho), r) * (1.0 - lost), bands);
+    }
+
+    /**
+     * SplitMix64 finalizer.
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
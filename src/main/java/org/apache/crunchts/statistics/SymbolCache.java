@@ -0,0 +1,82 @@
+package org.apache.crunchts.statistics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The discretized series of a task, by label, for the pair jobs (mutual
+ * information, transfer entropy): the pairs of a tile use each series many
+ * times, so it is discretized only once.
+ *
+ * get() returns the symbols together with their alphabet size. When the
+ * cache is full it is cleared before the next series is added, a Symbols
+ * object which was returned before stays valid, so both series of a pair
+ * can be used even if the second lookup cleared the cache.
+ *
+ * Not shared between threads (the Discretizer keeps work buffers).
+ */
+public class SymbolCache {
+
+    /**
+     * The symbols 0..k-1 of one series.
+     */
+    public static class Symbols {
+
+        private final int[] symbols;
+        private final int alphabet;
+
+        Symbols(int[] symbols, int alphabet) {
+            this.symbols = symbols;
+            this.alphabet = alphabet;
+        }
+
+        public int[] symbols() {
+            return symbols;
+        }
+
+        /**
+         * @return k, the number of symbols
+         */
+        public int alphabet() {
+            return alphabet;
+        }
+
+        public int length() {
+            return symbols.length;
+        }
+    }
+
+    private final Discretizer discretizer;
+    private final int capacity;
+    private final Map<String, Symbols> cache = new HashMap<String, Symbols>();
+
+    /**
+     * @param capacity - number of series to keep, e.g. 2 * tile size
+     */
+    public SymbolCache(Discretizer discretizer, int capacity) {
+        this.discretizer = discretizer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param label - the key of the series
+     * @param x - the values, discretized if the label is not in the cache
+     */
+    public Symbols get(String label, double[] x) {
+        Symbols s = cache.get(label);
+        if (s == null) {
+            if (cache.size() >= capacity) {
+                cache.clear();
+            }
+            int[] symbols = new int[x.length];
+            int k = discretizer.discretize(x, x.length, symbols);
+            s = new Symbols(symbols, k);
+            cache.put(label, s);
+        }
+        return s;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,153 @@
+package org.apache.crunchts.statistics;
+
+/**
+ * Loops over double[] which are used in the inner loops of the pair and
+ * series jobs: sums, mean, variance, z-normalization and dot products.
+ *
+ * The loops are unrolled by four with independent accumulators. A single
+ * accumulator is a chain of dependent additions (one per FP add latency),
+ * four chains keep the pipeline busy and the JIT can map the body to
+ * packed SSE/AVX instructions. The order of the additions differs from a
+ * simple loop, so the results can differ in the last bits.
+ *
+ * Only the first n values of the arrays are used, the arrays are not
+ * copied and not checked.
+ */
+public final class TSKernels {
+
+    private TSKernels() {
+    }
+
+    public static double sum(double[] a, int n) {
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int i = 0;
+        for (int end = n - 3; i < end; i += 4) {
+            s0 += a[i];
+            s1 += a[i + 1];
+            s2 += a[i + 2];
+            s3 += a[i + 3];
+        }
+        for (; i < n; i++) {
+            s0 += a[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    public static double absSum(double[] a, int n) {
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int i = 0;
+        for (int end = n - 3; i < end; i += 4) {
+            s0 += Math.abs(a[i]);
+            s1 += Math.abs(a[i + 1]);
+            s2 += Math.abs(a[i + 2]);
+            s3 += Math.abs(a[i + 3]);
+        }
+        for (; i < n; i++) {
+            s0 += Math.abs(a[i]);
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * @return the mean, NaN for n = 0
+     */
+    public static double mean(double[] a, int n) {
+        return n > 0 ? sum(a, n) / n : Double.NaN;
+    }
+
+    /**
+     * Sum of the squared deviations from the given mean (second pass of the
+     * two-pass variance).
+     */
+    public static double squaredDeviations(double[] a, int n, double mean) {
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int i = 0;
+        for (int end = n - 3; i < end; i += 4) {
+            double d0 = a[i] - mean;
+            double d1 = a[i + 1] - mean;
+            double d2 = a[i + 2] - mean;
+            double d3 = a[i + 3] - mean;
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < n; i++) {
+            double d = a[i] - mean;
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Population variance (divided by n), two passes.
+     *
+     * @return the variance, NaN for n = 0
+     */
+    public static double variance(double[] a, int n) {
+        if (n == 0) {
+            return Double.NaN;
+        }
+        return squaredDeviations(a, n, sum(a, n) / n) / n;
+    }
+
+    /**
+     * Replaces the first n values by (a - mean) / sd, sd is the population
+     * standard deviation.
+     *
+     * @return false for a constant series, the values are not changed then
+     */
+    public static boolean zNormalize(double[] a, int n) {
+        double mean = sum(a, n) / n;
+        double var = squaredDeviations(a, n, mean);
+        if (var == 0.0) {
+            return false;
+        }
+        double s = 1.0 / Math.sqrt(var / n);
+        int i = 0;
+        for (int end = n - 3; i < end; i += 4) {
+            a[i] = (a[i] - mean) * s;
+            a[i + 1] = (a[i + 1] - mean) * s;
+            a[i + 2] = (a[i + 2] - mean) * s;
+            a[i + 3] = (a[i + 3] - mean) * s;
+        }
+        for (; i < n; i++) {
+            a[i] = (a[i] - mean) * s;
+        }
+        return true;
+    }
+
+    public static double dot(double[] a, double[] b, int n) {
+        return dot(a, 0, b, 0, n);
+    }
+
+    /**
+     * sum_i a[aFrom+i] * b[bFrom+i] for i = 0..n-1
+     */
+    public static double dot(double[] a, int aFrom, double[] b, int bFrom, int n) {
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int d = bFrom - aFrom;
+        int i = aFrom;
+        int to = aFrom + n;
+        for (int end = to - 3; i < end; i += 4) {
+            s0 += a[i] * b[i + d];
+            s1 += a[i + 1] * b[i + 1 + d];
+            s2 += a[i + 2] * b[i + 2 + d];
+            s3 += a[i + 3] * b[i + 3 + d];
+        }
+        for (; i < to; i++) {
+            s0 += a[i] * b[i + d];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * sum_t x(t) * y(t+tau) over the overlap of both series of length n,
+     * tau can be negative.
+     */
+    public static double laggedDot(double[] x, double[] y, int n, int tau) {
+        int from = Math.max(0, -tau);
+        int to = Math.min(n, n - tau);
+        return to > from ? dot(x, from, y, from + tau, to - from) : 0.0;
+    }
+}
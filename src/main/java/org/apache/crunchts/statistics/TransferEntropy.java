@@ -0,0 +1,175 @@
+package org.apache.crunchts.statistics;
+
+import java.util.Random;
+
+/**
+ * Transfer entropy (in bits) from a source series Y to a target series X
+ * on symbols of a Discretizer:
+ *
+ *   TE(Y->X) = H(x(t+1), x(t)) - H(x(t)) - H(x(t+1), x(t), y(t+1-lag)) + H(x(t), y(t+1-lag))
+ *
+ * where x(t) = (x[t-k+1] .. x[t]) is the history of length k of the target
+ * and y(t+1-lag) the history of length k of the source, ending lag steps
+ * before the predicted value. Each history is encoded once as one long, so
+ * the entropies are counted in LongCountMaps without any allocation.
+ *
+ * The significance is estimated with surrogates: the source histories are
+ * shuffled over time, which keeps their distribution but destroys the
+ * coupling to the target. Only the two terms with the source change, they
+ * are recounted for each surrogate in the same buffers.
+ *
+ * One instance keeps its work buffers, so it should be reused for many
+ * pairs (but not shared between threads).
+ */
+public class TransferEntropy {
+
+    private final int k;
+    private final int lag;
+
+    private int m;
+    private int[] future = new int[0];
+    private long[] target = new long[0];
+    private long[] source = new long[0];
+
+    private long sourceStates;
+    private int targetAlphabet;
+
+    /** the terms which do not depend on the source */
+    private double hTarget;
+    private double value = Double.NaN;
+    private double surrogateMean = Double.NaN;
+
+    private final MutualInformation.LongCountMap counts = new MutualInformation.LongCountMap();
+
+    /**
+     * @param k - history length of target and source, 1 or greater
+     * @param lag - the source history ends lag steps before the predicted value, 1 or greater
+     */
+    public TransferEntropy(int k, int lag) {
+        if (k < 1 || lag < 1) {
+            throw new IllegalArgumentException("history and lag should be 1 or greater: " + k + ", " + lag);
+        }
+        this.k = k;
+        this.lag = lag;
+    }
+
+    /**
+     * @param y - symbols of the source in 0..ky-1
+     * @param x - symbols of the target in 0..kx-1
+     * @param n - number of symbols used from both series
+     * @return TE(Y->X), NaN if the series are too short
+     */
+    public double transferEntropy(int[] y, int ky, int[] x, int kx, int n) {
+        int t0 = Math.max(k - 1, k + lag - 2);
+        m = n - 1 - t0;
+        value = Double.NaN;
+        surrogateMean = Double.NaN;
+        if (m < 2) {
+            return value;
+        }
+
+        double statesX = Math.pow(kx, k);
+        double statesY = Math.pow(ky, k);
+        if (statesX * statesY * kx > (double) (1L << 62)) {
+            throw new IllegalArgumentException("too many states for history " + k
+                    + " and alphabets " + kx + ", " + ky);
+        }
+        sourceStates = (long) statesY;
+        targetAlphabet = kx;
+
+        if (future.length < m) {
+            future = new int[m];
+            target = new long[m];
+            source = new long[m];
+        }
+        for (int i = 0; i < m; i++) {
+            int t = t0 + i;
+            future[i] = x[t + 1];
+            target[i] = encode(x, t, kx);
+            source[i] = encode(y, t + 1 - lag, ky);
+        }
+
+        // H(x(t+1), x(t)) - H(x(t))
+        counts.clear();
+        for (int i = 0; i < m; i++) {
+            counts.increment(target[i] * kx + future[i]);
+        }
+        hTarget = entropy();
+        counts.clear();
+        for (int i = 0; i < m; i++) {
+            counts.increment(target[i]);
+        }
+        hTarget -= entropy();
+
+        // the plug-in estimate is not negative, up to rounding
+        value = Math.max(0.0, hTarget + sourceTerms());
+        return value;
+    }
+
+    /**
+     * Shuffle-surrogate test of the last transferEntropy() call.
+     *
+     * @return the p-value (1 + #{surrogate TE >= TE}) / (1 + surrogates)
+     */
+    public double pValue(int surrogates, Random random) {
+        if (Double.isNaN(value)) {
+            return Double.NaN;
+        }
+        int exceed = 0;
+        double sum = 0.0;
+        for (int s = 0; s < surrogates; s++) {
+            // Fisher-Yates shuffle of the source histories
+            for (int i = m - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                long tmp = source[i];
+                source[i] = source[j];
+                source[j] = tmp;
+            }
+            double te = Math.max(0.0, hTarget + sourceTerms());
+            sum += te;
+            if (te >= value) {
+                exceed++;
+            }
+        }
+        surrogateMean = surrogates > 0 ? sum / surrogates : Double.NaN;
+        return (1.0 + exceed) / (1.0 + surrogates);
+    }
+
+    /**
+     * Mean TE of the surrogates of the last pValue() call.
+     */
+    public double getSurrogateMean() {
+        return surrogateMean;
+    }
+
+    /**
+     * H(x(t), y) - H(x(t+1), x(t), y) with the current order of the source.
+     */
+    private double sourceTerms() {
+        counts.clear();
+        for (int i = 0; i < m; i++) {
+            counts.increment(target[i] * sourceStates + source[i]);
+        }
+        double h = entropy();
+        counts.clear();
+        for (int i = 0; i < m; i++) {
+            counts.increment((target[i] * sourceStates + source[i]) * targetAlphabet + future[i]);
+        }
+        return h - entropy();
+    }
+
+    private double entropy() {
+        return MutualInformation.histogramEntropy(counts.values(), counts.capacity(), m);
+    }
+
+    /**
+     * History s[t-k+1] .. s[t] as a number in base a.
+     */
+    private long encode(int[] s, int t, int a) {
+        long code = 0;
+        for (int j = t - k + 1; j <= t; j++) {
+            code = code * a + s[j];
+        }
+        return code;
+    }
+}
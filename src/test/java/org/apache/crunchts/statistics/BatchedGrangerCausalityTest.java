@@ -0,0 +1,151 @@
+package org.apache.crunchts.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the batched test with the baseline GrangerCausality and with the
+ * F statistic of two separate least squares fits.
+ */
+public class BatchedGrangerCausalityTest {
+
+    /**
+     * y(t) = 0.5 y(t-1) + c x(t-2) + noise
+     */
+    static double[][] coupled(Random r, int n, double c) {
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int t = 0; t < n; t++) {
+            x[t] = r.nextGaussian();
+            y[t] = r.nextGaussian();
+            if (t >= 2) {
+                y[t] += 0.5 * y[t - 1] + c * x[t - 2];
+            }
+        }
+        return new double[][] { y, x };
+    }
+
+    /**
+     * RSS of the least squares fit of y(t), t = from .. n-1, on the lags
+     * 1..l of the given series and a constant, solved with the normal
+     * equations and Gaussian elimination.
+     */
+    static double rss(double[] y, int from, int l, double[]... series) {
+        int n = y.length;
+        int k = l * series.length + 1;
+        double[][] a = new double[k][k + 1];
+        double[] row = new double[k];
+        for (int t = from; t < n; t++) {
+            int c = 0;
+            for (double[] s : series) {
+                for (int j = 1; j <= l; j++) {
+                    row[c++] = s[t - j];
+                }
+            }
+            row[c] = 1.0;
+            for (int i = 0; i < k; i++) {
+                for (int j = 0; j < k; j++) {
+                    a[i][j] += row[i] * row[j];
+                }
+                a[i][k] += row[i] * y[t];
+            }
+        }
+        for (int p = 0; p < k; p++) {
+            for (int i = p + 1; i < k; i++) {
+                double f = a[i][p] / a[p][p];
+                for (int j = p; j <= k; j++) {
+                    a[i][j] -= f * a[p][j];
+                }
+            }
+        }
+        double[] beta = new double[k];
+        for (int i = k - 1; i >= 0; i--) {
+            double s = a[i][k];
+            for (int j = i + 1; j < k; j++) {
+                s -= a[i][j] * beta[j];
+            }
+            beta[i] = s / a[i][i];
+        }
+        double rss = 0.0;
+        for (int t = from; t < n; t++) {
+            int c = 0;
+            double e = y[t] - beta[k - 1];
+            for (double[] s : series) {
+                for (int j = 1; j <= l; j++) {
+                    e -= beta[c++] * s[t - j];
+                }
+            }
+            rss += e * e;
+        }
+        return rss;
+    }
+
+    private void check(double[] y, double[] x, int maxLag) {
+        BatchedGrangerCausality g = new BatchedGrangerCausality(maxLag);
+        double[] p = new double[maxLag];
+        double[] f = new double[maxLag];
+        g.test(g.prepare(y), g.prepare(x), p, f);
+
+        int n = y.length;
+        int m = n - maxLag;
+        for (int l = 1; l <= maxLag; l++) {
+            double rss0 = rss(y, maxLag, l, y);
+            double rss1 = rss(y, maxLag, l, y, x);
+            double expected = ((rss0 - rss1) / l) / (rss1 / (m - 2 * l - 1));
+            assertEquals("F of lag " + l, expected, f[l - 1], 1e-8 * expected);
+
+            // the baseline fits the rows l .. n-1, all lags here use the rows L .. n-1
+            double[] yl = Arrays.copyOfRange(y, maxLag - l, n);
+            double[] xl = Arrays.copyOfRange(x, maxLag - l, n);
+            assertEquals("p-value of lag " + l, GrangerCausality.grangerCausalityTest(yl, xl, l), p[l - 1], 1e-8);
+        }
+    }
+
+    @Test
+    public void coupledSeries() {
+        double[][] s = coupled(new Random(21), 300, 0.3);
+        check(s[0], s[1], 4);
+    }
+
+    @Test
+    public void independentSeries() {
+        double[][] s = coupled(new Random(22), 151, 0.0);
+        check(s[0], s[1], 3);
+    }
+
+    @Test
+    public void strongCoupling() {
+        double[][] s = coupled(new Random(23), 300, 1.0);
+        BatchedGrangerCausality g = new BatchedGrangerCausality(3);
+        double[] p = new double[3];
+        double[] f = new double[3];
+        g.test(g.prepare(s[0]), g.prepare(s[1]), p, f);
+        // the coupling has lag 2, lag 1 of x does not help
+        assertTrue(f[0] < 10.0);
+        assertTrue(f[1] > 100.0);
+        assertTrue(f[2] > 100.0);
+        assertTrue(p[1] < p[0]);
+    }
+
+    @Test
+    public void constantOrShortSeries() {
+        BatchedGrangerCausality g = new BatchedGrangerCausality(3);
+        double[] c = new double[50];
+        Arrays.fill(c, 4.0);
+        assertNull(g.prepare(c));
+        assertNull(g.prepare(new double[10]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void differentLength() {
+        Random r = new Random(24);
+        BatchedGrangerCausality g = new BatchedGrangerCausality(2);
+        g.test(g.prepare(coupled(r, 50, 0.3)[0]), g.prepare(coupled(r, 60, 0.3)[0]), new double[2], null);
+    }
+}
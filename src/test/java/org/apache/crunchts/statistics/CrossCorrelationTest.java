@@ -0,0 +1,138 @@
+package org.apache.crunchts.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the direct and the FFT method with the cross-correlation
+ * calculated directly from its definition.
+ */
+public class CrossCorrelationTest {
+
+    private static final double EPS = 1e-9;
+
+    /**
+     * rho(tau) = 1/(n-|tau|) sum_t x(t) y(t+tau) of the z-normalized series
+     */
+    static double[] reference(double[] a, double[] b, int maxLag) {
+        int n = a.length;
+        double[] x = normalize(a);
+        double[] y = normalize(b);
+        double[] rho = new double[2 * maxLag + 1];
+        for (int tau = -maxLag; tau <= maxLag; tau++) {
+            double s = 0.0;
+            for (int t = 0; t < n; t++) {
+                if (t + tau >= 0 && t + tau < n) {
+                    s += x[t] * y[t + tau];
+                }
+            }
+            rho[maxLag + tau] = s / (n - Math.abs(tau));
+        }
+        return rho;
+    }
+
+    static double[] normalize(double[] a) {
+        int n = a.length;
+        double mean = 0.0;
+        for (double v : a) {
+            mean += v;
+        }
+        mean /= n;
+        double var = 0.0;
+        for (double v : a) {
+            var += (v - mean) * (v - mean);
+        }
+        double sd = Math.sqrt(var / n);
+        double[] z = new double[n];
+        for (int i = 0; i < n; i++) {
+            z[i] = (a[i] - mean) / sd;
+        }
+        return z;
+    }
+
+    /**
+     * b(t) = a(t - shift) + noise
+     */
+    static double[][] shifted(Random r, int n, int shift) {
+        double[] a = new double[n + shift];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = r.nextGaussian();
+        }
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int t = 0; t < n; t++) {
+            x[t] = a[t + shift];
+            y[t] = a[t] + 0.1 * r.nextGaussian();
+        }
+        return new double[][] { x, y };
+    }
+
+    private void check(int n, int maxLag) {
+        double[][] s = shifted(new Random(n + maxLag), n, 5);
+        double[] expected = reference(s[0], s[1], maxLag);
+        double[] rho = new CrossCorrelation().correlate(s[0], s[1], maxLag, null);
+        assertEquals(expected.length, rho.length);
+        for (int i = 0; i < rho.length; i++) {
+            assertEquals("lag " + (i - maxLag), expected[i], rho[i], EPS);
+        }
+        if (maxLag >= 5) {
+            // y(t) follows x(t) with 5 steps delay: x(t) = y(t+5)
+            assertEquals(maxLag + 5, CrossCorrelation.strongestLag(rho));
+        }
+    }
+
+    @Test
+    public void direct() {
+        assertFalse(CrossCorrelation.useFFT(101, 7));
+        check(101, 7);
+        check(64, 0);
+    }
+
+    @Test
+    public void fft() {
+        assertTrue(CrossCorrelation.useFFT(1001, 300));
+        check(1001, 300);
+        assertTrue(CrossCorrelation.useFFT(513, 511));
+        check(513, 511);
+    }
+
+    @Test
+    public void fftRoundTrip() {
+        Random r = new Random(7);
+        int m = 64;
+        double[] re = new double[m];
+        double[] im = new double[m];
+        for (int i = 0; i < m; i++) {
+            re[i] = r.nextGaussian();
+            im[i] = r.nextGaussian();
+        }
+        double[] re0 = re.clone();
+        double[] im0 = im.clone();
+        CrossCorrelation.fft(re, im, m, false);
+        CrossCorrelation.fft(re, im, m, true);
+        for (int i = 0; i < m; i++) {
+            assertEquals(re0[i], re[i], EPS);
+            assertEquals(im0[i], im[i], EPS);
+        }
+    }
+
+    @Test
+    public void constantSeries() {
+        double[] a = { 1, 1, 1, 1, 1, 1 };
+        double[] b = { 1, 2, 3, 4, 5, 6 };
+        double[] rho = new CrossCorrelation().correlate(a, b, 2, null);
+        for (double v : rho) {
+            assertTrue(Double.isNaN(v));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lagWindowTooLarge() {
+        new CrossCorrelation().correlate(new double[5], new double[5], 5, null);
+    }
+}
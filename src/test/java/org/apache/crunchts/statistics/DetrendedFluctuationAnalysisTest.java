@@ -0,0 +1,124 @@
+package org.apache.crunchts.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares F(s) with a fit of each window from the definition and checks
+ * alpha for white noise and a random walk.
+ */
+public class DetrendedFluctuationAnalysisTest {
+
+    /**
+     * F(s) with a separate least squares fit of each window, the windows
+     * are taken from the start and from the end of the profile.
+     */
+    static double reference(double[] x, int s) {
+        int n = x.length;
+        double mean = 0.0;
+        for (double v : x) {
+            mean += v;
+        }
+        mean /= n;
+        double[] y = new double[n];
+        double c = 0.0;
+        for (int i = 0; i < n; i++) {
+            c += x[i] - mean;
+            y[i] = c;
+        }
+        int w = n / s;
+        double rss = 0.0;
+        for (int j = 0; j < w; j++) {
+            rss += residuals(y, j * s, s);
+            rss += residuals(y, n - w * s + j * s, s);
+        }
+        return Math.sqrt(rss / (2.0 * w * s));
+    }
+
+    static double residuals(double[] y, int start, int s) {
+        double mt = (s - 1) / 2.0;
+        double my = 0.0;
+        for (int i = 0; i < s; i++) {
+            my += y[start + i];
+        }
+        my /= s;
+        double stt = 0.0, sty = 0.0;
+        for (int i = 0; i < s; i++) {
+            stt += (i - mt) * (i - mt);
+            sty += (i - mt) * (y[start + i] - my);
+        }
+        double b = sty / stt;
+        double rss = 0.0;
+        for (int i = 0; i < s; i++) {
+            double e = y[start + i] - my - b * (i - mt);
+            rss += e * e;
+        }
+        return rss;
+    }
+
+    static double[] noise(Random r, int n) {
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = r.nextGaussian();
+        }
+        return x;
+    }
+
+    @Test
+    public void fluctuationAgainstReference() {
+        Random r = new Random(11);
+        // 1001 is not a multiple of the scales, start and end windows differ
+        double[] x = noise(r, 1001);
+        int[] scales = DetrendedFluctuationAnalysis.scales(x.length, 3, 4);
+        double[] f = new DetrendedFluctuationAnalysis().fluctuation(x, scales, null);
+        for (int k = 0; k < scales.length; k++) {
+            double expected = reference(x, scales[k]);
+            assertEquals("s=" + scales[k], expected, f[k], 1e-9 * expected);
+        }
+    }
+
+    @Test
+    public void scales() {
+        int[] s = DetrendedFluctuationAnalysis.scales(1000, 4, 4);
+        assertEquals(4, s[0]);
+        assertTrue(s[s.length - 1] <= 250);
+        for (int k = 1; k < s.length; k++) {
+            assertTrue(s[k] > s[k - 1]);
+        }
+        assertEquals(0, DetrendedFluctuationAnalysis.scales(10, 4, 4).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void scaleTooSmall() {
+        DetrendedFluctuationAnalysis.scales(1000, 2, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noScalesPerOctave() {
+        DetrendedFluctuationAnalysis.checkScales(4, 0);
+    }
+
+    @Test
+    public void alpha() {
+        Random r = new Random(12);
+        DetrendedFluctuationAnalysis dfa = new DetrendedFluctuationAnalysis();
+
+        double[] white = noise(r, 8192);
+        int[] scales = DetrendedFluctuationAnalysis.scales(white.length, 8, 4);
+        double a = DetrendedFluctuationAnalysis.alpha(scales, dfa.fluctuation(white, scales, null));
+        assertEquals(0.5, a, 0.1);
+
+        double[] walk = new double[white.length];
+        double y = 0.0;
+        for (int i = 0; i < walk.length; i++) {
+            y += white[i];
+            walk[i] = y;
+        }
+        a = DetrendedFluctuationAnalysis.alpha(scales, dfa.fluctuation(walk, scales, null));
+        assertEquals(1.5, a, 0.1);
+    }
+}
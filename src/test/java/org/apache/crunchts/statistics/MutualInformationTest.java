@@ -0,0 +1,99 @@
+package org.apache.crunchts.statistics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the entropies with plug-in estimates from counts in a map, for
+ * the dense and the sparse joint histogram.
+ */
+public class MutualInformationTest {
+
+    private static final double EPS = 1e-9;
+
+    static double entropy(Map<String, Integer> counts, int n) {
+        double h = 0.0;
+        for (int c : counts.values()) {
+            double p = (double) c / n;
+            h -= p * Math.log(p) / Math.log(2.0);
+        }
+        return h;
+    }
+
+    static void count(Map<String, Integer> counts, String key) {
+        Integer c = counts.get(key);
+        counts.put(key, c == null ? 1 : c + 1);
+    }
+
+    static int[] symbols(Random r, int n, int k) {
+        int[] s = new int[n];
+        for (int i = 0; i < n; i++) {
+            s[i] = r.nextInt(k);
+        }
+        return s;
+    }
+
+    private void check(int ka, int kb, int n) {
+        Random r = new Random(ka * 31 + kb);
+        int[] a = symbols(r, n, ka);
+        int[] b = new int[n];
+        for (int i = 0; i < n; i++) {
+            // dependent on a in half of the cases
+            b[i] = r.nextBoolean() ? a[i] % kb : r.nextInt(kb);
+        }
+
+        Map<String, Integer> ca = new HashMap<String, Integer>();
+        Map<String, Integer> cb = new HashMap<String, Integer>();
+        Map<String, Integer> cab = new HashMap<String, Integer>();
+        for (int i = 0; i < n; i++) {
+            count(ca, "" + a[i]);
+            count(cb, "" + b[i]);
+            count(cab, a[i] + "," + b[i]);
+        }
+        double ha = entropy(ca, n);
+        double hb = entropy(cb, n);
+        double hab = entropy(cab, n);
+
+        MutualInformation mi = new MutualInformation();
+        assertEquals(ha, mi.entropy(a, ka, n), EPS);
+        assertEquals(hb, mi.entropy(b, kb, n), EPS);
+        assertEquals(hab, mi.jointEntropy(a, ka, b, kb, n), EPS);
+        assertEquals(ha + hb - hab, mi.mutualInformation(a, ka, b, kb, n), EPS);
+    }
+
+    @Test
+    public void denseJoint() {
+        check(8, 5, 1001);
+    }
+
+    @Test
+    public void sparseJoint() {
+        // ka * kb > MAX_DENSE_JOINT
+        check(400, 300, 5001);
+    }
+
+    @Test
+    public void identicalAndIndependent() {
+        Random r = new Random(31);
+        int n = 20000;
+        int[] a = symbols(r, n, 4);
+        int[] b = symbols(r, n, 4);
+        MutualInformation mi = new MutualInformation();
+        assertEquals(mi.entropy(a, 4, n), mi.mutualInformation(a, 4, a, 4, n), EPS);
+        assertEquals(2.0, mi.entropy(a, 4, n), 0.01);
+        assertEquals(0.0, mi.mutualInformation(a, 4, b, 4, n), 0.01);
+    }
+
+    @Test
+    public void onlyFirstNSymbols() {
+        int[] a = { 0, 1, 0, 1, 2, 2, 2 };
+        MutualInformation mi = new MutualInformation();
+        assertEquals(1.0, mi.entropy(a, 3, 4), EPS);
+        assertEquals(0.0, mi.entropy(a, 3, 0), 0.0);
+    }
+}
@@ -0,0 +1,111 @@
+package org.apache.crunchts.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the running sums with a two-pass Pearson correlation of each
+ * window, also after many updates and for constant windows.
+ */
+public class RollingCorrelationTest {
+
+    static double pearson(double[] x, double[] y, int from, int w) {
+        double mx = 0.0, my = 0.0;
+        for (int i = from; i < from + w; i++) {
+            mx += x[i];
+            my += y[i];
+        }
+        mx /= w;
+        my /= w;
+        double sxy = 0.0, sxx = 0.0, syy = 0.0;
+        for (int i = from; i < from + w; i++) {
+            sxy += (x[i] - mx) * (y[i] - my);
+            sxx += (x[i] - mx) * (x[i] - mx);
+            syy += (y[i] - my) * (y[i] - my);
+        }
+        return constant(x, from, w) || constant(y, from, w) ? Double.NaN : sxy / Math.sqrt(sxx * syy);
+    }
+
+    static boolean constant(double[] x, int from, int w) {
+        for (int i = from + 1; i < from + w; i++) {
+            if (x[i] != x[from]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void check(double[] x, double[] y, int window, int step) {
+        RollingCorrelation rc = new RollingCorrelation(window, step);
+        int n = x.length;
+        double[] rho = new double[rc.windows(n)];
+        int windows = rc.correlate(rc.prepare(x, n), rc.prepare(y, n), rho);
+        assertEquals((n - window) / step + 1, windows);
+        for (int k = 0; k < windows; k++) {
+            double expected = pearson(x, y, k * step, window);
+            if (Double.isNaN(expected)) {
+                assertTrue("window " + k, Double.isNaN(rho[k]));
+            } else {
+                assertEquals("window " + k, expected, rho[k], 1e-8);
+            }
+        }
+    }
+
+    static double[] walk(Random r, int n, double level) {
+        double[] x = new double[n];
+        double v = level;
+        for (int i = 0; i < n; i++) {
+            v += r.nextGaussian();
+            x[i] = v;
+        }
+        return x;
+    }
+
+    @Test
+    public void runningSums() {
+        Random r = new Random(51);
+        // more windows than REFRESH, the sums are updated many times
+        double[] x = walk(r, 5000, 1000.0);
+        double[] y = walk(r, 5000, -50.0);
+        check(x, y, 50, 1);
+        check(x, y, 37, 3);
+        check(x, y, 20, 25);
+    }
+
+    @Test
+    public void constantWindows() {
+        Random r = new Random(52);
+        double[] x = walk(r, 600, 100.0);
+        double[] y = walk(r, 600, 0.0);
+        // the value is stuck for 120 steps
+        for (int i = 200; i < 320; i++) {
+            x[i] = x[199];
+        }
+        check(x, y, 30, 1);
+
+        RollingCorrelation rc = new RollingCorrelation(30, 1);
+        double[] rho = new double[rc.windows(600)];
+        rc.correlate(rc.prepare(x, 600), rc.prepare(y, 600), rho);
+        assertTrue(!Double.isNaN(rho[198]));
+        assertTrue(Double.isNaN(rho[199]));
+        assertTrue(Double.isNaN(rho[290]));
+        assertTrue(!Double.isNaN(rho[291]));
+    }
+
+    @Test
+    public void windows() {
+        RollingCorrelation rc = new RollingCorrelation(10, 3);
+        assertEquals(0, rc.windows(9));
+        assertEquals(1, rc.windows(10));
+        assertEquals(4, rc.windows(19));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowTooSmall() {
+        new RollingCorrelation(1, 1);
+    }
+}
@@ -0,0 +1,129 @@
+package org.apache.crunchts.statistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import stdlib.StdStats;
+
+/**
+ * Compares the unrolled loops with simple loops and StdStats, for all
+ * lengths around the unroll factor of four.
+ */
+public class TSKernelsTest {
+
+    private static final double EPS = 1e-9;
+
+    static double[] random(Random r, int n) {
+        double[] a = new double[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = 10.0 * r.nextGaussian() + 3.0;
+        }
+        return a;
+    }
+
+    @Test
+    public void sumsAndMoments() {
+        Random r = new Random(1);
+        for (int n = 1; n <= 13; n++) {
+            double[] a = random(r, n);
+            double sum = 0.0;
+            double abs = 0.0;
+            for (int i = 0; i < n; i++) {
+                sum += a[i];
+                abs += Math.abs(a[i]);
+            }
+            assertEquals(sum, TSKernels.sum(a, n), EPS);
+            assertEquals(abs, TSKernels.absSum(a, n), EPS);
+            assertEquals(StdStats.mean(a), TSKernels.mean(a, n), EPS);
+            if (n > 1) {
+                assertEquals(StdStats.var(a) * (n - 1) / n, TSKernels.variance(a, n), EPS);
+            }
+        }
+        assertTrue(Double.isNaN(TSKernels.mean(new double[0], 0)));
+        assertTrue(Double.isNaN(TSKernels.variance(new double[0], 0)));
+    }
+
+    @Test
+    public void onlyFirstNValues() {
+        double[] a = { 1, 2, 3, 4, 5, 100, 100 };
+        assertEquals(15.0, TSKernels.sum(a, 5), 0.0);
+        assertEquals(3.0, TSKernels.mean(a, 5), 0.0);
+        assertEquals(2.0, TSKernels.variance(a, 5), EPS);
+    }
+
+    @Test
+    public void dotWithOffsets() {
+        Random r = new Random(2);
+        double[] a = random(r, 20);
+        double[] b = random(r, 20);
+        for (int n = 0; n <= 13; n++) {
+            for (int aFrom = 0; aFrom <= 3; aFrom++) {
+                for (int bFrom = 0; bFrom <= 3; bFrom++) {
+                    double d = 0.0;
+                    for (int i = 0; i < n; i++) {
+                        d += a[aFrom + i] * b[bFrom + i];
+                    }
+                    assertEquals(d, TSKernels.dot(a, aFrom, b, bFrom, n), EPS);
+                }
+            }
+            double d = 0.0;
+            for (int i = 0; i < n; i++) {
+                d += a[i] * b[i];
+            }
+            assertEquals(d, TSKernels.dot(a, b, n), EPS);
+        }
+    }
+
+    @Test
+    public void laggedDotBothDirections() {
+        Random r = new Random(3);
+        for (int n = 1; n <= 13; n++) {
+            double[] x = random(r, n);
+            double[] y = random(r, n);
+            for (int tau = -n - 1; tau <= n + 1; tau++) {
+                double d = 0.0;
+                for (int t = 0; t < n; t++) {
+                    if (t + tau >= 0 && t + tau < n) {
+                        d += x[t] * y[t + tau];
+                    }
+                }
+                assertEquals("n=" + n + " tau=" + tau, d, TSKernels.laggedDot(x, y, n, tau), EPS);
+            }
+        }
+    }
+
+    @Test
+    public void zNormalize() {
+        Random r = new Random(4);
+        for (int n = 2; n <= 13; n++) {
+            double[] a = random(r, n);
+            double mean = StdStats.mean(a);
+            double sd = Math.sqrt(StdStats.var(a) * (n - 1) / n);
+            double[] z = a.clone();
+            assertTrue(TSKernels.zNormalize(z, n));
+            for (int i = 0; i < n; i++) {
+                assertEquals((a[i] - mean) / sd, z[i], EPS);
+            }
+            assertEquals(0.0, TSKernels.mean(z, n), EPS);
+            assertEquals(1.0, TSKernels.variance(z, n), EPS);
+        }
+    }
+
+    @Test
+    public void zNormalizeConstantSeries() {
+        for (int n = 1; n <= 9; n++) {
+            double[] a = new double[n];
+            Arrays.fill(a, 2.5);
+            double[] z = a.clone();
+            assertFalse(TSKernels.zNormalize(z, n));
+            assertArrayEquals(a, z, 0.0);
+        }
+    }
+}
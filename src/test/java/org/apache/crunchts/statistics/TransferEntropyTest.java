@@ -0,0 +1,105 @@
+package org.apache.crunchts.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares TE(Y->X) with the plug-in estimate from the definition
+ *
+ *   TE = H(x(t+1) | x history) - H(x(t+1) | x history, y history)
+ *
+ * with the histories counted as strings.
+ */
+public class TransferEntropyTest {
+
+    private static final double EPS = 1e-9;
+
+    static double reference(int[] y, int[] x, int n, int k, int lag) {
+        int t0 = Math.max(k - 1, k + lag - 2);
+        Map<String, Integer> cx = new HashMap<String, Integer>();
+        Map<String, Integer> cxf = new HashMap<String, Integer>();
+        Map<String, Integer> cxy = new HashMap<String, Integer>();
+        Map<String, Integer> cxyf = new HashMap<String, Integer>();
+        int m = 0;
+        for (int t = t0; t < n - 1; t++) {
+            String hx = history(x, t, k);
+            String hy = history(y, t + 1 - lag, k);
+            String f = "" + x[t + 1];
+            MutualInformationTest.count(cx, hx);
+            MutualInformationTest.count(cxf, hx + "|" + f);
+            MutualInformationTest.count(cxy, hx + "|" + hy);
+            MutualInformationTest.count(cxyf, hx + "|" + hy + "|" + f);
+            m++;
+        }
+        return MutualInformationTest.entropy(cxf, m) - MutualInformationTest.entropy(cx, m)
+                + MutualInformationTest.entropy(cxy, m) - MutualInformationTest.entropy(cxyf, m);
+    }
+
+    static String history(int[] s, int t, int k) {
+        StringBuilder b = new StringBuilder();
+        for (int j = t - k + 1; j <= t; j++) {
+            b.append(s[j]).append(',');
+        }
+        return b.toString();
+    }
+
+    /**
+     * x(t) = y(t - 2) with probability c, otherwise random.
+     */
+    static int[][] coupled(Random r, int n, int alphabet, double c) {
+        int[] y = MutualInformationTest.symbols(r, n, alphabet);
+        int[] x = MutualInformationTest.symbols(r, n, alphabet);
+        for (int t = 2; t < n; t++) {
+            if (r.nextDouble() < c) {
+                x[t] = y[t - 2];
+            }
+        }
+        return new int[][] { y, x };
+    }
+
+    @Test
+    public void againstDefinition() {
+        Random r = new Random(41);
+        int n = 2001;
+        int[][] s = coupled(r, n, 3, 0.5);
+        for (int k = 1; k <= 3; k++) {
+            for (int lag = 1; lag <= 3; lag++) {
+                double te = new TransferEntropy(k, lag).transferEntropy(s[0], 3, s[1], 3, n);
+                assertEquals("k=" + k + " lag=" + lag, reference(s[0], s[1], n, k, lag), te, EPS);
+            }
+        }
+    }
+
+    @Test
+    public void significance() {
+        Random r = new Random(42);
+        int n = 3000;
+
+        int[][] s = coupled(r, n, 2, 0.8);
+        TransferEntropy te = new TransferEntropy(1, 2);
+        assertTrue(te.transferEntropy(s[0], 2, s[1], 2, n) > 0.1);
+        assertEquals(1.0 / 101.0, te.pValue(100, r), EPS);
+        assertTrue(te.getSurrogateMean() < 0.01);
+
+        s = coupled(r, n, 2, 0.0);
+        assertTrue(te.transferEntropy(s[0], 2, s[1], 2, n) < 0.01);
+        assertTrue(te.pValue(100, r) > 0.01);
+    }
+
+    @Test
+    public void tooShort() {
+        int[] a = { 0, 1, 0 };
+        assertTrue(Double.isNaN(new TransferEntropy(2, 1).transferEntropy(a, 2, a, 2, 3)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidHistory() {
+        new TransferEntropy(0, 1);
+    }
+}